@@ -3,6 +3,7 @@ package com.dozuki.ifixit.ui.dozuki;
 import android.app.SearchManager;
 import android.content.Intent;
 import android.graphics.Typeface;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.v4.app.DialogFragment;
 import android.support.v4.app.FragmentTransaction;
@@ -33,6 +34,32 @@ public class SiteListActivity extends BaseActivity
    private Button mSiteListButton;
    private SiteListDialogFragment mSiteListDialog;
    private ArrayList<Site> mSiteList;
+   private SiteSearchIndex mSearchIndex;
+   private SearchTask mSearchTask;
+
+   /**
+    * Searches the index off the UI thread. A task is canceled as soon as a
+    * newer query comes in so results for stale queries are never shown.
+    */
+   private class SearchTask extends AsyncTask<String, Void, ArrayList<Site>> {
+      private final SiteSearchIndex mIndex;
+
+      public SearchTask(SiteSearchIndex index) {
+         mIndex = index;
+      }
+
+      @Override
+      protected ArrayList<Site> doInBackground(String... query) {
+         return mIndex.search(query[0]);
+      }
+
+      @Override
+      protected void onPostExecute(ArrayList<Site> sites) {
+         if (sites != null && mSiteListDialog != null) {
+            mSiteListDialog.setSites(sites, true);
+         }
+      }
+   }
 
    @Override
    public void onCreate(Bundle savedInstanceState) {
@@ -111,6 +138,7 @@ public class SiteListActivity extends BaseActivity
    public void onSites(ApiEvent.Sites event) {
       if (!event.hasError()) {
          mSiteList = event.getResult();
+         mSearchIndex = null;
          if (mSiteListDialog != null) {
             mSiteListDialog.setSites(mSiteList, true);
          }
@@ -130,6 +158,11 @@ public class SiteListActivity extends BaseActivity
    public boolean onQueryTextChange(String newText) {
       if (mSiteListDialog != null) {
          if (newText.length() == 0) {
+            if (mSearchTask != null) {
+               mSearchTask.cancel(true);
+               mSearchTask = null;
+            }
+
             mSiteListDialog.setSites(mSiteList, true);
          } else {
             // Perform search on every key press.
@@ -146,16 +179,20 @@ public class SiteListActivity extends BaseActivity
    }
 
    private void search(String query) {
-      String lowerQuery = query.toLowerCase();
-      ArrayList<Site> matchedSites = new ArrayList<Site>();
+      if (mSiteList == null || mSiteListDialog == null) {
+         return;
+      }
 
-      for (Site site : mSiteList) {
-         if (site.search(lowerQuery)) {
-            matchedSites.add(site);
-         }
+      if (mSearchTask != null) {
+         mSearchTask.cancel(true);
+      }
+
+      if (mSearchIndex == null) {
+         mSearchIndex = new SiteSearchIndex(mSiteList);
       }
 
-      mSiteListDialog.setSites(matchedSites, true);
+      mSearchTask = new SearchTask(mSearchIndex);
+      mSearchTask.execute(query);
    }
 
    @Override
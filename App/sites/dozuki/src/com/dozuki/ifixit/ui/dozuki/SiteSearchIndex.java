@@ -0,0 +1,52 @@
+package com.dozuki.ifixit.ui.dozuki;
+
+import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.util.SearchIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Search index over the site list, built once and queried on every key press.
+ *
+ * Sites are matched and ranked on their title and name by SearchIndex: the
+ * query is trimmed and a site matches if its title or name contains it or if
+ * its name is within half its length in edits of it.
+ */
+public class SiteSearchIndex {
+   private final List<Site> mSites;
+   private final SearchIndex mIndex;
+
+   public SiteSearchIndex(List<Site> sites) {
+      mSites = new ArrayList<Site>(sites);
+
+      String[] titles = new String[mSites.size()];
+      String[] names = new String[mSites.size()];
+
+      for (int i = 0; i < mSites.size(); i++) {
+         titles[i] = mSites.get(i).mTitle;
+         names[i] = mSites.get(i).mName;
+      }
+
+      mIndex = new SearchIndex(titles, names);
+   }
+
+   /**
+    * Returns the matching sites, best first, or null if the thread was
+    * interrupted because the query is no longer wanted.
+    */
+   public ArrayList<Site> search(String query) {
+      int[] indexes = mIndex.search(query);
+
+      if (indexes == null) {
+         return null;
+      }
+
+      ArrayList<Site> results = new ArrayList<Site>(indexes.length);
+      for (int index : indexes) {
+         results.add(mSites.get(index));
+      }
+
+      return results;
+   }
+}
@@ -9,6 +9,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.content.res.TypedArray;
+import android.os.Process;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.util.Log;
@@ -20,16 +21,26 @@ import com.dozuki.ifixit.model.user.LoginEvent;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.util.ImageSizes;
 import com.dozuki.ifixit.util.OkConnectionFactory;
+import com.dozuki.ifixit.util.PicassoUtils;
 import com.dozuki.ifixit.util.Utils;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
+import com.dozuki.ifixit.util.api.EditLog;
+import com.dozuki.ifixit.util.api.UploadQueue;
 import com.github.kevinsawicki.http.HttpRequest;
 import com.google.analytics.tracking.android.GAServiceManager;
 import com.google.analytics.tracking.android.GoogleAnalytics;
 import com.google.analytics.tracking.android.Logger;
 import com.google.analytics.tracking.android.Tracker;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.HttpResponseCache;
+import com.squareup.okhttp.OkHttpClient;
 import com.squareup.otto.Bus;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.ResponseCache;
 import java.net.URL;
 
 public class App extends Application {
@@ -53,6 +64,19 @@ public class App extends Application {
    private static final String USERNAME_KEY = "USERNAME_KEY";
    private static final String USERID_KEY = "USERID_KEY";
 
+   /**
+    * Connection pool configuration for the shared OkHttpClient.
+    */
+   private static final int MAX_IDLE_CONNECTIONS = 8;
+   private static final long KEEP_ALIVE_DURATION_MS = 5 * 60 * 1000;
+
+   /**
+    * Response cache for the API client. It is separate from Picasso's so
+    * browsing images doesn't evict cached API responses.
+    */
+   private static final String API_CACHE_DIR = "api-http-cache";
+   private static final long API_CACHE_SIZE = 5 * 1024 * 1024;
+
    /**
     * Singleton reference.
     */
@@ -63,6 +87,14 @@ public class App extends Application {
     */
    private static Bus sBus;
 
+   /**
+    * Clients for images, which Picasso and inline images share, and for the
+    * API. They share a connection pool but have response caches of their own.
+    */
+   private ConnectionPool mConnectionPool;
+   private OkHttpClient mOkHttpClient;
+   private OkHttpClient mApiOkHttpClient;
+
    /**
     * Singleton for ImageSizes.
     */
@@ -103,17 +135,19 @@ public class App extends Application {
       // client, which OkHttp doesn't handle well.
       // https://github.com/square/okhttp/issues/184
       if (!mUrlStreamFactorySet) {
-         URL.setURLStreamHandlerFactory(Utils.createOkHttpClient());
+         URL.setURLStreamHandlerFactory(getOkHttpClient());
          mUrlStreamFactorySet = true;
       }
 
       // Use OkHttp instead of HttpUrlConnection to handle HTTP requests, OkHttp supports 2.2 while HttpURLConnection
       // is a bit buggy on froyo.
       if (!mConnectionFactorySet) {
-         HttpRequest.setConnectionFactory(new OkConnectionFactory());
+         HttpRequest.setConnectionFactory(new OkConnectionFactory(getApiOkHttpClient()));
          mConnectionFactorySet = true;
       }
 
+      installResponseCaches();
+
       if (false && inDebug()) {
          StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
           .detectDiskReads()
@@ -135,6 +169,10 @@ public class App extends Application {
 
       sApp = this;
       setSite(getDefaultSite());
+
+      OfflineGuideStore.get(this).resumeDownloads();
+      UploadQueue.get(this).resume();
+      EditLog.get(this).resume();
    }
 
    /*
@@ -198,6 +236,9 @@ public class App extends Application {
       setupLoggedInUser(site);
 
       getBus().post(new SiteChangedEvent(mSite, mUser));
+
+      UploadQueue.get(this).resumeHeld();
+      EditLog.get(this).sync();
    }
 
    public String getTopicName() {
@@ -264,6 +305,97 @@ public class App extends Application {
       return BuildConfig.DEBUG;
    }
 
+   /**
+    * Returns the client for images.
+    */
+   public synchronized OkHttpClient getOkHttpClient() {
+      if (mOkHttpClient == null) {
+         mOkHttpClient = createOkHttpClient();
+      }
+
+      return mOkHttpClient;
+   }
+
+   /**
+    * Returns the client for API requests, which HttpRequest uses.
+    */
+   public synchronized OkHttpClient getApiOkHttpClient() {
+      if (mApiOkHttpClient == null) {
+         mApiOkHttpClient = createOkHttpClient();
+      }
+
+      return mApiOkHttpClient;
+   }
+
+   private OkHttpClient createOkHttpClient() {
+      if (mConnectionPool == null) {
+         mConnectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_DURATION_MS);
+      }
+
+      OkHttpClient client = Utils.createOkHttpClient();
+      client.setConnectionPool(mConnectionPool);
+
+      return client;
+   }
+
+   /**
+    * Opens the response caches on a background thread because opening one
+    * reads its journal. Requests made before then just aren't cached.
+    */
+   private void installResponseCaches() {
+      final OkHttpClient client = getOkHttpClient();
+      final OkHttpClient apiClient = getApiOkHttpClient();
+
+      new Thread(new Runnable() {
+         public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            try {
+               client.setResponseCache(PicassoUtils.createResponseCache(App.this));
+            } catch (IOException e) {
+               Log.e("App", "Failed to create response cache", e);
+            }
+
+            try {
+               apiClient.setResponseCache(new HttpResponseCache(
+                new File(getCacheDir(), API_CACHE_DIR), API_CACHE_SIZE));
+            } catch (IOException e) {
+               Log.e("App", "Failed to create API response cache", e);
+            }
+         }
+      }, "Response caches").start();
+   }
+
+   /**
+    * Returns the connection pool's and response caches' counters.
+    */
+   public String getHttpStats() {
+      ConnectionPool pool = getOkHttpClient().getConnectionPool();
+      StringBuilder stats = new StringBuilder();
+
+      stats.append("pooled: ").append(pool.getConnectionCount())
+       .append(" (").append(pool.getSpdyConnectionCount()).append(" spdy)");
+
+      appendCacheStats(stats, "images", getOkHttpClient());
+      appendCacheStats(stats, "api", getApiOkHttpClient());
+
+      return stats.toString();
+   }
+
+   private static void appendCacheStats(StringBuilder stats, String name,
+    OkHttpClient client) {
+      ResponseCache responseCache = client.getResponseCache();
+
+      if (responseCache instanceof HttpResponseCache) {
+         HttpResponseCache cache = (HttpResponseCache)responseCache;
+
+         stats.append(", ").append(name)
+          .append(" requests: ").append(cache.getRequestCount())
+          .append(", network: ").append(cache.getNetworkCount())
+          .append(", cache hits: ").append(cache.getHitCount());
+      }
+   }
+
    public static Bus getBus() {
       if (sBus == null) {
          sBus = new Bus();
@@ -360,6 +492,9 @@ public class App extends Application {
          pendingApiCall.updateUser(mUser);
          Api.call(null, pendingApiCall);
       }
+
+      UploadQueue.get(this).resumeHeld();
+      EditLog.get(this).sync();
    }
 
    /**
@@ -8,7 +8,6 @@ import com.dozuki.ifixit.BuildConfig;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.Image;
 import com.dozuki.ifixit.model.guide.GuideType;
-import com.dozuki.ifixit.util.EditDistance;
 import com.dozuki.ifixit.util.Utils;
 
 import java.io.Serializable;
@@ -45,20 +44,6 @@ public class Site implements Serializable {
       mSiteid = siteid;
    }
 
-   public boolean search(String query) {
-      if (mTitle.toLowerCase().contains(query)) {
-         // Query is somewhere in title or name.
-         return true;
-      }
-
-      /**
-       * Compare edit distance with the length of the string. This is kinda
-       * arbitrary but makes sense because we want more room for error the
-       * longer the string and less room for error the shorter the string.
-       */
-      return EditDistance.editDistance(mName, query) <= (mName.length() / 2);
-   }
-
    public String getOpenIdLoginUrl() {
       return "https://" + getAPIDomain() + "/Guide/login/openid?host=";
    }
@@ -27,6 +27,21 @@ public class GuideSearchResult implements SearchResult, Serializable {
       mGuideInfo = guideInfo;
    }
 
+   public GuideInfo getGuideInfo() {
+      return mGuideInfo;
+   }
+
+   @Override
+   public boolean equals(Object other) {
+      return other instanceof GuideSearchResult &&
+       ((GuideSearchResult)other).mGuideInfo.mGuideid == mGuideInfo.mGuideid;
+   }
+
+   @Override
+   public int hashCode() {
+      return mGuideInfo.mGuideid;
+   }
+
    @Override
    public View buildView(View v, LayoutInflater inflater, ViewGroup container) {
       final Context context = container.getContext();
@@ -10,6 +10,12 @@ public class SearchResults implements Serializable {
    public int mLimit;
    public int mOffset;
    public int mTotalResults;
+
+   /**
+    * Results found in the local search index that the server didn't return.
+    * They aren't part of mTotalResults which is the server's count.
+    */
+   public int mLocalResults;
    public boolean mHasMoreResults;
    public ArrayList<SearchResult> mResults;
 
@@ -29,6 +29,16 @@ public class TopicSearchResult implements SearchResult, Serializable {
    public String mText;
    public Image mImage;
 
+   @Override
+   public boolean equals(Object other) {
+      return other instanceof TopicSearchResult && mTitle != null &&
+       mTitle.equals(((TopicSearchResult)other).mTitle);
+   }
+
+   @Override
+   public int hashCode() {
+      return mTitle == null ? 0 : mTitle.hashCode();
+   }
 
    @Override
    public View buildView(View v, LayoutInflater inflater, ViewGroup container) {
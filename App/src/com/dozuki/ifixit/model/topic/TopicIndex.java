@@ -0,0 +1,536 @@
+package com.dozuki.ifixit.model.topic;
+
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Compact representation of a site's topic hierarchy. Topics are identified by
+ * their position in flat arrays rather than each being an object with its own
+ * list of children. TopicNodes are created on demand when a level is displayed.
+ *
+ * The index is written to disk when it changes. When the categories response
+ * is unchanged, e.g. after the process has been killed, the API thread reads
+ * the index back instead of parsing the JSON again. The UI thread only ever
+ * sees the index that's in memory.
+ */
+public class TopicIndex {
+   private static final String TAG = "TopicIndex";
+   private static final String FILE_PREFIX = "topic_index_";
+   private static final int VERSION = 3;
+   private static final int ROOT_ID = 0;
+
+   private static final Object sFileLock = new Object();
+   private static volatile TopicIndex sCurrent;
+
+   private final String mSiteName;
+
+   /**
+    * SHA-1 of the JSON the index was built from so an unchanged hierarchy isn't
+    * parsed or written to disk again.
+    */
+   private final String mSourceDigest;
+
+   private final String[] mNames;
+
+   /**
+    * Display names for topics whose display name differs from their name, null
+    * for the rest.
+    */
+   private final String[] mDisplayNames;
+   private final boolean[] mLeaves;
+
+   /**
+    * Children of topic i are mChildren[mChildStart[i]] through
+    * mChildren[mChildStart[i + 1] - 1], sorted by name when the index is built.
+    */
+   private final int[] mChildStart;
+   private final int[] mChildren;
+
+   /**
+    * The same ranges as mChildren but with each topic's non-leaf children before
+    * its leaf children. The leaves of topic i start at mLeafStart[i].
+    */
+   private final int[] mPartitionedChildren;
+   private final int[] mLeafStart;
+
+   /**
+    * Topic ids sorted by name for looking topics up by name.
+    */
+   private final int[] mIdsByName;
+
+   private TopicIndex(String siteName, String sourceDigest, String[] names,
+    String[] displayNames, boolean[] leaves, int[] childStart, int[] children) {
+      mSiteName = siteName;
+      mSourceDigest = sourceDigest;
+      mNames = names;
+      mDisplayNames = displayNames;
+      mLeaves = leaves;
+      mChildStart = childStart;
+      mChildren = children;
+      mPartitionedChildren = new int[children.length];
+      mLeafStart = new int[names.length];
+      mIdsByName = new int[names.length];
+
+      partitionChildren();
+
+      for (int id = 0; id < mIdsByName.length; id++) {
+         mIdsByName[id] = id;
+      }
+      sortIds(mIdsByName, 0, mIdsByName.length, names, false);
+   }
+
+   /**
+    * Returns the index for the current site if it is in memory, null otherwise.
+    * Never touches the disk so it is safe to call from the UI thread; the
+    * index is loaded by the categories API call.
+    */
+   public static TopicIndex getCurrent() {
+      TopicIndex current = sCurrent;
+
+      if (current == null || !current.mSiteName.equals(App.get().getSite().mName)) {
+         return null;
+      }
+
+      return current;
+   }
+
+   /**
+    * Makes the index the current one and writes it to disk if it differs from
+    * the one stored there. Call from a background thread.
+    */
+   public static void setCurrent(TopicIndex index) {
+      sCurrent = index;
+
+      synchronized (sFileLock) {
+         // Don't overwrite the file with an index that has been replaced while
+         // waiting for the lock.
+         if (sCurrent != index) {
+            return;
+         }
+
+         File file = getFile(index.mSiteName);
+
+         if (!file.exists() || !index.mSourceDigest.equals(readSourceDigest(file))) {
+            index.write(file);
+         }
+      }
+   }
+
+   /**
+    * Returns the index stored for the site if it was built from JSON with the
+    * given digest, null otherwise. Call from a background thread.
+    */
+   public static TopicIndex readStored(String siteName, String sourceDigest) {
+      synchronized (sFileLock) {
+         File file = getFile(siteName);
+
+         if (!file.exists() || !sourceDigest.equals(readSourceDigest(file))) {
+            return null;
+         }
+
+         return read(file);
+      }
+   }
+
+   /**
+    * Returns the SHA-1 of the JSON as a hex String, used to tell whether the
+    * stored index was built from the same response.
+    */
+   public static String digest(String json) {
+      try {
+         byte[] hash = MessageDigest.getInstance("SHA-1").digest(json.getBytes("UTF-8"));
+         StringBuilder builder = new StringBuilder(hash.length * 2);
+
+         for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+         }
+
+         return builder.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new AssertionError(e);
+      } catch (UnsupportedEncodingException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   public TopicNode getRoot() {
+      return getNode(ROOT_ID);
+   }
+
+   public int size() {
+      return mNames.length;
+   }
+
+   /**
+    * Returns the children of the given topic sorted by name.
+    */
+   public ArrayList<TopicNode> getChildren(int id) {
+      return getNodes(mChildren, mChildStart[id], mChildStart[id + 1]);
+   }
+
+   /**
+    * Returns the children of the given topic that have children of their own,
+    * sorted by name.
+    */
+   public ArrayList<TopicNode> getNonLeafChildren(int id) {
+      return getNodes(mPartitionedChildren, mChildStart[id], mLeafStart[id]);
+   }
+
+   /**
+    * Returns the children of the given topic that are leaves, sorted by name.
+    */
+   public ArrayList<TopicNode> getLeafChildren(int id) {
+      return getNodes(mPartitionedChildren, mLeafStart[id], mChildStart[id + 1]);
+   }
+
+   private ArrayList<TopicNode> getNodes(int[] ids, int start, int end) {
+      ArrayList<TopicNode> nodes = new ArrayList<TopicNode>(end - start);
+
+      for (int i = start; i < end; i++) {
+         nodes.add(getNode(ids[i]));
+      }
+
+      return nodes;
+   }
+
+   /**
+    * Splits each topic's children into non-leaves followed by leaves keeping
+    * their sorted order.
+    */
+   private void partitionChildren() {
+      for (int id = 0; id < mNames.length; id++) {
+         int position = mChildStart[id];
+
+         for (int i = mChildStart[id]; i < mChildStart[id + 1]; i++) {
+            if (!mLeaves[mChildren[i]]) {
+               mPartitionedChildren[position++] = mChildren[i];
+            }
+         }
+
+         mLeafStart[id] = position;
+
+         for (int i = mChildStart[id]; i < mChildStart[id + 1]; i++) {
+            if (mLeaves[mChildren[i]]) {
+               mPartitionedChildren[position++] = mChildren[i];
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns the id of the topic with the given name or -1 if there isn't one.
+    */
+   public int findId(String name) {
+      if (TopicNode.isRootName(name)) {
+         return ROOT_ID;
+      }
+
+      int low = 0;
+      int high = mIdsByName.length - 1;
+
+      while (low <= high) {
+         int middle = (low + high) >>> 1;
+         int comparison = mNames[mIdsByName[middle]].compareTo(name);
+
+         if (comparison < 0) {
+            low = middle + 1;
+         } else if (comparison > 0) {
+            high = middle - 1;
+         } else {
+            return mIdsByName[middle];
+         }
+      }
+
+      return -1;
+   }
+
+   private TopicNode getNode(int id) {
+      String displayName = mDisplayNames[id] == null ? mNames[id] : mDisplayNames[id];
+
+      return new TopicNode(this, id, mNames[id], displayName, mLeaves[id]);
+   }
+
+   private static File getFile(String siteName) {
+      return new File(App.get().getCacheDir(), FILE_PREFIX + siteName);
+   }
+
+   /**
+    * Writes the index to a temporary file first so a partially written index is
+    * never read back.
+    */
+   private void write(File file) {
+      File tempFile = new File(file.getPath() + ".tmp");
+      DataOutputStream out = null;
+      boolean written = false;
+
+      try {
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+         out.writeInt(VERSION);
+         out.writeUTF(mSourceDigest);
+         out.writeInt(mNames.length);
+
+         for (int i = 0; i < mNames.length; i++) {
+            out.writeUTF(mNames[i]);
+            out.writeUTF(mDisplayNames[i] == null ? "" : mDisplayNames[i]);
+            out.writeBoolean(mLeaves[i]);
+            out.writeInt(mChildStart[i]);
+         }
+
+         for (int child : mChildren) {
+            out.writeInt(child);
+         }
+
+         out.close();
+         out = null;
+         written = tempFile.renameTo(file);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write topic index", e);
+      } finally {
+         close(out);
+
+         if (!written) {
+            tempFile.delete();
+         }
+      }
+   }
+
+   private static String readSourceDigest(File file) {
+      DataInputStream in = null;
+
+      try {
+         in = new DataInputStream(new FileInputStream(file));
+
+         return in.readInt() == VERSION ? in.readUTF() : null;
+      } catch (IOException e) {
+         return null;
+      } finally {
+         close(in);
+      }
+   }
+
+   private static TopicIndex read(File file) {
+      if (!file.exists()) {
+         return null;
+      }
+
+      DataInputStream in = null;
+
+      try {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+         if (in.readInt() != VERSION) {
+            return null;
+         }
+
+         String sourceDigest = in.readUTF();
+         int count = in.readInt();
+         String[] names = new String[count];
+         String[] displayNames = new String[count];
+         boolean[] leaves = new boolean[count];
+         int[] childStart = new int[count + 1];
+
+         for (int i = 0; i < count; i++) {
+            names[i] = in.readUTF();
+            String displayName = in.readUTF();
+            displayNames[i] = displayName.length() == 0 ? null : displayName;
+            leaves[i] = in.readBoolean();
+            childStart[i] = in.readInt();
+         }
+
+         // Every topic but the root is a child of exactly one other topic.
+         int[] children = new int[count - 1];
+         for (int i = 0; i < children.length; i++) {
+            children[i] = in.readInt();
+         }
+         childStart[count] = children.length;
+
+         String siteName = file.getName().substring(FILE_PREFIX.length());
+
+         return new TopicIndex(siteName, sourceDigest, names, displayNames, leaves,
+          childStart, children);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read topic index", e);
+         file.delete();
+         return null;
+      } finally {
+         close(in);
+      }
+   }
+
+   private static void close(Closeable closeable) {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         } catch (IOException e) {
+            Log.w(TAG, "Failed to close topic index", e);
+         }
+      }
+   }
+
+   /**
+    * Stable sort of ids[start] through ids[end - 1] by name without boxing the
+    * ids.
+    */
+   private static void sortIds(int[] ids, int start, int end, String[] names,
+    boolean ignoreCase) {
+      if (end - start < 2) {
+         return;
+      }
+
+      mergeSort(ids, new int[end - start], start, end, names, ignoreCase);
+   }
+
+   private static void mergeSort(int[] ids, int[] scratch, int low, int high,
+    String[] names, boolean ignoreCase) {
+      if (high - low < 8) {
+         for (int i = low + 1; i < high; i++) {
+            int id = ids[i];
+            int j = i;
+
+            while (j > low && compare(names, ids[j - 1], id, ignoreCase) > 0) {
+               ids[j] = ids[j - 1];
+               j--;
+            }
+
+            ids[j] = id;
+         }
+
+         return;
+      }
+
+      int middle = (low + high) >>> 1;
+      mergeSort(ids, scratch, low, middle, names, ignoreCase);
+      mergeSort(ids, scratch, middle, high, names, ignoreCase);
+
+      if (compare(names, ids[middle - 1], ids[middle], ignoreCase) <= 0) {
+         return;
+      }
+
+      System.arraycopy(ids, low, scratch, 0, high - low);
+
+      int left = 0;
+      int leftEnd = middle - low;
+      int right = leftEnd;
+      int rightEnd = high - low;
+      for (int i = low; i < high; i++) {
+         if (right >= rightEnd || (left < leftEnd &&
+          compare(names, scratch[left], scratch[right], ignoreCase) <= 0)) {
+            ids[i] = scratch[left++];
+         } else {
+            ids[i] = scratch[right++];
+         }
+      }
+   }
+
+   private static int compare(String[] names, int first, int second, boolean ignoreCase) {
+      return ignoreCase ? names[first].compareToIgnoreCase(names[second]) :
+       names[first].compareTo(names[second]);
+   }
+
+   /**
+    * Builds an index from topics added in depth first order.
+    */
+   public static class Builder {
+      private final String mSiteName;
+      private final String mSourceDigest;
+      private final ArrayList<String> mNames = new ArrayList<String>();
+      private int[] mParents = new int[1024];
+      private boolean[] mLeaves = new boolean[1024];
+
+      public Builder(String siteName, String sourceDigest) {
+         mSiteName = siteName;
+         mSourceDigest = sourceDigest;
+
+         mNames.add(TopicNode.ROOT_NAME);
+         mParents[ROOT_ID] = -1;
+         mLeaves[ROOT_ID] = false;
+      }
+
+      public int getRootId() {
+         return ROOT_ID;
+      }
+
+      /**
+       * Adds a topic and returns its id.
+       */
+      public int addTopic(int parentId, String name, boolean leaf) {
+         int id = mNames.size();
+
+         if (id == mParents.length) {
+            int[] parents = new int[id * 2];
+            boolean[] leaves = new boolean[id * 2];
+            System.arraycopy(mParents, 0, parents, 0, id);
+            System.arraycopy(mLeaves, 0, leaves, 0, id);
+            mParents = parents;
+            mLeaves = leaves;
+         }
+
+         mNames.add(name);
+         mParents[id] = parentId;
+         mLeaves[id] = leaf;
+
+         return id;
+      }
+
+      public TopicIndex build(HashMap<String, String> displayNames) {
+         int count = mNames.size();
+         String[] names = mNames.toArray(new String[count]);
+         String[] displayNamesById = new String[count];
+         boolean[] leaves = new boolean[count];
+         int[] childStart = new int[count + 1];
+         int[] children = new int[count - 1];
+
+         for (int id = 0; id < count; id++) {
+            String displayName = displayNames.get(names[id]);
+
+            if (displayName != null && !displayName.equals(names[id])) {
+               displayNamesById[id] = displayName;
+            }
+
+            leaves[id] = mLeaves[id];
+         }
+
+         // Counting sort of the topics by parent.
+         for (int id = 1; id < count; id++) {
+            childStart[mParents[id] + 1]++;
+         }
+
+         for (int id = 0; id < count; id++) {
+            childStart[id + 1] += childStart[id];
+         }
+
+         int[] next = new int[count];
+         System.arraycopy(childStart, 0, next, 0, count);
+
+         for (int id = 1; id < count; id++) {
+            children[next[mParents[id]]++] = id;
+         }
+
+         // Sort siblings once here rather than every time a level is displayed.
+         for (int id = 0; id < count; id++) {
+            sortIds(children, childStart[id], childStart[id + 1], names, true);
+         }
+
+         return new TopicIndex(mSiteName, mSourceDigest, names, displayNamesById, leaves,
+          childStart, children);
+      }
+   }
+}
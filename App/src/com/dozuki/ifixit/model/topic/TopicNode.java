@@ -3,21 +3,51 @@ package com.dozuki.ifixit.model.topic;
 import java.io.Serializable;
 import java.util.ArrayList;
 
+/**
+ * A topic in the hierarchy. Children aren't held by the node but are looked up
+ * in the TopicIndex it came from so serializing a node doesn't serialize its
+ * entire subtree.
+ */
 public class TopicNode implements Serializable {
-   private static final long serialVersionUID = 1L;
+   private static final long serialVersionUID = 2L;
    protected static final String ROOT_NAME = "ROOT";
 
    private String mName;
    private String mDisplayName;
-   private ArrayList<TopicNode> mChildren;
+   private boolean mLeaf;
 
+   /**
+    * Index the node came from and its id in it. The id is only valid for that
+    * index so nodes that have been deserialized, or that outlive a refreshed
+    * hierarchy, look themselves up by name.
+    */
+   private transient TopicIndex mIndex;
+   private transient int mId = -1;
+
+   /**
+    * Creates the root of the current hierarchy.
+    */
    public TopicNode() {
       this(ROOT_NAME);
+      mLeaf = false;
    }
 
+   /**
+    * Creates a topic that isn't part of a hierarchy. It doesn't have children.
+    */
    public TopicNode(String name) {
       mName = name;
       mDisplayName = name;
+      mLeaf = true;
+   }
+
+   protected TopicNode(TopicIndex index, int id, String name, String displayName,
+    boolean leaf) {
+      mIndex = index;
+      mId = id;
+      mName = name;
+      mDisplayName = displayName;
+      mLeaf = leaf;
    }
 
    public String getName() {
@@ -32,16 +62,59 @@ public class TopicNode implements Serializable {
       mDisplayName = displayName;
    }
 
+   /**
+    * Returns the topic's children sorted by name or null if it is a leaf. The
+    * list is empty if the topic can't be found in the current index.
+    */
    public ArrayList<TopicNode> getChildren() {
-      return mChildren;
+      if (mLeaf) {
+         return null;
+      }
+
+      TopicIndex index = resolveIndex();
+
+      return index == null ? new ArrayList<TopicNode>() : index.getChildren(mId);
+   }
+
+   /**
+    * Returns the children that have children of their own, sorted by name.
+    */
+   public ArrayList<TopicNode> getNonLeafChildren() {
+      TopicIndex index = mLeaf ? null : resolveIndex();
+
+      return index == null ? new ArrayList<TopicNode>() : index.getNonLeafChildren(mId);
+   }
+
+   /**
+    * Returns the children that are leaves, sorted by name.
+    */
+   public ArrayList<TopicNode> getLeafChildren() {
+      TopicIndex index = mLeaf ? null : resolveIndex();
+
+      return index == null ? new ArrayList<TopicNode>() : index.getLeafChildren(mId);
    }
 
-   public void setChildren(ArrayList<TopicNode> children) {
-      mChildren = children;
+   /**
+    * Returns the current index with mId set to this topic's id in it, or null if
+    * the topic isn't in it or the index isn't loaded yet.
+    */
+   private TopicIndex resolveIndex() {
+      TopicIndex index = TopicIndex.getCurrent();
+
+      if (index == null) {
+         return null;
+      }
+
+      if (index != mIndex) {
+         mIndex = index;
+         mId = index.findId(mName);
+      }
+
+      return mId == -1 ? null : index;
    }
 
    public boolean isLeaf() {
-      return mChildren == null;
+      return mLeaf;
    }
 
    public boolean isRoot() {
@@ -41,6 +41,7 @@ public abstract class BaseActivity extends SherlockFragmentActivity {
    private static final int LOGGED_OUT_USERID = -1;
 
    private int mActivityid;
+   private boolean mDestroyed = false;
    private int mUserid;
    private Site mSite;
 
@@ -219,6 +220,14 @@ public abstract class BaseActivity extends SherlockFragmentActivity {
       return mActivityid;
    }
 
+   /**
+    * Returns true once onDestroy has been called. Activity.isDestroyed is
+    * only available on API 17 and up.
+    */
+   public boolean isActivityDestroyed() {
+      return mDestroyed;
+   }
+
    public void setTitle(String title) {
       if (App.get().getSite().actionBarUsesIcon()) {
          getSupportActionBar().setTitle(title);
@@ -291,6 +300,8 @@ public abstract class BaseActivity extends SherlockFragmentActivity {
    public void onDestroy() {
       super.onDestroy();
 
+      mDestroyed = true;
+
       if (App.inDebug()) {
          ViewServer.get(this).removeWindow(this);
       }
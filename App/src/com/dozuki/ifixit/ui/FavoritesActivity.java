@@ -5,7 +5,10 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.GridView;
+import android.widget.Toast;
 
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuItem;
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.guide.GuideInfo;
@@ -13,6 +16,8 @@ import com.dozuki.ifixit.ui.guide.view.GuideViewActivity;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.util.api.Api;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
+import com.dozuki.ifixit.util.StateCache;
 import com.google.analytics.tracking.android.Fields;
 import com.google.analytics.tracking.android.MapBuilder;
 import com.squareup.otto.Subscribe;
@@ -36,17 +41,34 @@ public class FavoritesActivity extends BaseMenuDrawerActivity {
       setContentView(R.layout.favorites);
 
       if (savedInstanceState != null) {
-         mGuides = (ArrayList<GuideInfo>)savedInstanceState.getSerializable(GUIDES_KEY);
-         initGridView();
+         StateCache.restore(savedInstanceState, GUIDES_KEY,
+          new StateCache.Callback<ArrayList<GuideInfo>>() {
+            public void onRestored(ArrayList<GuideInfo> guides) {
+               if (isActivityDestroyed()) {
+                  return;
+               }
+
+               if (guides != null) {
+                  mGuides = guides;
+                  initGridView();
+               } else {
+                  getFavorites();
+               }
+            }
+         });
       } else {
-         showLoading(R.id.favorites_loading);
-         Api.call(this, ApiCall.userFavorites(LIMIT, OFFSET));
+         getFavorites();
       }
 
       App.getGaTracker().set(Fields.SCREEN_NAME, "/user/guides/favorites");
       App.getGaTracker().send(MapBuilder.createAppView().build());
    }
 
+   private void getFavorites() {
+      showLoading(R.id.favorites_loading);
+      Api.call(this, ApiCall.userFavorites(LIMIT, OFFSET));
+   }
+
    private void initGridView() {
       mGridView = (GridView) findViewById(R.id.guide_grid);
       mGridView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
@@ -63,6 +85,35 @@ public class FavoritesActivity extends BaseMenuDrawerActivity {
 
       mGridView.setAdapter(new GuideListAdapter(this, mGuides, false));
       mGridView.setEmptyView(findViewById(R.id.favorites_empty_view));
+
+      supportInvalidateOptionsMenu();
+   }
+
+   @Override
+   public boolean onCreateOptionsMenu(Menu menu) {
+      getSupportMenuInflater().inflate(R.menu.favorites_menu, menu);
+
+      return super.onCreateOptionsMenu(menu);
+   }
+
+   @Override
+   public boolean onPrepareOptionsMenu(Menu menu) {
+      menu.findItem(R.id.download_favorites).setVisible(mGuides != null &&
+       !mGuides.isEmpty());
+
+      return super.onPrepareOptionsMenu(menu);
+   }
+
+   @Override
+   public boolean onOptionsItemSelected(MenuItem item) {
+      switch (item.getItemId()) {
+         case R.id.download_favorites:
+            OfflineGuideStore.get(this).downloadFavorites();
+            Toast.makeText(this, R.string.downloading_guides, Toast.LENGTH_SHORT).show();
+            return true;
+         default:
+            return super.onOptionsItemSelected(item);
+      }
    }
 
    @Subscribe
@@ -86,7 +137,7 @@ public class FavoritesActivity extends BaseMenuDrawerActivity {
    public void onSaveInstanceState(Bundle state) {
       super.onSaveInstanceState(state);
 
-      state.putSerializable(GUIDES_KEY, mGuides);
+      StateCache.put(state, GUIDES_KEY, mGuides);
    }
 
    @Override
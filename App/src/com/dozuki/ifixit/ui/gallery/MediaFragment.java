@@ -32,6 +32,8 @@ import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.CaptureHelper;
 import com.dozuki.ifixit.util.ImageSizes;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.api.UploadQueue;
+import com.dozuki.ifixit.util.StateCache;
 
 import java.io.File;
 import java.io.IOException;
@@ -48,7 +50,7 @@ public abstract class MediaFragment extends BaseFragment
    private static final String IMAGES_DOWNLOADED = "IMAGES_DOWNLOADED";
    private static final String HASH_MAP = "HASH_MAP";
    private static final String SHOWING_DELETE_KEY = "SHOWING_DELETE_KEY";
-   private static final int MAX_UPLOAD_COUNT = 4;
+   private static final int MAX_UPLOAD_COUNT = 20;
    private static final String RETURNING_VAL = "RETURNING_VAL";
    private static final String DELETE_MODE = "DELETE_MODE";
 
@@ -84,25 +86,16 @@ public abstract class MediaFragment extends BaseFragment
       View view = inflater.inflate(R.layout.gallery_view, container, false);
 
       if (savedInstanceState != null) {
-         mShowingDelete = savedInstanceState.getBoolean(SHOWING_DELETE_KEY);
-
-         mMediaList = (GalleryMediaList) savedInstanceState.getSerializable(GALLERY_MEDIA_LIST);
-
          mSelectForReturn = savedInstanceState.getBoolean(RETURNING_VAL);
 
-         if (mShowingDelete) {
-            createDeleteConfirmDialog().show();
-         }
-
          if (savedInstanceState.getString(CAMERA_PATH) != null) {
             mCameraTempFileName = savedInstanceState.getString(CAMERA_PATH);
          }
-      } else {
-         mMediaList = new GalleryMediaList();
       }
 
-      if (mMediaList.size() == 0 && !mNextPageRequestInProgress) {
-         retrieveUserMedia();
+      if (mMediaList == null) {
+         // Either new or not restored yet; it's loaded again if nothing is restored.
+         mMediaList = new GalleryMediaList();
       }
 
       mGridView = (GridView) view.findViewById(R.id.gridview);
@@ -113,9 +106,36 @@ public abstract class MediaFragment extends BaseFragment
       mGridView.setOnItemLongClickListener(this);
 
       if (savedInstanceState != null) {
-         if (savedInstanceState.getBoolean(DELETE_MODE)) {
-            setDeleteMode();
-         }
+         final boolean showingDelete = savedInstanceState.getBoolean(SHOWING_DELETE_KEY);
+         final boolean deleteMode = savedInstanceState.getBoolean(DELETE_MODE);
+
+         StateCache.restore(savedInstanceState, GALLERY_MEDIA_LIST,
+          new StateCache.Callback<GalleryMediaList>() {
+            public void onRestored(GalleryMediaList mediaList) {
+               if (!isAdded()) {
+                  return;
+               }
+
+               if (mediaList != null) {
+                  mMediaList = mediaList;
+                  mGalleryAdapter.notifyDataSetChanged();
+               }
+
+               if (mMediaList.size() == 0 && !mNextPageRequestInProgress) {
+                  retrieveUserMedia();
+               }
+
+               if (showingDelete) {
+                  createDeleteConfirmDialog().show();
+               }
+
+               if (deleteMode) {
+                  setDeleteMode();
+               }
+            }
+         });
+      } else if (mMediaList.size() == 0 && !mNextPageRequestInProgress) {
+         retrieveUserMedia();
       }
 
       return view;
@@ -168,7 +188,8 @@ public abstract class MediaFragment extends BaseFragment
             }
 
             String key = mGalleryAdapter.addUri(selectedImageUri);
-            Api.call(getSherlockActivity(), ApiCall.uploadImage(path, key));
+            UploadQueue.get(getActivity()).enqueue(getSherlockActivity(),
+             ApiCall.uploadImage(path, key));
          } else if (requestCode == CAMERA_PIC_REQUEST) {
             if (mCameraTempFileName == null) {
                Log.e("iFixit", "Error cameraTempFile is null!");
@@ -176,8 +197,8 @@ public abstract class MediaFragment extends BaseFragment
             }
 
             String key = mGalleryAdapter.addFile(mCameraTempFileName);
-            Api.call(getSherlockActivity(), ApiCall.uploadImage(
-             mCameraTempFileName, key));
+            UploadQueue.get(getActivity()).enqueue(getSherlockActivity(),
+             ApiCall.uploadImage(mCameraTempFileName, key));
          }
       }
    }
@@ -185,7 +206,7 @@ public abstract class MediaFragment extends BaseFragment
    @Override
    public void onSaveInstanceState(Bundle savedInstanceState) {
       super.onSaveInstanceState(savedInstanceState);
-      savedInstanceState.putSerializable(GALLERY_MEDIA_LIST, mMediaList);
+      StateCache.put(savedInstanceState, GALLERY_MEDIA_LIST, mMediaList);
       savedInstanceState.putBoolean(SHOWING_DELETE_KEY, mShowingDelete);
       savedInstanceState.putBoolean(RETURNING_VAL, mSelectForReturn);
       savedInstanceState.putBoolean(DELETE_MODE, mMode != null);
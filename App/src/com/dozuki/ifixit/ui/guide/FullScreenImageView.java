@@ -7,12 +7,14 @@ import android.util.Log;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.util.PicassoUtils;
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 import com.squareup.picasso.Target;
 import it.sephiroth.android.library.imagezoom.ImageViewTouch;
 
 public class FullScreenImageView extends ImageViewTouch implements Target {
    private final Context mContext;
    private String mImageUrl = "";
+   private int mMaxSize = 0;
 
    public FullScreenImageView(Context context, AttributeSet attrs) {
       super(context, attrs);
@@ -23,6 +25,13 @@ public class FullScreenImageView extends ImageViewTouch implements Target {
       mImageUrl = url;
    }
 
+   /**
+    * Limits the fallback image to maxSize pixels on its longest side.
+    */
+   public void setMaxSize(int maxSize) {
+      mMaxSize = maxSize;
+   }
+
    @Override
    public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
       setImageBitmap(bitmap);
@@ -34,8 +43,13 @@ public class FullScreenImageView extends ImageViewTouch implements Target {
          Log.e("FallbackImageView", "You must set the base Image url using setImageUrl.");
       }
 
-      PicassoUtils.with(mContext)
-       .load(mImageUrl)
+      RequestCreator request = PicassoUtils.with(mContext).load(mImageUrl);
+
+      if (mMaxSize > 0) {
+         request.resize(mMaxSize, mMaxSize).centerInside();
+      }
+
+      request
        .error(R.drawable.no_image)
        .into((Target) this);
    }
@@ -19,6 +19,7 @@ import com.dozuki.ifixit.model.VideoThumbnail;
 import com.dozuki.ifixit.ui.BaseFragment;
 import com.dozuki.ifixit.ui.guide.view.VideoViewActivity;
 import com.dozuki.ifixit.util.PicassoUtils;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
 
 public class StepVideoFragment extends BaseFragment {
 
@@ -78,7 +79,9 @@ public class StepVideoFragment extends BaseFragment {
        .error(R.drawable.no_image)
        .into(poster);
 
-      playButton.setTag(R.id.guide_step_view_video_url, mVideo.getEncodings().get(0).getURL());
+      // Play the downloaded copy if the guide is available offline.
+      playButton.setTag(R.id.guide_step_view_video_url, OfflineGuideStore.get(mContext)
+       .getLocalUrl(mVideo.getEncodings().get(0).getURL()));
       playButton.setOnClickListener(new View.OnClickListener() {
          @Override
          public void onClick(View v) {
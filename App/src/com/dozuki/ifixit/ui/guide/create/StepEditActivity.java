@@ -37,10 +37,13 @@ import com.dozuki.ifixit.ui.BaseMenuDrawerActivity;
 import com.dozuki.ifixit.ui.gallery.GalleryActivity;
 import com.dozuki.ifixit.ui.guide.view.GuideViewActivity;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.api.EditLog;
+import com.dozuki.ifixit.util.api.UploadQueue;
 import com.dozuki.ifixit.util.api.ApiError;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.JSONHelper;
+import com.dozuki.ifixit.util.StateCache;
 import com.google.analytics.tracking.android.Fields;
 import com.google.analytics.tracking.android.MapBuilder;
 import com.google.analytics.tracking.android.Tracker;
@@ -117,6 +120,24 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
 
    private int mExitCode;
 
+   /**
+    * Edits are saved once the author stops typing for this long.
+    */
+   private static final long AUTOSAVE_DELAY_MS = 2000;
+
+   private final Handler mAutosaveHandler = new Handler();
+   private final Runnable mAutosave = new Runnable() {
+      public void run() {
+         autosave();
+      }
+   };
+
+   /**
+    * Fields of saved steps as of their last save, keyed by stepid. Only fields
+    * that differ from these are sent.
+    */
+   private final HashMap<Integer, JSONObject> mSavedFields = new HashMap<Integer, JSONObject>();
+
    private static int mLoadingContainer = R.id.step_edit_loading_screen;
 
    private SharedPreferences mSharedPreferences;
@@ -133,8 +154,6 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
       mSharedPreferences = getSharedPreferences("com.dozuki.ifixit", Context.MODE_PRIVATE);
 
       if (savedInstanceState != null) {
-         mGuide = (Guide) savedInstanceState.getSerializable(StepsActivity.GUIDE_KEY);
-
          mPagePosition = savedInstanceState.getInt(GUIDE_STEP_NUM_KEY);
          mConfirmDelete = savedInstanceState.getBoolean(DELETE_GUIDE_DIALOG_KEY);
          mIsStepDirty = savedInstanceState.getBoolean(IS_GUIDE_DIRTY_KEY);
@@ -155,9 +174,9 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
          if (mConfirmDelete) {
             createDeleteDialog(this).show();
          }
-
       } else if (getIntent().getExtras() != null) {
          extractExtras(getIntent().getExtras());
+         showRejectedEdits();
       } else {
          // Creating a new guide
          initializeNewGuide();
@@ -171,11 +190,58 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
 
       toggleSave(mIsStepDirty);
 
-      if (mGuide != null) {
+      if (savedInstanceState != null) {
+         final Bundle state = savedInstanceState;
+
+         StateCache.restore(savedInstanceState, StepsActivity.GUIDE_KEY,
+          new StateCache.Callback<Guide>() {
+            public void onRestored(Guide guide) {
+               if (isActivityDestroyed()) {
+                  return;
+               }
+
+               if (guide != null) {
+                  mGuide = guide;
+               } else {
+                  reloadGuide(state);
+               }
+
+               if (mGuide != null) {
+                  initPage(mPagePosition);
+               }
+            }
+         });
+      } else if (mGuide != null) {
          initPage(mPagePosition);
       }
    }
 
+   /**
+    * Loads the guide again when the saved copy was lost with the process.
+    * Unsaved changes to the current step are lost with it.
+    */
+   private void reloadGuide(Bundle savedInstanceState) {
+      int guideid = savedInstanceState.getInt(GUIDE_ID_KEY, 0);
+
+      if (guideid == 0) {
+         // The guide hadn't been created yet so there is nothing to reload.
+         mIsStepDirty = false;
+         if (getIntent().getExtras() != null) {
+            extractExtras(getIntent().getExtras());
+         } else {
+            initializeNewGuide();
+         }
+         return;
+      }
+
+      mIsStepDirty = false;
+      mParentGuideId = getIntent().getIntExtra(PARENT_GUIDE_ID_KEY, NO_PARENT_GUIDE);
+      mInboundStepId = savedInstanceState.getInt(GUIDE_STEP_ID);
+
+      showLoading(mLoadingContainer);
+      Api.call(this, ApiCall.unpatrolledGuide(guideid));
+   }
+
    private void initializeNewGuide() {
       // Set the page title to "New Guide"
       getSupportActionBar().setTitle(getString(R.string.new_guide));
@@ -208,6 +274,9 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
       initPager();
       mPager.setCurrentItem(startPage);
 
+      mSavedFields.clear();
+      snapshotSteps();
+
       mTitleIndicator = (LockableTitlePageIndicator) findViewById(R.id.step_edit_top_bar);
       mTitleIndicator.setViewPager(mPager);
       mTitleIndicator.setOnPageChangeListener(new ViewPager.OnPageChangeListener() {
@@ -323,7 +392,7 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
                mGuide.getStep(mPagePosition).addImage(newThumb);
                refreshView(mPagePosition);
 
-               Api.call(this, ApiCall.uploadImageToStep(tempFileName));
+               UploadQueue.get(this).enqueue(this, ApiCall.uploadImageToStep(tempFileName));
             }
             break;
          case StepEditLinesFragment.MIC_REQUEST_CODE:
@@ -371,10 +440,26 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
       }
    }
 
+   @Override
+   public void onPause() {
+      super.onPause();
+
+      // Don't leave edits waiting on the timer when the user moves on.
+      mAutosaveHandler.removeCallbacks(mAutosave);
+      autosave();
+   }
+
    @Override
    public void onSaveInstanceState(Bundle savedInstanceState) {
       super.onSaveInstanceState(savedInstanceState);
-      savedInstanceState.putSerializable(StepsActivity.GUIDE_KEY, mGuide);
+      StateCache.put(savedInstanceState, StepsActivity.GUIDE_KEY, mGuide);
+      if (mGuide != null) {
+         // Enough to load the guide again if the saved copy is lost.
+         savedInstanceState.putInt(GUIDE_ID_KEY, mGuide.getGuideid());
+         if (mPagePosition < mGuide.getSteps().size()) {
+            savedInstanceState.putInt(GUIDE_STEP_ID, mGuide.getStep(mPagePosition).getStepid());
+         }
+      }
       savedInstanceState.putBoolean(DELETE_GUIDE_DIALOG_KEY, mConfirmDelete);
       savedInstanceState.putInt(StepEditActivity.GUIDE_STEP_NUM_KEY, mPagePosition);
       savedInstanceState.putBoolean(IS_GUIDE_DIRTY_KEY, mIsStepDirty);
@@ -571,23 +656,72 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
             }
          }
          initPage(startPagePosition);
+         showRejectedEdits();
       } else {
          Api.getErrorDialog(this, event).show();
       }
    }
 
+   /**
+    * Tells the user about edits to the guide that the server rejected while
+    * they were synced in the background, usually after the activity that
+    * made them was gone, and lets them send the edits again or drop them.
+    */
+   private void showRejectedEdits() {
+      if (mGuide == null || mGuide.getGuideid() == 0) {
+         return;
+      }
+
+      final int rejected = EditLog.get(this).getRejectedCount(mGuide.getGuideid());
+
+      if (rejected == 0) {
+         return;
+      }
+
+      AlertDialog.Builder builder = new AlertDialog.Builder(this);
+      builder.setTitle(R.string.invalid_revision_error_title)
+       .setMessage(getString(R.string.rejected_edits_message, rejected))
+       .setPositiveButton(R.string.try_again, new DialogInterface.OnClickListener() {
+          public void onClick(DialogInterface dialog, int id) {
+             EditLog.get(StepEditActivity.this).retryRejected(mGuide);
+             dialog.dismiss();
+          }
+       })
+       .setNegativeButton(R.string.discard_changes, new DialogInterface.OnClickListener() {
+          public void onClick(DialogInterface dialog, int id) {
+             EditLog.get(StepEditActivity.this).discardRejected(mGuide.getGuideid());
+             dialog.dismiss();
+          }
+       });
+
+      builder.create().show();
+   }
+
    @Subscribe
    public void onStepSave(ApiEvent.StepSave event) {
       hideLoading();
 
       if (!event.hasError() || event.getError().mType == ApiError.Type.CONFLICT) {
-         updateCurrentStep(event.getResult());
+         updateSavedStep(event.getResult(), event.hasError());
       }
 
       if (event.hasError()) {
-         mIsStepDirty = true;
-         toggleSave(mIsStepDirty);
          final ApiError error = event.getError();
+         // Edits are synced in the background so the failed step isn't
+         // necessarily the one that was saved last, or still in the guide.
+         final int stepid = event.mApiCall.getEditedStepid();
+         GuideStep step = mGuide.getStepById(stepid);
+         int position = step == null ? -1 : mGuide.getSteps().indexOf(step);
+
+         if (position != -1 && position == mPagePosition) {
+            mIsStepDirty = true;
+            toggleSave(mIsStepDirty);
+         }
+
+         if (error.mType != ApiError.Type.CONFLICT) {
+            // The server didn't take the changes so all fields go next time.
+            mSavedFields.remove(stepid);
+         }
 
          if (error.mType == ApiError.Type.VALIDATION) {
 
@@ -601,9 +735,8 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
                  public void onClick(DialogInterface dialog, int id) {
                     dialog.dismiss();
 
-                    if (error.mIndex != -1) {
-                       App.getBus().post(new StepLineValidationEvent(
-                        mGuide.getStep(mSavePosition).getStepid(), error.mIndex));
+                    if (error.mIndex != -1 && stepid != -1) {
+                       App.getBus().post(new StepLineValidationEvent(stepid, error.mIndex));
                     }
                  }
               });
@@ -700,6 +833,7 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
 
       if (!event.hasError()) {
          mGuide = event.getResult();
+         snapshotSteps();
 
          refreshView(mSavePosition);
 
@@ -764,6 +898,10 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
    public void onGuideChanged(StepChangedEvent event) {
       mIsStepDirty = true;
       toggleSave(mIsStepDirty);
+
+      // Restarted on every change so a burst of typing is saved once.
+      mAutosaveHandler.removeCallbacks(mAutosave);
+      mAutosaveHandler.postDelayed(mAutosave, AUTOSAVE_DELAY_MS);
    }
 
    /////////////////////////////////////////////////////
@@ -1103,23 +1241,115 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
          return;
       }
 
+      mAutosaveHandler.removeCallbacks(mAutosave);
       mSavePosition = savePosition;
       mIsStepDirty = false;
 
       InputMethodManager imm = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
       imm.hideSoftInputFromWindow(getCurrentFocus().getWindowToken(), 0);
 
-      showLoading(mLoadingContainer, getString(R.string.saving));
       toggleSave(mIsStepDirty);
 
       if (step.getRevisionid() != null) {
-         Api.call(this, ApiCall.editStep(step, mGuide.getGuideid()));
+         logStepEdit(step);
       } else {
+         // New steps need their stepid from the server before anything else
+         // can refer to them.
+         showLoading(mLoadingContainer, getString(R.string.saving));
          Api.call(this, ApiCall.createStep(step, mGuide.getGuideid(),
           mPagePosition + 1, mGuide.getRevisionid()));
       }
    }
 
+   /**
+    * Saves the current step without the prompts a manual save shows. New steps
+    * are left for the user to save because they have to be created on the
+    * server first.
+    */
+   private void autosave() {
+      if (!mIsStepDirty || mLockSave || mGuide == null || mGuide.isNewGuide() ||
+       mPagePosition >= mGuide.getSteps().size()) {
+         return;
+      }
+
+      GuideStep step = mGuide.getStep(mPagePosition);
+
+      if (step.getRevisionid() == null || !stepHasLineContent(step)) {
+         return;
+      }
+
+      mSavePosition = mPagePosition;
+      mIsStepDirty = false;
+      toggleSave(mIsStepDirty);
+
+      logStepEdit(step);
+   }
+
+   /**
+    * Logs the fields of the step that changed since it was last saved. The
+    * edit log syncs them in the background so editing never waits on the
+    * network.
+    */
+   private void logStepEdit(GuideStep step) {
+      JSONObject fields = ApiCall.getStepFields(step);
+
+      if (fields == null) {
+         Log.e(TAG, "Failed to serialize step " + step.getStepid());
+         return;
+      }
+
+      JSONObject saved = mSavedFields.put(step.getStepid(), fields);
+      JSONObject changed = saved == null ? fields : getChangedFields(saved, fields);
+
+      if (changed.length() == 0) {
+         return;
+      }
+
+      EditLog.get(this).editStep(this, step, mGuide.getGuideid(), changed);
+   }
+
+   private static JSONObject getChangedFields(JSONObject saved, JSONObject fields) {
+      JSONObject changed = new JSONObject();
+      Iterator<?> keys = fields.keys();
+
+      try {
+         while (keys.hasNext()) {
+            String key = (String)keys.next();
+            Object value = fields.get(key);
+
+            if (!value.toString().equals(String.valueOf(saved.opt(key)))) {
+               changed.put(key, value);
+            }
+         }
+      } catch (JSONException e) {
+         return fields;
+      }
+
+      return changed;
+   }
+
+   /**
+    * Records the fields of every saved step that doesn't have them yet. The
+    * current step is skipped if it has unsaved changes, e.g. after a restore,
+    * so all of its fields are sent on the next save.
+    */
+   private void snapshotSteps() {
+      for (int i = 0; i < mGuide.getSteps().size(); i++) {
+         GuideStep step = mGuide.getStep(i);
+
+         if (step.getRevisionid() == null || mSavedFields.containsKey(step.getStepid()) ||
+          (mIsStepDirty && i == mPagePosition)) {
+            continue;
+         }
+
+         JSONObject fields = ApiCall.getStepFields(step);
+
+         if (fields != null) {
+            mSavedFields.put(step.getStepid(), fields);
+         }
+      }
+   }
+
    private boolean stepHasLineContent(GuideStep obj) {
       return stepHasLineContent(obj.getLines());
    }
@@ -1259,6 +1489,37 @@ public class StepEditActivity extends BaseMenuDrawerActivity implements OnClickL
       }
    }
 
+   /**
+    * Applies a step the edit log synced. Edits are synced in the background so
+    * the step may have moved or been edited again since; in that case only
+    * the revision is taken so the newer local changes aren't lost.
+    */
+   private void updateSavedStep(GuideStep saved, boolean conflict) {
+      GuideStep step = mGuide.getStepById(saved.getStepid());
+
+      if (step == null) {
+         return;
+      }
+
+      int position = mGuide.getSteps().indexOf(step);
+      boolean editedSince = EditLog.get(this).hasPendingStepEdit(mGuide.getGuideid(),
+       saved.getStepid()) || (mIsStepDirty && position == mPagePosition);
+
+      if (!conflict && editedSince) {
+         step.setRevisionid(saved.getRevisionid());
+         return;
+      }
+
+      mGuide.getSteps().set(position, saved);
+
+      JSONObject fields = ApiCall.getStepFields(saved);
+      if (fields != null) {
+         mSavedFields.put(saved.getStepid(), fields);
+      }
+
+      refreshView(position);
+   }
+
    private void updateCurrentStep(GuideStep step) {
       // Update the guide on successful save or conflict.
       mGuide.getSteps().set(mSavePosition, step);
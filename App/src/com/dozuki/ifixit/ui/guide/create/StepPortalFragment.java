@@ -23,6 +23,7 @@ import com.dozuki.ifixit.ui.guide.view.GuideViewActivity;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiError;
 import com.dozuki.ifixit.util.api.ApiEvent;
+import com.dozuki.ifixit.util.api.EditLog;
 import com.dozuki.ifixit.util.api.Api;
 import com.squareup.otto.Subscribe;
 
@@ -205,7 +206,11 @@ public class StepPortalFragment extends BaseFragment implements
    public void onStepReorder(ApiEvent.StepReorder event) {
       ((StepsActivity)getActivity()).hideLoading();
 
-      if (!event.hasError() || event.getError().mType == ApiError.Type.CONFLICT) {
+      if (!event.hasError() && EditLog.get(getActivity()).hasPendingReorder(
+       mGuide.getGuideid())) {
+         // A newer order is still waiting to be synced; only take the revision.
+         mGuide.setRevisionid(event.getResult().getRevisionid());
+      } else if (!event.hasError() || event.getError().mType == ApiError.Type.CONFLICT) {
          mGuide = event.getResult();
 
          mStepAdapter.notifyDataSetChanged();
@@ -225,8 +230,7 @@ public class StepPortalFragment extends BaseFragment implements
    public void onReorderComplete(boolean reodered) {
       if (reodered) {
          mStepAdapter.notifyDataSetChanged();
-         ((StepsActivity) getActivity()).showLoading();
-         Api.call(getActivity(), ApiCall.reorderSteps(mGuide));
+         EditLog.get(getActivity()).reorderSteps(getActivity(), mGuide);
       }
    }
 
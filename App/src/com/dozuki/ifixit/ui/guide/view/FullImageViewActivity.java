@@ -1,6 +1,7 @@
 package com.dozuki.ifixit.ui.guide.view;
 
 import android.os.Bundle;
+import android.util.DisplayMetrics;
 import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.WindowManager;
@@ -32,23 +33,35 @@ public class FullImageViewActivity extends SherlockActivity {
       String url = (String) getIntent().getExtras().get(IMAGE_URL);
       Picasso picasso = PicassoUtils.with(this);
 
+      // Decoding beyond the screen's size only costs memory; the zoom is
+      // limited anyway.
+      DisplayMetrics metrics = getResources().getDisplayMetrics();
+      int maxSize = Math.max(metrics.widthPixels, metrics.heightPixels);
+
       setContentView(R.layout.full_screen_image);
       final FullScreenImageView image = (FullScreenImageView) findViewById(R.id.image_zoom);
       image.setImageUrl(url);
+      image.setMaxSize(maxSize);
       image.setDisplayType(ImageViewTouchBase.DisplayType.FIT_TO_SCREEN);
 
       if (url.startsWith("http")) {
          url += sizes.getFull();
 
          picasso.load(url)
+          .resize(maxSize, maxSize)
+          .centerInside()
           .error(R.drawable.no_image)
           .into((Target) image);
       } else if (url.startsWith("content://")) {
          picasso.load(url)
+          .resize(maxSize, maxSize)
+          .centerInside()
           .error(R.drawable.no_image)
           .into((Target) image);
       } else {
          picasso.load(new File(url))
+          .resize(maxSize, maxSize)
+          .centerInside()
           .error(R.drawable.no_image)
           .into((Target) image);
       }
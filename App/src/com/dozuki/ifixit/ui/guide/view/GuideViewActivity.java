@@ -18,10 +18,14 @@ import com.dozuki.ifixit.ui.BaseMenuDrawerActivity;
 import com.dozuki.ifixit.ui.guide.create.GuideIntroActivity;
 import com.dozuki.ifixit.ui.guide.create.StepEditActivity;
 import com.dozuki.ifixit.ui.guide.create.StepsActivity;
+import com.dozuki.ifixit.util.PicassoUtils;
 import com.dozuki.ifixit.util.SpeechCommander;
+import com.dozuki.ifixit.util.StateCache;
+import com.dozuki.ifixit.util.StepLineCache;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
 import com.google.analytics.tracking.android.Fields;
 import com.google.analytics.tracking.android.MapBuilder;
 import com.google.analytics.tracking.android.Tracker;
@@ -54,6 +58,7 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
    private TitlePageIndicator mIndicator;
    private int mInboundStepId = DEFAULT_INBOUND_STEPID;
    private GuideViewAdapter mAdapter;
+   private StepPrefetcher mPrefetcher;
    private boolean mFavoriting = false;
    private Toast mToast;
 
@@ -79,26 +84,33 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       if (savedInstanceState != null) {
          mGuideid = savedInstanceState.getInt(GUIDEID);
          mFavoriting = savedInstanceState.getBoolean(FAVORITING);
+         final int currentPage = savedInstanceState.getInt(CURRENT_PAGE);
 
-         if (savedInstanceState.containsKey(SAVED_GUIDE)) {
-            mGuide = (Guide) savedInstanceState.getSerializable(SAVED_GUIDE);
-         }
-
-         if (mGuide != null) {
-            mCurrentPage = savedInstanceState.getInt(CURRENT_PAGE);
+         StateCache.restore(savedInstanceState, SAVED_GUIDE,
+          new StateCache.Callback<Guide>() {
+            public void onRestored(Guide guide) {
+               if (isActivityDestroyed()) {
+                  return;
+               }
 
-            setGuide(mGuide, mCurrentPage);
-            mIndicator.setCurrentItem(mCurrentPage);
-            mPager.setCurrentItem(mCurrentPage);
-         }
+               if (guide != null) {
+                  mCurrentPage = currentPage;
+                  setGuide(guide, mCurrentPage);
+                  mIndicator.setCurrentItem(mCurrentPage);
+                  mPager.setCurrentItem(mCurrentPage);
+               } else {
+                  getGuide(mGuideid);
+               }
+            }
+         });
       } else {
          extractExtras(getIntent().getExtras());
-      }
 
-      if (mGuide != null) {
-         setGuide(mGuide, mCurrentPage);
-      } else {
-         getGuide(mGuideid);
+         if (mGuide != null) {
+            setGuide(mGuide, mCurrentPage);
+         } else {
+            getGuide(mGuideid);
+         }
       }
 
       //initSpeechRecognizer();
@@ -139,6 +151,14 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       if (mSpeechCommander != null) {
          mSpeechCommander.destroy();
       }
+
+      if (mPrefetcher != null) {
+         mPrefetcher.cancel();
+      }
+
+      if (App.inDebug()) {
+         Log.d("GuideViewActivity", PicassoUtils.getStats(this));
+      }
    }
 
    @Override
@@ -165,7 +185,7 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       super.onSaveInstanceState(state);
 
       state.putInt(GUIDEID, mGuideid);
-      state.putSerializable(SAVED_GUIDE, mGuide);
+      StateCache.put(state, SAVED_GUIDE, mGuide);
       state.putInt(CURRENT_PAGE, mCurrentPage);
       state.putBoolean(FAVORITING, mFavoriting);
    }
@@ -186,6 +206,13 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       favoriteGuide.setEnabled(!mFavoriting && mGuide != null);
       favoriteGuide.setTitle(favorited ? R.string.unfavorite_guide : R.string.favorite_guide);
 
+      MenuItem downloadGuide = menu.findItem(R.id.download_guide);
+      OfflineGuideStore store = OfflineGuideStore.get(this);
+
+      downloadGuide.setEnabled(mGuide != null && !store.isDownloading(mGuideid));
+      downloadGuide.setTitle(store.isDownloaded(mGuideid) ? R.string.remove_offline_guide :
+       R.string.download_guide);
+
       return super.onPrepareOptionsMenu(menu);
    }
 
@@ -235,6 +262,19 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
             supportInvalidateOptionsMenu();
             getGuide(mGuideid);
             return true;
+         case R.id.download_guide:
+            OfflineGuideStore store = OfflineGuideStore.get(this);
+
+            if (store.isDownloaded(mGuideid)) {
+               store.remove(mGuideid);
+               toast(R.string.offline_guide_removed, Toast.LENGTH_SHORT);
+            } else {
+               store.downloadGuide(mGuideid);
+               toast(R.string.downloading_guide, Toast.LENGTH_SHORT);
+            }
+
+            supportInvalidateOptionsMenu();
+            return true;
          case R.id.favorite_guide:
             // Current favorite state.
             boolean favorited = mGuide == null ? false : mGuide.isFavorited();
@@ -278,6 +318,10 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
                }
             }
             setGuide(guide, mCurrentPage);
+         } else if (!event.mStoredResponse &&
+          !mGuide.getRevisionid().equals(event.getResult().getRevisionid())) {
+            // The guide was displayed from a stored response and has since changed.
+            setGuide(event.getResult(), mCurrentPage);
          }
       } else {
          Api.getErrorDialog(this, event).show();
@@ -303,6 +347,23 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       supportInvalidateOptionsMenu();
    }
 
+   @Subscribe
+   public void onOfflineProgress(OfflineGuideStore.Progress progress) {
+      if (progress.mGuideid != mGuideid ||
+       progress.mState == OfflineGuideStore.State.DOWNLOADING) {
+         return;
+      }
+
+      if (progress.mState == OfflineGuideStore.State.REMOVED) {
+         supportInvalidateOptionsMenu();
+         return;
+      }
+
+      toast(progress.mState == OfflineGuideStore.State.COMPLETE ? R.string.guide_downloaded :
+       R.string.guide_download_failed, Toast.LENGTH_SHORT);
+      supportInvalidateOptionsMenu();
+   }
+
    public void onLogin(LoginEvent.Login event) {
       if (mFavoriting) {
          toast(mGuide.isFavorited() ? R.string.unfavoriting :
@@ -330,6 +391,7 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
       }
 
       mGuide = guide;
+      StepLineCache.prerender(mGuide);
 
       Tracker tracker = App.getGaTracker();
 
@@ -341,6 +403,12 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
 
       mAdapter = new GuideViewAdapter(this.getSupportFragmentManager(), mGuide);
 
+      if (mPrefetcher != null) {
+         mPrefetcher.cancel();
+      }
+      mPrefetcher = new StepPrefetcher(this, mGuide, mAdapter.getStepOffset());
+      mPrefetcher.onPageSelected(currentPage);
+
       mPager.setAdapter(mAdapter);
       mPager.setVisibility(View.VISIBLE);
       mPager.setCurrentItem(currentPage);
@@ -423,6 +491,10 @@ public class GuideViewActivity extends BaseMenuDrawerActivity implements
    public void onPageSelected(int currentPage) {
       mCurrentPage = currentPage;
 
+      if (mPrefetcher != null) {
+         mPrefetcher.onPageSelected(currentPage);
+      }
+
       String label = mAdapter.getFragmentScreenLabel(currentPage);
       Tracker tracker = App.getGaTracker();
       tracker.set(Fields.SCREEN_NAME, label);
@@ -78,7 +78,7 @@ public class StepLinesFragment extends BaseFragment {
          if (stepLine == null) {
             stepLine = new GuideStepLineView(mContext);
          }
-         stepLine.setLine(mLines.get(position));
+         stepLine.setLine(mStep, mLines.get(position));
          return stepLine;
       }
    }
@@ -0,0 +1,160 @@
+package com.dozuki.ifixit.ui.guide.view;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.util.ImageSizes;
+import com.dozuki.ifixit.util.PicassoUtils;
+import com.dozuki.ifixit.util.StepLineCache;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.Target;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prepares the steps the user is about to swipe to so the pages are ready by
+ * the time the ViewPager creates them. The next few steps in the direction of
+ * the last swipe have their text rendered and their images loaded into
+ * Picasso's memory cache; loads for steps that are no longer ahead are
+ * canceled.
+ */
+public class StepPrefetcher {
+   private static final String TAG = "StepPrefetcher";
+
+   /**
+    * Number of steps to prepare ahead of the current page. The ViewPager
+    * already builds the adjacent page itself.
+    */
+   private static final int LOOKAHEAD = 3;
+
+   private final Picasso mPicasso;
+   private final ImageSizes mImageSizes;
+   private final Guide mGuide;
+   private final int mStepOffset;
+   private int mLastPosition = -1;
+
+   /**
+    * Loads in progress keyed by URL. Picasso only keeps weak references to
+    * Targets so they must be held here until they finish.
+    */
+   private final LinkedHashMap<String, PrefetchTarget> mPending =
+    new LinkedHashMap<String, PrefetchTarget>();
+
+   public StepPrefetcher(Context context, Guide guide, int stepOffset) {
+      mPicasso = PicassoUtils.with(context);
+      mImageSizes = App.get().getImageSizes();
+      mGuide = guide;
+      mStepOffset = stepOffset;
+   }
+
+   public void onPageSelected(int position) {
+      int direction = position >= mLastPosition ? 1 : -1;
+      mLastPosition = position;
+
+      ArrayList<GuideStep> steps = new ArrayList<GuideStep>();
+      int stepNumber = position - mStepOffset;
+
+      for (int i = 1; i <= LOOKAHEAD; i++) {
+         int next = stepNumber + direction * i;
+
+         if (next >= 0 && next < mGuide.getNumSteps()) {
+            steps.add(mGuide.getStep(next));
+         }
+      }
+
+      StepLineCache.prerender(steps);
+      prefetchImages(getImageUrls(steps));
+   }
+
+   /**
+    * Cancels all outstanding loads.
+    */
+   public void cancel() {
+      for (PrefetchTarget target : mPending.values()) {
+         mPicasso.cancelRequest(target);
+      }
+
+      mPending.clear();
+   }
+
+   /**
+    * Nearest steps first. The first image of each step is shown at the main
+    * size straight away and every image has a thumbnail; other main sizes are
+    * only loaded when a thumbnail is tapped so they aren't worth the memory.
+    */
+   private LinkedHashSet<String> getImageUrls(List<GuideStep> steps) {
+      LinkedHashSet<String> urls = new LinkedHashSet<String>();
+
+      for (GuideStep step : steps) {
+         List<Image> images = step.getImages();
+
+         if (images.isEmpty() || images.get(0).hasLocalPath()) {
+            continue;
+         }
+
+         urls.add(images.get(0).getPath(mImageSizes.getMain()));
+
+         for (Image image : images) {
+            if (!image.hasLocalPath()) {
+               urls.add(image.getPath(mImageSizes.getThumb()));
+            }
+         }
+      }
+
+      return urls;
+   }
+
+   private void prefetchImages(LinkedHashSet<String> urls) {
+      Iterator<Map.Entry<String, PrefetchTarget>> iterator = mPending.entrySet().iterator();
+
+      while (iterator.hasNext()) {
+         Map.Entry<String, PrefetchTarget> entry = iterator.next();
+
+         if (!urls.contains(entry.getKey())) {
+            mPicasso.cancelRequest(entry.getValue());
+            iterator.remove();
+         }
+      }
+
+      // Picasso has no request priorities so requests are made nearest first.
+      for (String url : urls) {
+         if (!mPending.containsKey(url)) {
+            PrefetchTarget target = new PrefetchTarget(url);
+
+            mPending.put(url, target);
+            mPicasso.load(url).into(target);
+         }
+      }
+   }
+
+   private class PrefetchTarget implements Target {
+      private final String mUrl;
+
+      public PrefetchTarget(String url) {
+         mUrl = url;
+      }
+
+      public void onBitmapLoaded(Bitmap bitmap, Picasso.LoadedFrom loadedFrom) {
+         // The bitmap is now in Picasso's memory cache which is all we wanted.
+         mPending.remove(mUrl);
+      }
+
+      public void onBitmapFailed() {
+         if (App.inDebug()) {
+            Log.d(TAG, "Failed to prefetch " + mUrl);
+         }
+
+         mPending.remove(mUrl);
+      }
+   }
+}
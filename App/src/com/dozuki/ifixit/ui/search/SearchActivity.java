@@ -3,6 +3,7 @@ package com.dozuki.ifixit.ui.search;
 import android.app.SearchManager;
 import android.content.Context;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.SearchRecentSuggestions;
 import android.support.v4.app.Fragment;
@@ -18,11 +19,14 @@ import com.actionbarsherlock.view.Menu;
 import com.actionbarsherlock.view.MenuItem;
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.R;
+import com.dozuki.ifixit.model.search.SearchResult;
 import com.dozuki.ifixit.model.search.SearchResults;
 import com.dozuki.ifixit.ui.BaseSearchMenuDrawerActivity;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.api.ApiError;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.util.api.Api;
+import com.dozuki.ifixit.util.api.SearchDatabase;
 import com.squareup.otto.Subscribe;
 
 import java.io.UnsupportedEncodingException;
@@ -35,6 +39,7 @@ public class SearchActivity extends BaseSearchMenuDrawerActivity {
    private static final String TOPIC_SEARCH_FRAGMENT = "TOPIC_SEARCH_FRAGMENT";
    private static final String GUIDE_SEARCH_FRAGMENT = "GUIDE_SEARCH_FRAGMENT";
    private static final String SEARCH_QUERY = "SEARCH_QUERY";
+   private static final int LOCAL_RESULT_LIMIT = 20;
 
    private String mQuery = "";
    private Spinner mSpinner;
@@ -42,6 +47,7 @@ public class SearchActivity extends BaseSearchMenuDrawerActivity {
    private String mCurrentTag;
    private TextView mResultCount;
    private boolean mFocusSearch = false;
+   private int mLocalSearchId = 0;
 
    public static Intent viewSearch(Context context, String query) {
       Intent intent = new Intent(context, SearchActivity.class);
@@ -107,26 +113,90 @@ public class SearchActivity extends BaseSearchMenuDrawerActivity {
    @SuppressWarnings("unused")
    @Subscribe
    public void onSearchResults(ApiEvent.Search event) {
-      hideLoading();
+      boolean offline = event.hasError() &&
+       event.getError().mType == ApiError.Type.CONNECTION;
 
-      if (!event.hasError()) {
-         SearchResults search = event.getResult();
+      if (event.hasError() && !offline) {
+         hideLoading();
+         Api.getErrorDialog(this, event).show();
+         return;
+      }
 
-         mResultCount.setText(getString(R.string.result_count, search.mTotalResults));
+      SearchResults remote = offline ? null : event.getResult();
 
-         FragmentManager fm = getSupportFragmentManager();
-         FragmentTransaction ft = fm.beginTransaction();
+      if (remote != null && remote.mOffset > 0) {
+         // Local results are only merged into the first page.
+         hideLoading();
+         showSearchResults(remote);
+      } else {
+         searchLocally(remote, event);
+      }
+   }
 
-         Fragment frag = fm.findFragmentByTag(mCurrentTag);
+   /**
+    * Searches the guides and topics that have been loaded before and shows them
+    * along with the remote results, if there are any.
+    */
+   private void searchLocally(final SearchResults remote, final ApiEvent.Search event) {
+      final String query = mQuery;
+      final int type = mSpinnerPosition == TOPIC_POSITION ? SearchDatabase.TYPE_TOPIC :
+       SearchDatabase.TYPE_GUIDE;
+      final int searchId = ++mLocalSearchId;
+
+      new AsyncTask<Void, Void, SearchResults>() {
+         @Override
+         protected SearchResults doInBackground(Void... params) {
+            return SearchDatabase.get(SearchActivity.this).search(query, type,
+             LOCAL_RESULT_LIMIT);
+         }
 
-         if (frag == null) {
-            frag = SearchFragment.newInstance(search);
-            ft.replace(R.id.search_results_container, frag, mCurrentTag).commit();
-         } else {
-            ((SearchFragment) frag).setSearchResults(search);
+         @Override
+         protected void onPostExecute(SearchResults local) {
+            // A newer search has been made since this one started.
+            if (searchId != mLocalSearchId || isFinishing()) {
+               return;
+            }
+
+            hideLoading();
+
+            if (remote == null) {
+               if (local.mResults.isEmpty()) {
+                  Api.getErrorDialog(SearchActivity.this, event).show();
+               } else {
+                  showSearchResults(local);
+               }
+
+               return;
+            }
+
+            int added = 0;
+            for (SearchResult result : local.mResults) {
+               if (!remote.mResults.contains(result)) {
+                  remote.mResults.add(result);
+                  added++;
+               }
+            }
+
+            remote.mLocalResults = added;
+            showSearchResults(remote);
          }
+      }.execute();
+   }
+
+   private void showSearchResults(SearchResults search) {
+      mResultCount.setText(getString(R.string.result_count,
+       search.mTotalResults + search.mLocalResults));
+
+      FragmentManager fm = getSupportFragmentManager();
+      FragmentTransaction ft = fm.beginTransaction();
+
+      Fragment frag = fm.findFragmentByTag(mCurrentTag);
+
+      if (frag == null) {
+         frag = SearchFragment.newInstance(search);
+         ft.replace(R.id.search_results_container, frag, mCurrentTag).commit();
       } else {
-         Api.getErrorDialog(this, event).show();
+         ((SearchFragment) frag).setSearchResults(search);
       }
    }
 
@@ -11,6 +11,7 @@ import com.dozuki.ifixit.ui.BaseListFragment;
 import com.dozuki.ifixit.ui.EndlessScrollListener;
 import com.dozuki.ifixit.util.api.Api;
 import com.dozuki.ifixit.util.api.ApiCall;
+import com.dozuki.ifixit.util.StateCache;
 
 import java.util.ArrayList;
 
@@ -47,8 +48,6 @@ public class SearchFragment extends BaseListFragment {
 
       if (args != null) {
          mSearch = (SearchResults) args.getSerializable(SEARCH_RESULTS_KEY);
-      } else if (savedInstanceState != null) {
-         mSearch = (SearchResults) savedInstanceState.getSerializable(SEARCH_RESULTS_KEY);
       }
 
       if (mSearch != null) {
@@ -58,6 +57,22 @@ public class SearchFragment extends BaseListFragment {
       mAdapter = new SearchAdapter(mSearchResults, getActivity());
       setListAdapter(mAdapter);
 
+      if (args == null && savedInstanceState != null) {
+         StateCache.restore(savedInstanceState, SEARCH_RESULTS_KEY,
+          new StateCache.Callback<SearchResults>() {
+            public void onRestored(SearchResults search) {
+               if (search == null || !isAdded()) {
+                  return;
+               }
+
+               mSearch = search;
+               mSearchResults = search.mResults;
+               mAdapter.setSearchResults(mSearchResults);
+               mAdapter.notifyDataSetChanged();
+            }
+         });
+      }
+
       return view;
    }
 
@@ -73,7 +88,7 @@ public class SearchFragment extends BaseListFragment {
    public void onSaveInstanceState(Bundle state) {
       super.onSaveInstanceState(state);
 
-      state.putSerializable(SEARCH_RESULTS_KEY, mSearch);
+      StateCache.put(state, SEARCH_RESULTS_KEY, mSearch);
    }
 
    private void initializeScrollListener() {
@@ -82,6 +97,11 @@ public class SearchFragment extends BaseListFragment {
       mScrollListener = new EndlessScrollListener(getListView(), new EndlessScrollListener.RefreshList() {
          @Override
          public void onRefresh(int pageNumber) {
+            if (mSearch == null) {
+               // The activity searches again which replaces the results.
+               return;
+            }
+
             mOffset += LIMIT;
 
             String query = ((SearchActivity) getActivity()).buildQuery(mSearch.mQuery);
@@ -96,7 +116,8 @@ public class SearchFragment extends BaseListFragment {
 
    public void setSearchResults(SearchResults search) {
       // If the new search query is different than the existing one, clear out the old search results.
-      if (!search.mQuery.equals(mSearch.mQuery)) {
+      // The old search is null if it couldn't be restored.
+      if (mSearch == null || !search.mQuery.equals(mSearch.mQuery)) {
          mSearchResults.clear();
 
          initializeScrollListener();
@@ -104,7 +125,12 @@ public class SearchFragment extends BaseListFragment {
 
       mSearch = search;
 
-      mSearchResults.addAll(search.mResults);
+      // Locally found results may show up again in later pages.
+      for (SearchResult result : search.mResults) {
+         if (!mSearchResults.contains(result)) {
+            mSearchResults.add(result);
+         }
+      }
 
       mAdapter.setSearchResults(mSearchResults);
       mAdapter.notifyDataSetChanged();
@@ -12,6 +12,7 @@ import android.view.View;
 import android.widget.FrameLayout;
 import com.dozuki.ifixit.ui.BaseSearchMenuDrawerActivity;
 import com.dozuki.ifixit.R;
+import com.dozuki.ifixit.model.topic.TopicIndex;
 import com.dozuki.ifixit.model.topic.TopicNode;
 import com.dozuki.ifixit.ui.LoadingFragment;
 import com.dozuki.ifixit.util.api.ApiCall;
@@ -26,6 +27,7 @@ public class TopicActivity extends BaseSearchMenuDrawerActivity
    protected static final long TOPIC_LIST_HIDE_DELAY = 1;
    private static final String TOPIC_TAG = "TOPIC_TAG";
    private static final String TOPIC_LOADING = "TOPIC_LOADING_TAG";
+   private static final String TOPIC_LIST_TAG = "TOPIC_LIST_TAG";
 
    private TopicViewFragment mTopicView;
    private FrameLayout mTopicViewOverlay;
@@ -64,7 +66,11 @@ public class TopicActivity extends BaseSearchMenuDrawerActivity
          }
       }
 
-      if (mRootTopic == null) {
+      // The hierarchy itself isn't saved with the root topic. Load it again if it
+      // isn't in memory; the API call reads it back from disk off the UI thread
+      // when it hasn't changed.
+      if (mRootTopic == null || TopicIndex.getCurrent() == null) {
+         mRootTopic = null;
          showLoading(R.id.topic_list_fragment);
          Api.call(this, ApiCall.categories());
       }
@@ -101,9 +107,20 @@ public class TopicActivity extends BaseSearchMenuDrawerActivity
    public void onCategories(ApiEvent.Categories event) {
       hideLoading();
       if (!event.hasError()) {
+         // A refreshed hierarchy may follow the stored one. Keep navigating the
+         // one that's displayed; the refreshed one is used next time.
          if (mRootTopic == null) {
             mRootTopic = event.getResult();
-            onTopicSelected(mRootTopic);
+
+            Fragment topicList = getSupportFragmentManager().findFragmentByTag(TOPIC_LIST_TAG);
+            if (topicList instanceof TopicListFragment) {
+               // Restored after the process was killed. The lists were shown
+               // before the hierarchy was loaded so they are empty; the ones
+               // further back bind again when they are popped.
+               ((TopicListFragment)topicList).refresh();
+            } else if (getSupportFragmentManager().getBackStackEntryCount() == 0) {
+               onTopicSelected(mRootTopic);
+            }
          }
       } else {
          Api.getErrorDialog(this, event).show();
@@ -210,7 +227,7 @@ public class TopicActivity extends BaseSearchMenuDrawerActivity
 
       ft.setCustomAnimations(inAnim, outAnim,
        R.anim.slide_in_left, R.anim.slide_out_right);
-      ft.replace(R.id.topic_list_fragment, fragment);
+      ft.replace(R.id.topic_list_fragment, fragment, TOPIC_LIST_TAG);
 
       if (addToBack) {
          ft.addToBackStack(null);
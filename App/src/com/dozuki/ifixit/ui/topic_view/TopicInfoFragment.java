@@ -32,6 +32,7 @@ public class TopicInfoFragment extends BaseFragment {
 
    private TopicLeaf mTopic;
    private TextView mContent;
+   private UrlImageGetter mImageGetter;
 
    /**
     * Required for restoring fragments
@@ -91,6 +92,16 @@ public class TopicInfoFragment extends BaseFragment {
       return v;
    }
 
+   @Override
+   public void onDestroyView() {
+      super.onDestroyView();
+
+      if (mImageGetter != null) {
+         mImageGetter.cancel();
+         mImageGetter = null;
+      }
+   }
+
    @Override
    public void onSaveInstanceState(Bundle outState) {
       super.onSaveInstanceState(outState);
@@ -105,9 +116,10 @@ public class TopicInfoFragment extends BaseFragment {
       topicContent = topicContent.replaceAll("<a class=\\\"anchor\\\".+?<\\/a>", "");
       topicContent = topicContent.replaceAll("<span class=\\\"editLink headerLink\\\".+?<\\/span>", "");
 
+      mImageGetter = new UrlImageGetter(mContent, getActivity());
       Spanned topicHtml = Html.fromHtml(topicContent,
        // Handle images in the wiki text
-       new UrlImageGetter(mContent, getActivity()),
+       mImageGetter,
        // Handle list items, videos, and other html elements that Html.fromHtml does not handle and parse them into
        // styled android views
        new WikiHtmlTagHandler());
@@ -21,8 +21,6 @@ import com.marczych.androidsectionheaders.SectionHeadersAdapter;
 import com.marczych.androidsectionheaders.SectionListView;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 
 public class TopicListFragment extends BaseFragment
  implements TopicSelectedListener, OnItemClickListener {
@@ -80,30 +78,8 @@ public class TopicListFragment extends BaseFragment
       // be moved to the iFixit block.
       mTopicAdapter = new SectionHeadersAdapter();
       ArrayList<TopicNode> generalInfo = new ArrayList<TopicNode>();
-      ArrayList<TopicNode> nonLeaves = new ArrayList<TopicNode>();
-      ArrayList<TopicNode> leaves = new ArrayList<TopicNode>();
       TopicListAdapter adapter;
 
-      for (TopicNode topic : mTopic.getChildren()) {
-         if (topic.isLeaf()) {
-            leaves.add(topic);
-         } else {
-            nonLeaves.add(topic);
-         }
-      }
-
-      // The sorting is necessary because JSON objects are inherently unorderd.
-      // The API returns them in the correct order but no JSON implementation
-      // will respect the order of the elements.
-      Comparator<TopicNode> comparator = new Comparator<TopicNode>() {
-         public int compare(TopicNode first, TopicNode second) {
-            return first.getName().compareToIgnoreCase(second.getName());
-         }
-      };
-
-      Collections.sort(nonLeaves, comparator);
-      Collections.sort(leaves, comparator);
-
       if (!mTopic.isRoot() && !((TopicActivity)getActivity()).isDualPane()) {
          TopicNode generalTopicNode = new TopicNode(mTopic.getName());
          generalTopicNode.setDisplayName(mTopic.getDisplayName());
@@ -115,7 +91,11 @@ public class TopicListFragment extends BaseFragment
          mTopicAdapter.addSection(adapter);
       }
 
+      // Children are sorted and partitioned when the hierarchy is parsed.
       if (App.get().getSite().isIfixit()) {
+         ArrayList<TopicNode> nonLeaves = mTopic.getNonLeafChildren();
+         ArrayList<TopicNode> leaves = mTopic.getLeafChildren();
+
          if (nonLeaves.size() > 0) {
             adapter = new TopicListAdapter(mContext, mContext.getString(
              R.string.categories), nonLeaves);
@@ -131,7 +111,6 @@ public class TopicListFragment extends BaseFragment
             mTopicAdapter.addSection(adapter);
          }
       } else {
-         Collections.sort(mTopic.getChildren(), comparator);
          adapter = new TopicListAdapter(mContext, App.get().getSite().getObjectNamePlural(),
           mTopic.getChildren());
          adapter.setTopicSelectedListener(this);
@@ -169,6 +148,16 @@ public class TopicListFragment extends BaseFragment
       }
    }
 
+   /**
+    * Binds the list again, e.g. once the hierarchy the topic belongs to has
+    * been loaded.
+    */
+   public void refresh() {
+      if (mListView != null && mTopic != null) {
+         setTopic(mTopic);
+      }
+   }
+
    private void setTopic(TopicNode topic) {
       mTopic = topic;
 
@@ -8,7 +8,11 @@ import android.support.v4.view.ViewPager;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
+import com.actionbarsherlock.view.Menu;
+import com.actionbarsherlock.view.MenuInflater;
+import com.actionbarsherlock.view.MenuItem;
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.dozuki.Site;
@@ -22,6 +26,8 @@ import com.dozuki.ifixit.ui.WebViewFragment;
 import com.dozuki.ifixit.util.api.ApiCall;
 import com.dozuki.ifixit.util.api.ApiEvent;
 import com.dozuki.ifixit.util.api.Api;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
+import com.dozuki.ifixit.util.StateCache;
 import com.google.analytics.tracking.android.Fields;
 import com.google.analytics.tracking.android.MapBuilder;
 import com.google.analytics.tracking.android.Tracker;
@@ -38,6 +44,7 @@ public class TopicViewFragment extends BaseFragment implements ViewPager.OnPageC
    private static final String CURRENT_PAGE = "CURRENT_PAGE";
    private static final String CURRENT_TOPIC_LEAF = "CURRENT_TOPIC_LEAF";
    private static final String CURRENT_TOPIC_NODE = "CURRENT_TOPIC_NODE";
+   private static final String CURRENT_TOPIC_NAME = "CURRENT_TOPIC_NAME";
 
    private TopicNode mTopicNode;
    private TopicLeaf mTopicLeaf;
@@ -55,6 +62,38 @@ public class TopicViewFragment extends BaseFragment implements ViewPager.OnPageC
       if (mSite == null) {
          mSite = ((App) getActivity().getApplication()).getSite();
       }
+
+      setHasOptionsMenu(true);
+   }
+
+   @Override
+   public void onCreateOptionsMenu(Menu menu, MenuInflater inflater) {
+      inflater.inflate(R.menu.topic_view_menu, menu);
+
+      super.onCreateOptionsMenu(menu, inflater);
+   }
+
+   @Override
+   public void onPrepareOptionsMenu(Menu menu) {
+      menu.findItem(R.id.download_topic_guides).setVisible(mTopicLeaf != null &&
+       !mTopicLeaf.getGuides().isEmpty());
+
+      super.onPrepareOptionsMenu(menu);
+   }
+
+   @Override
+   public boolean onOptionsItemSelected(MenuItem item) {
+      switch (item.getItemId()) {
+         case R.id.download_topic_guides:
+            if (mTopicLeaf != null) {
+               OfflineGuideStore.get(getActivity()).downloadTopic(mTopicLeaf);
+               Toast.makeText(getActivity(), R.string.downloading_guides, Toast.LENGTH_SHORT)
+                .show();
+            }
+            return true;
+         default:
+            return super.onOptionsItemSelected(item);
+      }
    }
 
    @Override
@@ -69,14 +108,7 @@ public class TopicViewFragment extends BaseFragment implements ViewPager.OnPageC
 
       if (savedInstanceState != null) {
          mSelectedTab = savedInstanceState.getInt(CURRENT_PAGE, 0); // Default to Guide page
-         mTopicNode = (TopicNode) savedInstanceState.getSerializable(CURRENT_TOPIC_NODE);
-         TopicLeaf topicLeaf = (TopicLeaf) savedInstanceState.getSerializable(CURRENT_TOPIC_LEAF);
-
-         if (topicLeaf != null) {
-            setTopicLeaf(topicLeaf);
-         } else if (mTopicNode != null) {
-            getTopicLeaf(mTopicNode.getName());
-         }
+         restoreTopic(savedInstanceState);
       } else if (args != null) {
          if (args.containsKey(GuideViewActivity.TOPIC_NAME_KEY)) {
             getTopicLeaf(args.getString(GuideViewActivity.TOPIC_NAME_KEY));
@@ -85,18 +117,66 @@ public class TopicViewFragment extends BaseFragment implements ViewPager.OnPageC
       return view;
    }
 
+   private void restoreTopic(final Bundle savedInstanceState) {
+      final String topicName = savedInstanceState.getString(CURRENT_TOPIC_NAME);
+
+      StateCache.restore(savedInstanceState, CURRENT_TOPIC_NODE,
+       new StateCache.Callback<TopicNode>() {
+         public void onRestored(TopicNode topicNode) {
+            if (!isAdded()) {
+               return;
+            }
+
+            mTopicNode = topicNode;
+
+            StateCache.restore(savedInstanceState, CURRENT_TOPIC_LEAF,
+             new StateCache.Callback<TopicLeaf>() {
+               public void onRestored(TopicLeaf topicLeaf) {
+                  if (!isAdded()) {
+                     return;
+                  }
+
+                  if (topicLeaf != null) {
+                     setTopicLeaf(topicLeaf);
+                  } else if (mTopicNode != null) {
+                     getTopicLeaf(mTopicNode.getName());
+                  } else if (topicName != null) {
+                     // Neither could be restored so load the topic again by name.
+                     getTopicLeaf(topicName);
+                  }
+               }
+            });
+         }
+      });
+   }
+
    @Override
    public void onSaveInstanceState(Bundle outState) {
       super.onSaveInstanceState(outState);
 
       outState.putInt(CURRENT_PAGE, mSelectedTab);
-      outState.putSerializable(CURRENT_TOPIC_LEAF, mTopicLeaf);
-      outState.putSerializable(CURRENT_TOPIC_NODE, mTopicNode);
+      StateCache.put(outState, CURRENT_TOPIC_LEAF, mTopicLeaf);
+      StateCache.put(outState, CURRENT_TOPIC_NODE, mTopicNode);
+
+      if (mTopicLeaf != null) {
+         outState.putString(CURRENT_TOPIC_NAME, mTopicLeaf.getName());
+      } else if (mTopicNode != null) {
+         outState.putString(CURRENT_TOPIC_NAME, mTopicNode.getName());
+      }
    }
 
    @Subscribe
    public void onTopic(ApiEvent.Topic event) {
       if (!event.hasError()) {
+         if (!event.mStoredResponse && mTopicLeaf != null &&
+          mTopicLeaf.equals(event.getResult())) {
+            // Refreshed copy of the topic displayed from a stored response. Keep it
+            // for new pages and saved state but don't yank the user back to the
+            // default tab.
+            mTopicLeaf = event.getResult();
+            return;
+         }
+
          setTopicLeaf(event.getResult());
       } else {
          Api.getErrorDialog(getActivity(), event).show();
@@ -136,6 +216,7 @@ public class TopicViewFragment extends BaseFragment implements ViewPager.OnPageC
       }
 
       mTopicLeaf = topicLeaf;
+      getSherlockActivity().supportInvalidateOptionsMenu();
 
       if (mTopicLeaf == null) {
          // display error message
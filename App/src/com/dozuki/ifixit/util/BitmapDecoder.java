@@ -0,0 +1,139 @@
+package com.dozuki.ifixit.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes bitmaps no larger than they are displayed. Bounds are decoded first
+ * to pick the largest power of two sample size that keeps the bitmap at least
+ * as big as requested, so large images never have to fit in memory at full
+ * resolution.
+ */
+public class BitmapDecoder {
+   private static final String TAG = "BitmapDecoder";
+
+   /**
+    * Metrics. Source bytes are what the bitmaps would have taken if they were
+    * decoded at full resolution.
+    */
+   private static final AtomicLong sDecodeCount = new AtomicLong();
+   private static final AtomicLong sDecodedBytes = new AtomicLong();
+   private static final AtomicLong sSourceBytes = new AtomicLong();
+
+   /**
+    * Returns the decoded bitmap scaled down to roughly reqWidth x reqHeight or
+    * null if the data can't be decoded. Pass 0 for either dimension to only
+    * constrain the other one.
+    */
+   public static Bitmap decode(byte[] data, int reqWidth, int reqHeight) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+         return null;
+      }
+
+      int sourceWidth = options.outWidth;
+      int sourceHeight = options.outHeight;
+
+      options.inJustDecodeBounds = false;
+      options.inSampleSize = calculateInSampleSize(sourceWidth, sourceHeight, reqWidth,
+       reqHeight);
+
+      Bitmap bitmap;
+      try {
+         bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+      } catch (OutOfMemoryError e) {
+         Log.w(TAG, "Out of memory decoding " + sourceWidth + "x" + sourceHeight + " bitmap");
+         return null;
+      }
+
+      if (bitmap != null) {
+         sDecodeCount.incrementAndGet();
+         sDecodedBytes.addAndGet(bitmap.getRowBytes() * bitmap.getHeight());
+         sSourceBytes.addAndGet(4L * sourceWidth * sourceHeight);
+      }
+
+      return bitmap;
+   }
+
+   /**
+    * Decodes the file with the smallest power of two sample size that brings
+    * its longest side down to maxDimension or below, so it may come out as
+    * small as half of that. Returns null if it can't be decoded.
+    *
+    * This is for re-encoding rather than display so the bitmap never has to
+    * hold more than maxDimension squared pixels; rounding the other way would
+    * decode typical camera photos at full size.
+    */
+   public static Bitmap decodeFile(String path, int maxDimension, Bitmap.Config config) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(path, options);
+
+      if (options.outWidth <= 0 || options.outHeight <= 0) {
+         return null;
+      }
+
+      int sourceWidth = options.outWidth;
+      int sourceHeight = options.outHeight;
+      int longestSide = Math.max(sourceWidth, sourceHeight);
+      int sampleSize = 1;
+
+      while (longestSide / sampleSize > maxDimension) {
+         sampleSize *= 2;
+      }
+
+      options.inJustDecodeBounds = false;
+      options.inSampleSize = sampleSize;
+      options.inPreferredConfig = config;
+
+      Bitmap bitmap;
+      try {
+         bitmap = BitmapFactory.decodeFile(path, options);
+      } catch (OutOfMemoryError e) {
+         Log.w(TAG, "Out of memory decoding " + sourceWidth + "x" + sourceHeight + " bitmap");
+         return null;
+      }
+
+      if (bitmap != null) {
+         sDecodeCount.incrementAndGet();
+         sDecodedBytes.addAndGet(bitmap.getRowBytes() * bitmap.getHeight());
+         sSourceBytes.addAndGet(4L * sourceWidth * sourceHeight);
+      }
+
+      return bitmap;
+   }
+
+   public static int calculateInSampleSize(int width, int height, int reqWidth,
+    int reqHeight) {
+      int sampleSize = 1;
+
+      if (reqWidth <= 0 && reqHeight <= 0) {
+         return sampleSize;
+      }
+
+      while ((reqWidth <= 0 || width / (sampleSize * 2) >= reqWidth) &&
+       (reqHeight <= 0 || height / (sampleSize * 2) >= reqHeight)) {
+         sampleSize *= 2;
+      }
+
+      return sampleSize;
+   }
+
+   public static long getDecodeCount() {
+      return sDecodeCount.get();
+   }
+
+   public static long getDecodedBytes() {
+      return sDecodedBytes.get();
+   }
+
+   public static long getSourceBytes() {
+      return sSourceBytes.get();
+   }
+}
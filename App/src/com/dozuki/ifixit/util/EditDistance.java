@@ -4,37 +4,97 @@ package com.dozuki.ifixit.util;
 /**
  * Helper class to compute the edit distance for two Strings.
  *
- * Taken from: http://professorjava.weebly.com/edit-distance.html
+ * Only two rows of the matrix are kept and they are reused across calls on
+ * the same thread so computing a distance doesn't allocate.
  */
 public class EditDistance {
+   /**
+    * The previous and current rows, grown as longer Strings come along.
+    */
+   private static final ThreadLocal<int[][]> sRows = new ThreadLocal<int[][]>() {
+      @Override
+      protected int[][] initialValue() {
+         return new int[2][32];
+      }
+   };
+
    public static int editDistance(String s, String t) {
+      return editDistance(s, t, Math.max(s.length(), t.length()));
+   }
+
+   /**
+    * Returns the edit distance of the two Strings if it is at most
+    * maxDistance and maxDistance + 1 otherwise. Only the band of cells within
+    * maxDistance of the diagonal is computed and it gives up as soon as a row
+    * is entirely over the limit.
+    */
+   public static int editDistance(String s, String t, int maxDistance) {
       int m = s.length();
       int n = t.length();
-      int[][] d = new int[m + 1][n + 1];
 
-      for (int i = 0; i <= m; i++) {
-         d[i][0] = i;
+      if (Math.abs(m - n) > maxDistance) {
+         return maxDistance + 1;
       }
 
+      int over = maxDistance + 1;
+      int[][] rows = getRows(n + 1);
+      int[] previous = rows[0];
+      int[] current = rows[1];
+
       for (int j = 0; j <= n; j++) {
-         d[0][j] = j;
+         previous[j] = Math.min(j, over);
       }
 
-      for (int j = 1; j <= n; j++) {
-         for (int i = 1; i <= m; i++) {
-            if (s.charAt(i - 1) == t.charAt(j - 1)) {
-               d[i][j] = d[i - 1][j - 1];
+      for (int i = 1; i <= m; i++) {
+         int from = Math.max(1, i - maxDistance);
+         int to = Math.min(n, i + maxDistance);
+         char c = s.charAt(i - 1);
+         int rowMin = over;
+
+         current[0] = Math.min(i, over);
+         if (from > 1) {
+            current[from - 1] = over;
+         }
+
+         for (int j = from; j <= to; j++) {
+            int cost;
+
+            if (c == t.charAt(j - 1)) {
+               cost = previous[j - 1];
             } else {
-               d[i][j] = min(
-                  d[i - 1][j],
-                  d[i][j - 1],
-                  d[i - 1][j - 1]
-               ) + 1;
+               cost = min(previous[j - 1], previous[j], current[j - 1]) + 1;
             }
+
+            current[j] = Math.min(cost, over);
+            rowMin = Math.min(rowMin, current[j]);
          }
+
+         if (to < n) {
+            current[to + 1] = over;
+         }
+
+         if (rowMin > maxDistance && current[0] > maxDistance) {
+            return over;
+         }
+
+         int[] swap = previous;
+         previous = current;
+         current = swap;
+      }
+
+      return previous[n];
+   }
+
+   private static int[][] getRows(int length) {
+      int[][] rows = sRows.get();
+
+      if (rows[0].length < length) {
+         int size = Math.max(length, rows[0].length * 2);
+         rows[0] = new int[size];
+         rows[1] = new int[size];
       }
 
-      return d[m][n];
+      return rows;
    }
 
    public static int min(int a, int b ,int c) {
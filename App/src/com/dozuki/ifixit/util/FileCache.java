@@ -5,71 +5,75 @@ import android.util.Log;
 import com.dozuki.ifixit.App;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Scanner;
 
 /**
- * Quick and dirty file cache.
+ * The app's disk cache for API responses, a size bounded LruFileCache in the
+ * cache directory.
  */
 public class FileCache {
-   public static String get(String key) {
-      File file = getFile(key);
+   private static final String TAG = "FileCache";
 
-      if (!file.exists()) {
-         return null;
-      }
+   /**
+    * Passed as maxAge to never consider an entry expired.
+    */
+   public static final long NO_EXPIRATION = LruFileCache.NO_EXPIRATION;
 
-      FileInputStream in = null;
-      try {
-         in = new FileInputStream(file);
-         // Read the entire file into a String.
-         Scanner scanner = new Scanner(in).useDelimiter("\\A");
-         return scanner.hasNext() ? scanner.next() : null;
-      } catch (IOException e) {
-         Log.e("FileCache", "Get", e);
-         return null;
-      } finally {
-         if (in != null) {
-            try {
-               in.close();
-            } catch (IOException e) {
-               Log.e("FileCache", "Closing input", e);
-            }
-         }
-      }
+   private static final String CACHE_DIR = "file_cache";
+   private static final long DEFAULT_MAX_SIZE = 20 * 1024 * 1024;
+
+   private static LruFileCache sCache;
+
+   public static String get(String key) {
+      return get(key, NO_EXPIRATION);
+   }
+
+   /**
+    * Returns the value stored for the given key or null if there isn't one or
+    * it was stored more than maxAge milliseconds ago.
+    */
+   public static String get(String key, long maxAge) {
+      return getCache().getEntry(key, maxAge);
    }
 
    public static void set(String key, String value) {
-      FileOutputStream out = null;
-      try {
-         out = new FileOutputStream(getFile(key));
-         byte[] bytes = value.getBytes();
-         out.write(bytes, 0, bytes.length);
-      } catch (IOException e) {
-         Log.e("FileCache", "Set", e);
-      } finally {
-         if (out != null) {
-            try {
-               out.close();
-            } catch (IOException e) {
-               Log.e("FileCache", "Closing output", e);
+      getCache().setEntry(key, value);
+   }
+
+   public static void remove(String key) {
+      getCache().removeEntry(key);
+   }
+
+   private static synchronized LruFileCache getCache() {
+      if (sCache == null) {
+         File cacheDir = App.get().getCacheDir();
+         deleteLegacyEntries(cacheDir);
+
+         sCache = new LruFileCache(new File(cacheDir, CACHE_DIR), DEFAULT_MAX_SIZE) {
+            @Override
+            protected void log(String message, Throwable e) {
+               Log.w(TAG, message, e);
             }
-         }
+         };
       }
-   }
 
-   private static File getFile(String key) {
-      return new File(getCacheDir(), String.valueOf(key.hashCode()));
+      return sCache;
    }
 
-   private static File sCacheDir;
-   private static File getCacheDir() {
-      if (sCacheDir == null) {
-         sCacheDir = App.get().getCacheDir();
+   /**
+    * Previous versions stored entries directly in the cache dir named by the
+    * key's hashCode. Nothing reads them anymore so they are just taking space.
+    */
+   private static void deleteLegacyEntries(File cacheDir) {
+      File[] files = cacheDir.listFiles();
+
+      if (files == null) {
+         return;
       }
 
-      return sCacheDir;
+      for (File file : files) {
+         if (file.isFile() && file.getName().matches("-?\\d+")) {
+            file.delete();
+         }
+      }
    }
 }
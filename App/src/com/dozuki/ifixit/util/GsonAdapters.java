@@ -0,0 +1,251 @@
+package com.dozuki.ifixit.util;
+
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Item;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Hand written TypeAdapters for the models that show up in large lists so
+ * Gson doesn't have to reflect over them. Gson instances are thread safe so
+ * a single one is shared by everything that needs it.
+ */
+public class GsonAdapters {
+   public static final ImageAdapter IMAGE = new ImageAdapter();
+   public static final ItemAdapter ITEM = new ItemAdapter();
+   public static final GuideInfoAdapter GUIDE_INFO = new GuideInfoAdapter();
+
+   private static final Gson sGson = new GsonBuilder()
+    .registerTypeAdapter(Image.class, IMAGE)
+    .registerTypeAdapter(Item.class, ITEM)
+    .registerTypeAdapter(GuideInfo.class, GUIDE_INFO)
+    .create();
+
+   public static Gson getGson() {
+      return sGson;
+   }
+
+   public static class ImageAdapter extends TypeAdapter<Image> {
+      @Override
+      public void write(JsonWriter out, Image image) throws IOException {
+         if (image == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("id").value(image.getId());
+         out.name("original").value(image.getPath());
+         out.endObject();
+      }
+
+      @Override
+      public Image read(JsonReader in) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         int id = 0;
+         String original = "";
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (name.equals("id")) {
+               id = in.nextInt();
+            } else if (name.equals("original")) {
+               original = nextString(in, "");
+            } else {
+               in.skipValue();
+            }
+         }
+         in.endObject();
+
+         return new Image(id, original);
+      }
+   }
+
+   public static class ItemAdapter extends TypeAdapter<Item> {
+      @Override
+      public void write(JsonWriter out, Item item) throws IOException {
+         if (item == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("type").value(item.getType().name());
+         out.name("text").value(item.getTitle());
+         out.name("quantity").value(item.getQuantity());
+         out.name("url").value(item.getUrl());
+         out.name("thumbnail").value(item.getThumb());
+         out.name("notes").value(item.getNote());
+         out.endObject();
+      }
+
+      @Override
+      public Item read(JsonReader in) throws IOException {
+         return read(in, Item.ItemType.TOOL);
+      }
+
+      /**
+       * The API doesn't include the item type so it must be supplied by the
+       * caller. A "type" field, as written by write(), takes precedence.
+       */
+      public Item read(JsonReader in, Item.ItemType type) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         String text = "", quantity = "", url = "", thumbnail = "", notes = "";
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (name.equals("type")) {
+               type = Item.ItemType.valueOf(nextString(in, type.name()));
+            } else if (name.equals("text")) {
+               text = nextString(in, "");
+            } else if (name.equals("quantity")) {
+               quantity = nextString(in, "");
+            } else if (name.equals("url")) {
+               url = nextString(in, "");
+            } else if (name.equals("thumbnail")) {
+               thumbnail = nextString(in, "");
+            } else if (name.equals("notes")) {
+               notes = nextString(in, "");
+            } else {
+               in.skipValue();
+            }
+         }
+         in.endObject();
+
+         return new Item(type, text, quantity, url, thumbnail, notes);
+      }
+   }
+
+   public static class GuideInfoAdapter extends TypeAdapter<GuideInfo> {
+      @Override
+      public void write(JsonWriter out, GuideInfo guide) throws IOException {
+         if (guide == null) {
+            out.nullValue();
+            return;
+         }
+
+         out.beginObject();
+         out.name("guideid").value(guide.mGuideid);
+         out.name("revisionid").value(guide.mRevisionid);
+         out.name("modified_date").value(guide.mModifiedDate);
+         out.name("prereq_modified_date").value(guide.mPrereqModifiedDate);
+         out.name("type").value(guide.mType);
+         out.name("category").value(guide.mTopic);
+         out.name("subject").value(guide.mSubject);
+         out.name("title").value(guide.mTitle);
+         out.name("public").value(guide.mPublic);
+
+         if (guide.mFlags != null) {
+            out.name("flags").beginArray();
+            for (String flag : guide.mFlags) {
+               out.value(flag);
+            }
+            out.endArray();
+         }
+
+         out.name("image");
+         IMAGE.write(out, guide.mImage);
+         out.name("url").value(guide.mUrl);
+         out.name("username").value(guide.mAuthorName);
+         out.name("userid").value(guide.mUserid);
+         out.name("locale").value(guide.mLocale);
+         out.endObject();
+      }
+
+      @Override
+      public GuideInfo read(JsonReader in) throws IOException {
+         if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+         }
+
+         GuideInfo guide = new GuideInfo(0);
+
+         in.beginObject();
+         while (in.hasNext()) {
+            String name = in.nextName();
+
+            if (in.peek() == JsonToken.NULL) {
+               // Leave the field at its default, as reflection would.
+               in.nextNull();
+            } else if (name.equals("guideid")) {
+               guide.mGuideid = in.nextInt();
+            } else if (name.equals("revisionid")) {
+               guide.mRevisionid = in.nextInt();
+            } else if (name.equals("modified_date")) {
+               guide.mModifiedDate = in.nextDouble();
+            } else if (name.equals("prereq_modified_date")) {
+               guide.mPrereqModifiedDate = in.nextDouble();
+            } else if (name.equals("type")) {
+               guide.mType = in.nextString();
+            } else if (name.equals("category")) {
+               guide.mTopic = in.nextString();
+            } else if (name.equals("subject")) {
+               guide.mSubject = in.nextString();
+            } else if (name.equals("title")) {
+               guide.mTitle = in.nextString();
+            } else if (name.equals("public")) {
+               guide.mPublic = in.nextBoolean();
+            } else if (name.equals("flags")) {
+               guide.mFlags = readStringArray(in);
+            } else if (name.equals("image")) {
+               guide.mImage = IMAGE.read(in);
+            } else if (name.equals("url")) {
+               guide.mUrl = in.nextString();
+            } else if (name.equals("username")) {
+               guide.mAuthorName = in.nextString();
+            } else if (name.equals("userid")) {
+               guide.mUserid = in.nextInt();
+            } else if (name.equals("locale")) {
+               guide.mLocale = in.nextString();
+            } else {
+               in.skipValue();
+            }
+         }
+         in.endObject();
+
+         return guide;
+      }
+   }
+
+   private static String[] readStringArray(JsonReader in) throws IOException {
+      ArrayList<String> values = new ArrayList<String>();
+
+      in.beginArray();
+      while (in.hasNext()) {
+         values.add(nextString(in, null));
+      }
+      in.endArray();
+
+      return values.toArray(new String[values.size()]);
+   }
+
+   private static String nextString(JsonReader in, String defaultValue) throws IOException {
+      if (in.peek() == JsonToken.NULL) {
+         in.nextNull();
+         return defaultValue;
+      }
+
+      return in.nextString();
+   }
+}
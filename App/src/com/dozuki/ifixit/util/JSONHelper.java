@@ -21,20 +21,28 @@ import com.dozuki.ifixit.model.guide.StepLine;
 import com.dozuki.ifixit.model.search.GuideSearchResult;
 import com.dozuki.ifixit.model.search.SearchResults;
 import com.dozuki.ifixit.model.search.TopicSearchResult;
+import com.dozuki.ifixit.model.topic.TopicIndex;
 import com.dozuki.ifixit.model.topic.TopicLeaf;
-import com.dozuki.ifixit.model.topic.TopicNode;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.model.user.UserImage;
 import com.dozuki.ifixit.util.api.ApiError;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 
 public class JSONHelper {
@@ -42,41 +50,48 @@ public class JSONHelper {
    private static final String INVALID_LOGIN_STRING = "Invalid login";
 
    public static SearchResults parseSearchResults(String json) throws JSONException {
-
       SearchResults search = new SearchResults();
-      JSONObject response = new JSONObject(json);
-
-      search.mLimit = response.getInt("limit");
-      search.mOffset = response.getInt("offset");
-      search.mTotalResults = response.getInt("totalResults");
-      search.mHasMoreResults = response.getBoolean("moreResults");
-      search.mQuery = response.getString("search");
-
-      if (response.has("results")) {
-         JSONArray resultsArr = response.getJSONArray("results");
-         int count = resultsArr.length();
-
-         for (int i = 0; i < count; i++) {
-            JSONObject result = resultsArr.getJSONObject(i);
-            String resultType = result.getString("dataType");
-            if (resultType.equals("guide")) {
-               Type guidesType = new TypeToken<GuideInfo>() {}.getType();
-               GuideInfo gi = new Gson().fromJson(result.toString(), guidesType);
-
-               GuideSearchResult gsr = new GuideSearchResult(gi);
-               search.mResults.add(gsr);
-            } else if (resultType.equals("wiki")) {
-               TopicSearchResult tsr = new TopicSearchResult();
-               tsr.mDisplayTitle = result.getString("display_title");
-               tsr.mTitle = result.getString("title");
-               tsr.mText = result.getString("text");
-               tsr.mNamespace = result.getString("namespace");
-               tsr.mSummary = result.getString("summary");
-               tsr.mUrl = result.getString("url");
-               tsr.mImage = parseImage(result, "image");
-
-               search.mResults.add(tsr);
-            }
+      JsonObject response;
+
+      try {
+         // Results are heterogeneous and the dataType can be anywhere in the
+         // object so read everything into a tree once and bind from there.
+         response = new JsonParser().parse(json).getAsJsonObject();
+
+         search.mLimit = response.get("limit").getAsInt();
+         search.mOffset = response.get("offset").getAsInt();
+         search.mTotalResults = response.get("totalResults").getAsInt();
+         search.mHasMoreResults = response.get("moreResults").getAsBoolean();
+         search.mQuery = response.get("search").getAsString();
+      } catch (RuntimeException e) {
+         throw new JSONException(e.getMessage());
+      }
+
+      JsonElement results = response.get("results");
+      if (results == null || !results.isJsonArray()) {
+         return search;
+      }
+
+      Gson gson = GsonAdapters.getGson();
+      for (JsonElement element : results.getAsJsonArray()) {
+         JsonObject result = element.getAsJsonObject();
+         String resultType = getString(result, "dataType");
+
+         if (resultType.equals("guide")) {
+            GuideInfo gi = gson.fromJson(result, GuideInfo.class);
+
+            search.mResults.add(new GuideSearchResult(gi));
+         } else if (resultType.equals("wiki")) {
+            TopicSearchResult tsr = new TopicSearchResult();
+            tsr.mDisplayTitle = getString(result, "display_title");
+            tsr.mTitle = getString(result, "title");
+            tsr.mText = getString(result, "text");
+            tsr.mNamespace = getString(result, "namespace");
+            tsr.mSummary = getString(result, "summary");
+            tsr.mUrl = getString(result, "url");
+            tsr.mImage = parseImage(result.get("image"));
+
+            search.mResults.add(tsr);
          }
       }
 
@@ -179,68 +194,212 @@ public class JSONHelper {
 
    /**
     * Guide parsing
+    *
+    * Guides are read with a streaming parser to avoid building a DOM of the
+    * entire response.
     */
    public static Guide parseGuide(String json) throws JSONException {
-      JSONObject jGuide = new JSONObject(json);
-      JSONArray jSteps = jGuide.getJSONArray("steps");
-      JSONArray jTools = jGuide.getJSONArray("tools");
-      JSONArray jParts = jGuide.getJSONArray("parts");
-      JSONObject jAuthor = jGuide.getJSONObject("author");
-      Guide guide = new Guide(jGuide.getInt("guideid"));
+      JsonReader reader = new JsonReader(new StringReader(json));
 
-      guide.setTitle(jGuide.getString("title"));
-      guide.setTopic(jGuide.getString("category"));
-      guide.setSubject(jGuide.getString("subject"));
-      guide.setAuthor(jAuthor.getString("username"));
-      guide.setTimeRequired(jGuide.getString("time_required"));
-      guide.setDifficulty(jGuide.getString("difficulty"));
-      guide.setIntroductionRaw(jGuide.getString("introduction_raw"));
-      guide.setIntroductionRendered(jGuide.getString("introduction_rendered"));
-      guide.setIntroImage(parseImage(jGuide, "image"));
-      guide.setSummary(jGuide.isNull("summary") ? "" : jGuide.getString("summary"));
-      guide.setRevisionid(jGuide.getInt("revisionid"));
-      guide.setPublic(jGuide.getBoolean("public"));
-      guide.setType(jGuide.getString("type"));
-      guide.setPatrolThreshold(jGuide.getInt("patrol_threshold"));
-      guide.setFavorited(jGuide.getBoolean("favorited"));
+      try {
+         return parseGuide(reader);
+      } catch (IOException e) {
+         throw new JSONException(e.getMessage());
+      } finally {
+         closeReader(reader);
+      }
+   }
 
-      if (jGuide.has("can_edit")) {
-         guide.setCanEdit(jGuide.getBoolean("can_edit"));
+   private static Guide parseGuide(JsonReader reader) throws IOException, JSONException {
+      Guide guide = new Guide();
+      int stepNumber = 1;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+
+         if (name.equals("guideid")) {
+            guide.setGuideid(reader.nextInt());
+         } else if (name.equals("title")) {
+            guide.setTitle(nextString(reader));
+         } else if (name.equals("category")) {
+            guide.setTopic(nextString(reader));
+         } else if (name.equals("subject")) {
+            guide.setSubject(nextString(reader));
+         } else if (name.equals("author")) {
+            guide.setAuthor(parseAuthorUsername(reader));
+         } else if (name.equals("time_required")) {
+            guide.setTimeRequired(nextString(reader));
+         } else if (name.equals("difficulty")) {
+            guide.setDifficulty(nextString(reader));
+         } else if (name.equals("introduction_raw")) {
+            guide.setIntroductionRaw(nextString(reader));
+         } else if (name.equals("introduction_rendered")) {
+            guide.setIntroductionRendered(nextString(reader));
+         } else if (name.equals("image")) {
+            guide.setIntroImage(parseImage(reader));
+         } else if (name.equals("summary")) {
+            guide.setSummary(nextString(reader));
+         } else if (name.equals("revisionid")) {
+            guide.setRevisionid(reader.nextInt());
+         } else if (name.equals("public")) {
+            guide.setPublic(reader.nextBoolean());
+         } else if (name.equals("type")) {
+            guide.setType(nextString(reader));
+         } else if (name.equals("patrol_threshold")) {
+            guide.setPatrolThreshold(reader.nextInt());
+         } else if (name.equals("favorited")) {
+            guide.setFavorited(reader.nextBoolean());
+         } else if (name.equals("can_edit")) {
+            guide.setCanEdit(reader.nextBoolean());
+         } else if (name.equals("steps")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+               guide.addStep(parseStep(reader, stepNumber++));
+            }
+            reader.endArray();
+         } else if (name.equals("tools")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+               guide.addTool(GsonAdapters.ITEM.read(reader, Item.ItemType.TOOL));
+            }
+            reader.endArray();
+         } else if (name.equals("parts")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+               guide.addPart(GsonAdapters.ITEM.read(reader, Item.ItemType.PART));
+            }
+            reader.endArray();
+         } else {
+            reader.skipValue();
+         }
       }
+      reader.endObject();
+
+      return guide;
+   }
 
-      for (int i = 0; i < jSteps.length(); i++) {
-         guide.addStep(parseStep(jSteps.getJSONObject(i), i + 1));
+   private static String parseAuthorUsername(JsonReader reader) throws IOException {
+      String username = "";
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         if (reader.nextName().equals("username")) {
+            username = nextString(reader);
+         } else {
+            reader.skipValue();
+         }
       }
+      reader.endObject();
 
-      for (int i = 0; i < jTools.length(); i++) {
-         guide.addTool(parseTool(jTools.getJSONObject(i)));
+      return username;
+   }
+
+   private static GuideStep parseStep(JsonReader reader, int stepNumber)
+    throws IOException, JSONException {
+      GuideStep step = new GuideStep(stepNumber);
+      boolean hasMedia = false;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+
+         if (name.equals("guideid")) {
+            step.setGuideid(reader.nextInt());
+         } else if (name.equals("stepid")) {
+            step.setStepid(reader.nextInt());
+         } else if (name.equals("revisionid")) {
+            step.setRevisionid(reader.nextInt());
+         } else if (name.equals("orderby")) {
+            if (reader.peek() == JsonToken.NULL) {
+               reader.nextNull();
+            } else {
+               step.setOrderby(reader.nextInt());
+            }
+         } else if (name.equals("title")) {
+            step.setTitle(nextString(reader));
+         } else if (name.equals("media") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+            parseStepMedia(reader, step);
+            hasMedia = true;
+         } else if (name.equals("lines")) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+               step.addLine(parseLine(reader));
+            }
+            reader.endArray();
+         } else {
+            reader.skipValue();
+         }
       }
+      reader.endObject();
 
-      for (int i = 0; i < jParts.length(); i++) {
-         guide.addPart(parsePart(jParts.getJSONObject(i)));
+      if (!hasMedia) {
+         step.addImage(new Image());
       }
 
-      return guide;
+      return step;
    }
 
-   private static Item parsePart(JSONObject jPart) throws JSONException {
-      return new Item(
-       Item.ItemType.PART,
-       jPart.getString("text"),
-       jPart.getString("quantity"),
-       jPart.getString("url"),
-       jPart.getString("thumbnail"),
-       jPart.getString("notes"));
+   private static void parseStepMedia(JsonReader reader, GuideStep step)
+    throws IOException, JSONException {
+      String type = null;
+      JsonElement data = null;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+
+         if (name.equals("type")) {
+            type = nextString(reader);
+         } else if (name.equals("data")) {
+            // The type may come after the data so hold on to it until the end.
+            data = new JsonParser().parse(reader);
+         } else {
+            reader.skipValue();
+         }
+      }
+      reader.endObject();
+
+      if (type == null || data == null) {
+         return;
+      }
+
+      if (type.equals("image") && data.isJsonArray()) {
+         for (JsonElement jImage : data.getAsJsonArray()) {
+            step.addImage(parseImage(jImage));
+         }
+      } else if (type.equals("video")) {
+         step.addVideo(parseVideo(new JSONObject(data.toString())));
+      } else if (type.equals("embed")) {
+         step.addEmbed(new Embed(new JSONObject(data.toString())));
+      }
    }
 
-   private static Item parseTool(JSONObject jTool) throws JSONException {
-      return new Item(
-       Item.ItemType.TOOL,
-       jTool.getString("text"),
-       jTool.getString("quantity"),
-       jTool.getString("url"),
-       jTool.getString("thumbnail"),
-       jTool.getString("notes"));
+   private static StepLine parseLine(JsonReader reader) throws IOException {
+      int lineid = 0, level = 0;
+      String bullet = "", textRaw = "", textRendered = "";
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+
+         if (name.equals("lineid") && reader.peek() != JsonToken.NULL) {
+            lineid = reader.nextInt();
+         } else if (name.equals("bullet")) {
+            bullet = nextString(reader);
+         } else if (name.equals("level")) {
+            level = reader.nextInt();
+         } else if (name.equals("text_raw")) {
+            textRaw = nextString(reader);
+         } else if (name.equals("text_rendered")) {
+            textRendered = nextString(reader);
+         } else {
+            reader.skipValue();
+         }
+      }
+      reader.endObject();
+
+      return new StepLine(lineid, bullet, level, textRaw, textRendered);
    }
 
    public static GuideStep parseStep(JSONObject jStep, int stepNumber) throws JSONException {
@@ -332,75 +491,165 @@ public class JSONHelper {
 
    /**
     * Topic hierarchy parsing
+    *
+    * The hierarchy can contain tens of thousands of topics so it is read with a
+    * streaming parser straight into a compact TopicIndex for the given site.
     */
-   public static TopicNode parseTopics(String json) throws JSONException {
-      JSONObject jResponse = new JSONObject(json);
-      JSONObject jHierarchy = jResponse.getJSONObject("hierarchy");
-      JSONObject jDisplayNames = jResponse.getJSONObject("display_titles");
+   public static TopicIndex parseTopics(String json, String siteName, String sourceDigest)
+    throws JSONException {
+      JsonReader reader = new JsonReader(new StringReader(json));
+      TopicIndex.Builder builder = new TopicIndex.Builder(siteName, sourceDigest);
+      HashMap<String, String> displayNames = new HashMap<String, String>();
+      boolean hasHierarchy = false;
 
-      ArrayList<TopicNode> topics = parseTopicChildren(jHierarchy, jDisplayNames);
-      TopicNode root = new TopicNode();
+      try {
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String name = reader.nextName();
+
+            if (name.equals("hierarchy")) {
+               parseTopicChildren(reader, builder, builder.getRootId());
+               hasHierarchy = true;
+            } else if (name.equals("display_titles") &&
+             reader.peek() == JsonToken.BEGIN_OBJECT) {
+               reader.beginObject();
+               while (reader.hasNext()) {
+                  displayNames.put(reader.nextName(), nextString(reader));
+               }
+               reader.endObject();
+            } else {
+               reader.skipValue();
+            }
+         }
+         reader.endObject();
+      } catch (IOException e) {
+         throw new JSONException(e.getMessage());
+      } finally {
+         closeReader(reader);
+      }
 
-      root.setChildren(topics);
+      if (!hasHierarchy) {
+         throw new JSONException("Missing hierarchy");
+      }
 
-      return root;
+      // Display titles aren't necessarily sent after the hierarchy so they are
+      // applied once everything has been read.
+      return builder.build(displayNames);
    }
 
    /**
-    * Reads through the given JSONObject and adds any topics to the given topic.
+    * Reads the topics in the current object, adding each of them to the builder
+    * as children of parentId.
     */
-   private static ArrayList<TopicNode> parseTopicChildren(JSONObject jTopic,
-    JSONObject jDisplayNames) throws JSONException {
-      @SuppressWarnings("unchecked")
-      Iterator<String> iterator = jTopic.keys();
-      String topicName;
-      ArrayList<TopicNode> topics = new ArrayList<TopicNode>();
-      TopicNode currentTopic;
-
-      while (iterator.hasNext()) {
-         topicName = iterator.next();
-
-         currentTopic = new TopicNode(topicName);
-
-         if (!jTopic.isNull(topicName)) {
-            currentTopic.setChildren(parseTopicChildren(jTopic.getJSONObject(topicName),
-             jDisplayNames));
-         }
-
-         if (jDisplayNames.has(topicName)) {
-            currentTopic.setDisplayName(jDisplayNames.getString(topicName));
+   private static void parseTopicChildren(JsonReader reader, TopicIndex.Builder builder,
+    int parentId) throws IOException {
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+
+         if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            builder.addTopic(parentId, name, true);
+         } else {
+            parseTopicChildren(reader, builder, builder.addTopic(parentId, name, false));
          }
-
-         topics.add(currentTopic);
       }
-
-      return topics;
+      reader.endObject();
    }
 
    /**
     * Topic leaf parsing
     */
    public static TopicLeaf parseTopicLeaf(String json) throws JSONException {
-      JSONObject jTopic = new JSONObject(json);
-      JSONArray jGuides = jTopic.getJSONArray("guides");
-      JSONObject jSolutions = jTopic.getJSONObject("solutions");
-      JSONObject jInfo = jTopic.getJSONObject("topic_info");
-      TopicLeaf topicLeaf = new TopicLeaf(jInfo.getString("name"));
-
-      for (int i = 0; i < jGuides.length(); i++) {
-         String guideJson = jGuides.getJSONObject(i).toString();
-         GuideInfo guide = new Gson().fromJson(guideJson, GuideInfo.class);
+      JsonReader reader = new JsonReader(new StringReader(json));
+      ArrayList<GuideInfo> guides = new ArrayList<GuideInfo>();
+      String name = null, solutionsCount = "0", solutionsUrl = "", description = "",
+       locale = "", contentsRaw = "", contentsRendered = "", displayTitle = "";
+      Image image = new Image();
+
+      try {
+         reader.beginObject();
+         while (reader.hasNext()) {
+            String field = reader.nextName();
+
+            if (field.equals("guides")) {
+               reader.beginArray();
+               while (reader.hasNext()) {
+                  guides.add(GsonAdapters.GUIDE_INFO.read(reader));
+               }
+               reader.endArray();
+            } else if (field.equals("solutions")) {
+               reader.beginObject();
+               while (reader.hasNext()) {
+                  String solutionsField = reader.nextName();
+
+                  if (solutionsField.equals("count")) {
+                     solutionsCount = nextString(reader);
+                  } else if (solutionsField.equals("url")) {
+                     solutionsUrl = nextString(reader);
+                  } else {
+                     reader.skipValue();
+                  }
+               }
+               reader.endObject();
+            } else if (field.equals("topic_info")) {
+               reader.beginObject();
+               while (reader.hasNext()) {
+                  if (reader.nextName().equals("name")) {
+                     name = nextString(reader);
+                  } else {
+                     reader.skipValue();
+                  }
+               }
+               reader.endObject();
+            } else if (field.equals("description")) {
+               description = nextString(reader);
+            } else if (field.equals("image")) {
+               image = parseImage(reader);
+            } else if (field.equals("locale")) {
+               locale = nextString(reader);
+            } else if (field.equals("contents_raw")) {
+               contentsRaw = nextString(reader);
+            } else if (field.equals("contents_rendered")) {
+               contentsRendered = nextString(reader);
+            } else if (field.equals("display_title")) {
+               displayTitle = nextString(reader);
+            } else {
+               reader.skipValue();
+            }
+         }
+         reader.endObject();
+      } catch (IOException e) {
+         throw new JSONException(e.getMessage());
+      } catch (NumberFormatException e) {
+         throw new JSONException(e.getMessage());
+      } finally {
+         closeReader(reader);
+      }
+
+      if (name == null) {
+         throw new JSONException("Missing topic_info");
+      }
+
+      TopicLeaf topicLeaf = new TopicLeaf(name);
+
+      for (GuideInfo guide : guides) {
          topicLeaf.addGuide(guide);
       }
 
-      topicLeaf.setNumSolutions(Integer.parseInt(jSolutions.getString("count")));
-      topicLeaf.setSolutionsUrl(jSolutions.getString("url"));
-      topicLeaf.setDescription(jTopic.getString("description"));
-      topicLeaf.setImage(parseImage(jTopic.getJSONObject("image"), null));
-      topicLeaf.setLocale(jTopic.getString("locale"));
-      topicLeaf.setContentsRaw(jTopic.getString("contents_raw"));
-      topicLeaf.setContentsRendered(jTopic.getString("contents_rendered"));
-      topicLeaf.setTitle(jTopic.getString("display_title"));
+      try {
+         topicLeaf.setNumSolutions(Integer.parseInt(solutionsCount));
+      } catch (NumberFormatException e) {
+         throw new JSONException("Invalid solutions count: " + solutionsCount);
+      }
+
+      topicLeaf.setSolutionsUrl(solutionsUrl);
+      topicLeaf.setDescription(description);
+      topicLeaf.setImage(image);
+      topicLeaf.setLocale(locale);
+      topicLeaf.setContentsRaw(contentsRaw);
+      topicLeaf.setContentsRendered(contentsRendered);
+      topicLeaf.setTitle(displayTitle);
 
       return topicLeaf;
    }
@@ -591,19 +840,29 @@ public class JSONHelper {
 
    public static ArrayList<GuideInfo> parseUserFavorites(String json) {
       ArrayList<GuideInfo> result = new ArrayList<GuideInfo>();
+      JsonReader reader = new JsonReader(new StringReader(json));
 
       try {
-         JSONArray jFavorites = new JSONArray(json);
-
-         int length = jFavorites.length();
-         for (int i = 0; i < length; i++) {
-            JSONObject jGuide = jFavorites.getJSONObject(i).getJSONObject("guide");
-
-            GuideInfo guide = new Gson().fromJson(jGuide.toString(), GuideInfo.class);
-            result.add(guide);
+         reader.beginArray();
+         while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+               if (reader.nextName().equals("guide")) {
+                  result.add(GsonAdapters.GUIDE_INFO.read(reader));
+               } else {
+                  reader.skipValue();
+               }
+            }
+            reader.endObject();
          }
-      } catch (JSONException e) {
+         reader.endArray();
+      } catch (IOException e) {
          e.printStackTrace();
+      } catch (RuntimeException e) {
+         // JsonReader throws IllegalStateException on unexpected tokens.
+         e.printStackTrace();
+      } finally {
+         closeReader(reader);
       }
 
       return result;
@@ -615,7 +874,7 @@ public class JSONHelper {
 
    public static ArrayList<GuideInfo> parseGuides(String json) {
       Type guidesType = new TypeToken<Collection<GuideInfo>>() {}.getType();
-      Collection<GuideInfo> guideList = new Gson().fromJson(json, guidesType);
+      Collection<GuideInfo> guideList = GsonAdapters.getGson().fromJson(json, guidesType);
 
       return new ArrayList<GuideInfo>(guideList);
    }
@@ -690,6 +949,50 @@ public class JSONHelper {
       return jSteps;
    }
 
+   /**
+    * Reads an image object from the reader. A null image results in an empty Image.
+    */
+   private static Image parseImage(JsonReader reader) throws IOException {
+      Image image = GsonAdapters.IMAGE.read(reader);
+
+      return image == null ? new Image() : image;
+   }
+
+   private static Image parseImage(JsonElement element) {
+      if (element == null || !element.isJsonObject()) {
+         return new Image();
+      }
+
+      return GsonAdapters.IMAGE.fromJsonTree(element);
+   }
+
+   /**
+    * Returns the next string value from the reader. Unlike org.json this returns
+    * an empty String rather than "null" for null values.
+    */
+   private static String nextString(JsonReader reader) throws IOException {
+      if (reader.peek() == JsonToken.NULL) {
+         reader.nextNull();
+         return "";
+      }
+
+      return reader.nextString();
+   }
+
+   private static String getString(JsonObject object, String name) {
+      JsonElement element = object.get(name);
+
+      return element == null || element.isJsonNull() ? "" : element.getAsString();
+   }
+
+   private static void closeReader(JsonReader reader) {
+      try {
+         reader.close();
+      } catch (IOException e) {
+         Log.e(TAG, "Closing reader", e);
+      }
+   }
+
    public static Image parseImage(JSONObject image, String imageFieldName) {
       try {
          if (imageFieldName != null) {
@@ -0,0 +1,472 @@
+package com.dozuki.ifixit.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded LRU disk cache.
+ *
+ * Entries are stored in files named by the SHA-1 digest of their key. Each file
+ * starts with the full key and the time it was written so digest collisions are
+ * detected and expired entries aren't returned. A journal of every operation is
+ * kept so the LRU order and the total size survive process death without having
+ * to stat every file on startup.
+ *
+ * Only depends on the JDK so it can be benchmarked outside of Android;
+ * FileCache holds the app's instance.
+ */
+public class LruFileCache {
+   /**
+    * Passed as maxAge to never consider an entry expired.
+    */
+   public static final long NO_EXPIRATION = -1;
+
+   private static final String JOURNAL_FILE = "journal";
+   private static final String JOURNAL_FILE_TMP = "journal.tmp";
+   private static final String JOURNAL_HEADER = "FileCache 1";
+   private static final String SET = "SET";
+   private static final String READ = "READ";
+   private static final String REMOVE = "REMOVE";
+   private static final String TMP_SUFFIX = ".tmp";
+
+   /**
+    * The journal is rebuilt once it contains this many lines that don't
+    * contribute to the current state of the cache.
+    */
+   private static final int JOURNAL_REBUILD_THRESHOLD = 2000;
+
+   private static final String ENCODING = "UTF-8";
+
+   private static class Entry {
+      public final String mDigest;
+      public final long mSize;
+      public final long mTimestamp;
+
+      public Entry(String digest, long size, long timestamp) {
+         mDigest = digest;
+         mSize = size;
+         mTimestamp = timestamp;
+      }
+   }
+
+   private final File mDirectory;
+   private final long mMaxSize;
+
+   /**
+    * Entries keyed by digest in access order; the eldest entry is evicted first.
+    */
+   private final LinkedHashMap<String, Entry> mEntries =
+    new LinkedHashMap<String, Entry>(0, 0.75f, true);
+
+   private long mSize = 0;
+   private int mJournalLineCount = 0;
+   private Writer mJournalWriter;
+
+   public LruFileCache(File directory, long maxSize) {
+      mDirectory = directory;
+      mMaxSize = maxSize;
+   }
+
+   public synchronized String getEntry(String key, long maxAge) {
+      if (!open()) {
+         return null;
+      }
+
+      String digest = digest(key);
+      Entry entry = mEntries.get(digest);
+
+      if (entry == null) {
+         return null;
+      }
+
+      if (maxAge != NO_EXPIRATION &&
+       System.currentTimeMillis() - entry.mTimestamp > maxAge) {
+         deleteEntry(entry);
+         return null;
+      }
+
+      DataInputStream in = null;
+      try {
+         in = new DataInputStream(new FileInputStream(getEntryFile(digest)));
+
+         if (!key.equals(in.readUTF())) {
+            // Digest collision. Treat it as a miss; the other key keeps its entry.
+            log("Digest collision for " + key, null);
+            return null;
+         }
+
+         // Skip over the timestamp which we already have in memory.
+         in.readLong();
+
+         ByteArrayOutputStream out = new ByteArrayOutputStream((int)entry.mSize);
+         byte[] buffer = new byte[8192];
+         int read;
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+         }
+
+         journal(READ + " " + digest);
+         return out.toString(ENCODING);
+      } catch (IOException e) {
+         log("Get", e);
+         deleteEntry(entry);
+         return null;
+      } finally {
+         close(in);
+      }
+   }
+
+   public synchronized void setEntry(String key, String value) {
+      if (!open()) {
+         return;
+      }
+
+      String digest = digest(key);
+      File tmpFile = new File(mDirectory, digest + TMP_SUFFIX);
+      long timestamp = System.currentTimeMillis();
+
+      DataOutputStream out = null;
+      boolean written = false;
+      try {
+         out = new DataOutputStream(new FileOutputStream(tmpFile));
+         out.writeUTF(key);
+         out.writeLong(timestamp);
+         out.write(value.getBytes(ENCODING));
+         written = true;
+      } catch (IOException e) {
+         log("Set", e);
+      } finally {
+         close(out);
+      }
+
+      if (!written) {
+         tmpFile.delete();
+         return;
+      }
+
+      Entry previous = mEntries.remove(digest);
+      if (previous != null) {
+         mSize -= previous.mSize;
+      }
+
+      if (!tmpFile.renameTo(getEntryFile(digest))) {
+         log("Failed to commit entry for " + key, null);
+         tmpFile.delete();
+         journal(REMOVE + " " + digest);
+         return;
+      }
+
+      Entry entry = new Entry(digest, getEntryFile(digest).length(), timestamp);
+      mEntries.put(digest, entry);
+      mSize += entry.mSize;
+      journal(SET + " " + digest + " " + entry.mSize + " " + timestamp);
+
+      trimToSize();
+   }
+
+   public synchronized void removeEntry(String key) {
+      if (!open()) {
+         return;
+      }
+
+      Entry entry = mEntries.get(digest(key));
+
+      if (entry != null) {
+         deleteEntry(entry);
+      }
+   }
+
+   /**
+    * Called with problems that are handled by treating the entry as missing
+    * or clearing the cache. Does nothing by default.
+    */
+   protected void log(String message, Throwable e) {
+   }
+
+   public synchronized long getSize() {
+      return mSize;
+   }
+
+   public synchronized int getEntryCount() {
+      return mEntries.size();
+   }
+
+   /**
+    * Reads the journal and opens it for writing. Returns false if the cache
+    * can't be used.
+    */
+   private boolean open() {
+      if (mJournalWriter != null) {
+         return true;
+      }
+
+      if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+         log("Can't create cache directory " + mDirectory, null);
+         return false;
+      }
+
+      File journal = new File(mDirectory, JOURNAL_FILE);
+
+      try {
+         if (journal.exists()) {
+            readJournal(journal);
+            deleteUntrackedFiles();
+            mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+
+            if (journalNeedsRebuild()) {
+               rebuildJournal();
+            }
+         } else {
+            deleteUntrackedFiles();
+            rebuildJournal();
+         }
+
+         return true;
+      } catch (IOException e) {
+         log("Journal is corrupt, clearing cache", e);
+         return reset();
+      }
+   }
+
+   private boolean reset() {
+      close(mJournalWriter);
+      mJournalWriter = null;
+      mEntries.clear();
+      mSize = 0;
+      mJournalLineCount = 0;
+
+      File[] files = mDirectory.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            file.delete();
+         }
+      }
+
+      try {
+         rebuildJournal();
+         return true;
+      } catch (IOException e) {
+         log("Can't create journal", e);
+         return false;
+      }
+   }
+
+   private void readJournal(File journal) throws IOException {
+      BufferedReader reader = null;
+      int lineCount = 0;
+
+      try {
+         reader = new BufferedReader(new FileReader(journal));
+
+         if (!JOURNAL_HEADER.equals(reader.readLine())) {
+            throw new IOException("Unexpected journal header");
+         }
+
+         String line;
+         while ((line = reader.readLine()) != null) {
+            readJournalLine(line);
+            lineCount++;
+         }
+      } finally {
+         close(reader);
+      }
+
+      mJournalLineCount = lineCount;
+   }
+
+   private void readJournalLine(String line) throws IOException {
+      String[] parts = line.split(" ");
+
+      try {
+         if (parts[0].equals(SET) && parts.length == 4) {
+            Entry entry = new Entry(parts[1], Long.parseLong(parts[2]),
+             Long.parseLong(parts[3]));
+            Entry previous = mEntries.put(entry.mDigest, entry);
+
+            if (previous != null) {
+               mSize -= previous.mSize;
+            }
+
+            mSize += entry.mSize;
+         } else if (parts[0].equals(READ) && parts.length == 2) {
+            // Touch the entry to update the access order.
+            mEntries.get(parts[1]);
+         } else if (parts[0].equals(REMOVE) && parts.length == 2) {
+            Entry previous = mEntries.remove(parts[1]);
+
+            if (previous != null) {
+               mSize -= previous.mSize;
+            }
+         } else {
+            // The last line may be truncated if the process was killed mid write.
+            throw new IOException("Unexpected journal line: " + line);
+         }
+      } catch (NumberFormatException e) {
+         throw new IOException("Unexpected journal line: " + line);
+      }
+   }
+
+   /**
+    * Deletes files that the journal doesn't know about and forgets entries
+    * whose files have gone missing.
+    */
+   private void deleteUntrackedFiles() {
+      File[] files = mDirectory.listFiles();
+      if (files != null) {
+         for (File file : files) {
+            String name = file.getName();
+
+            if (!name.equals(JOURNAL_FILE) && !mEntries.containsKey(name)) {
+               file.delete();
+            }
+         }
+      }
+
+      Iterator<Entry> iterator = mEntries.values().iterator();
+      while (iterator.hasNext()) {
+         Entry entry = iterator.next();
+
+         if (!getEntryFile(entry.mDigest).exists()) {
+            mSize -= entry.mSize;
+            iterator.remove();
+         }
+      }
+   }
+
+   /**
+    * Writes a new journal containing only the current entries and atomically
+    * replaces the old one with it.
+    */
+   private void rebuildJournal() throws IOException {
+      close(mJournalWriter);
+
+      File tmpJournal = new File(mDirectory, JOURNAL_FILE_TMP);
+      Writer writer = new BufferedWriter(new FileWriter(tmpJournal));
+
+      try {
+         writer.write(JOURNAL_HEADER + "\n");
+
+         // Iterating doesn't change the access order so eldest entries are first.
+         for (Entry entry : mEntries.values()) {
+            writer.write(SET + " " + entry.mDigest + " " + entry.mSize + " " +
+             entry.mTimestamp + "\n");
+         }
+      } finally {
+         writer.close();
+      }
+
+      File journal = new File(mDirectory, JOURNAL_FILE);
+      if (!tmpJournal.renameTo(journal)) {
+         throw new IOException("Can't replace journal");
+      }
+
+      mJournalWriter = new BufferedWriter(new FileWriter(journal, true));
+      mJournalLineCount = mEntries.size();
+   }
+
+   private boolean journalNeedsRebuild() {
+      return mJournalLineCount - mEntries.size() >= JOURNAL_REBUILD_THRESHOLD;
+   }
+
+   private void journal(String line) {
+      try {
+         mJournalWriter.write(line + "\n");
+         mJournalWriter.flush();
+
+         mJournalLineCount++;
+         if (journalNeedsRebuild()) {
+            rebuildJournal();
+         }
+      } catch (IOException e) {
+         log("Journal write failed, clearing cache", e);
+         reset();
+      }
+   }
+
+   private void deleteEntry(Entry entry) {
+      // A journal failure earlier in a trim resets the cache so the entry may
+      // no longer be counted in mSize.
+      if (mEntries.remove(entry.mDigest) == null) {
+         return;
+      }
+
+      getEntryFile(entry.mDigest).delete();
+      mSize -= entry.mSize;
+      journal(REMOVE + " " + entry.mDigest);
+   }
+
+   /**
+    * Evicts least recently used entries until the cache fits in mMaxSize.
+    */
+   private void trimToSize() {
+      if (mSize <= mMaxSize) {
+         return;
+      }
+
+      ArrayList<Entry> evicted = new ArrayList<Entry>();
+      long size = mSize;
+
+      for (Map.Entry<String, Entry> eldest : mEntries.entrySet()) {
+         if (size <= mMaxSize) {
+            break;
+         }
+
+         evicted.add(eldest.getValue());
+         size -= eldest.getValue().mSize;
+      }
+
+      for (Entry entry : evicted) {
+         deleteEntry(entry);
+      }
+   }
+
+   private File getEntryFile(String digest) {
+      return new File(mDirectory, digest);
+   }
+
+   private static String digest(String key) {
+      try {
+         byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(ENCODING));
+         StringBuilder builder = new StringBuilder(hash.length * 2);
+
+         for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+         }
+
+         return builder.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new AssertionError(e);
+      } catch (UnsupportedEncodingException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   private void close(Closeable closeable) {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         } catch (IOException e) {
+            log("Closing", e);
+         }
+      }
+   }
+}
@@ -17,10 +17,6 @@ import java.net.URL;
 public class OkConnectionFactory implements HttpRequest.ConnectionFactory {
    private final OkHttpClient client;
 
-   public OkConnectionFactory() {
-      this(Utils.createOkHttpClient());
-   }
-
    public OkConnectionFactory(OkHttpClient client) {
       if (client == null) {
          throw new NullPointerException("Client must not be null.");
@@ -1,49 +1,98 @@
 package com.dozuki.ifixit.util;
 
+import android.app.ActivityManager;
 import android.content.Context;
+import android.net.Uri;
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
 import com.squareup.okhttp.HttpResponseCache;
 import com.squareup.okhttp.OkHttpClient;
+import com.squareup.picasso.Downloader;
+import com.squareup.picasso.LruCache;
 import com.squareup.picasso.OkHttpDownloader;
 import com.squareup.picasso.Picasso;
 
-import javax.net.ssl.SSLContext;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.security.GeneralSecurityException;
 
 public class PicassoUtils {
+   /**
+    * Fraction of the app's heap given to decoded bitmaps. The rest is left for
+    * views and decodes in progress.
+    */
+   private static final int MEMORY_CACHE_FRACTION = 6;
+
    private static Picasso singleton = null;
+   private static LruCache sMemoryCache = null;
 
    public static Picasso with(Context context) {
-      // Mimicking Picasso's new OkHttpLoader(context), but with our custom OkHttpClient
       if (singleton == null) {
-         OkHttpClient client = createClient();
-         try {
-            client.setResponseCache(createResponseCache(context));
-         } catch (IOException ignored) {
-            // Ignored
-            // throw new RuntimeException();
-         }
-         singleton = new Picasso.Builder(context).downloader(new OkHttpDownloader(client)).build();
+         OkHttpClient client = App.get().getOkHttpClient();
+         singleton = new Picasso.Builder(context)
+          .downloader(new OfflineDownloader(context, new OkHttpDownloader(client)))
+          .memoryCache(getMemoryCache(context))
+          .build();
       }
       return singleton;
    }
 
-   private static OkHttpClient createClient() {
-      OkHttpClient client = new OkHttpClient();
+   /**
+    * Bitmap cache shared by Picasso and everything else that displays remote
+    * images, so they are all held to the same memory budget.
+    */
+   public static synchronized LruCache getMemoryCache(Context context) {
+      if (sMemoryCache == null) {
+         ActivityManager activityManager =
+          (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+         int heapSize = activityManager.getMemoryClass() * 1024 * 1024;
 
-      // Working around the libssl crash: https://github.com/square/okhttp/issues/184
-      SSLContext sslContext;
-      try {
-         sslContext = SSLContext.getInstance("TLS");
-         sslContext.init(null, null, null);
-      } catch (GeneralSecurityException e) {
-         throw new AssertionError(); // The system has no TLS. Just give up.
+         sMemoryCache = new LruCache(heapSize / MEMORY_CACHE_FRACTION);
+      }
+
+      return sMemoryCache;
+   }
+
+   /**
+    * Memory cache and decoding metrics for debugging.
+    */
+   public static String getStats(Context context) {
+      LruCache cache = getMemoryCache(context);
+      int hits = cache.hitCount();
+      int misses = cache.missCount();
+      int hitRate = hits + misses == 0 ? 0 : 100 * hits / (hits + misses);
+
+      return "Memory cache: " + cache.size() + "/" + cache.maxSize() + " bytes, " +
+       hits + " hits, " + misses + " misses (" + hitRate + "%), " +
+       cache.evictionCount() + " evictions; decoded " + BitmapDecoder.getDecodeCount() +
+       " bitmaps, " + BitmapDecoder.getDecodedBytes() + "/" + BitmapDecoder.getSourceBytes() +
+       " bytes";
+   }
+
+   /**
+    * Serves images from guides that were downloaded for offline use before
+    * going to the network.
+    */
+   private static class OfflineDownloader implements Downloader {
+      private final OfflineGuideStore mStore;
+      private final Downloader mDownloader;
+
+      public OfflineDownloader(Context context, Downloader downloader) {
+         mStore = OfflineGuideStore.get(context);
+         mDownloader = downloader;
+      }
+
+      public Response load(Uri uri, boolean localCacheOnly) throws IOException {
+         File file = mStore.getMediaFile(uri.toString());
+
+         if (file != null) {
+            return new Response(new FileInputStream(file), true);
+         }
+
+         return mDownloader.load(uri, localCacheOnly);
       }
-      client.setSslSocketFactory(sslContext.getSocketFactory());
-      return client;
    }
 
    private static File createDefaultCacheDir(Context context) {
@@ -80,7 +129,11 @@ public class PicassoUtils {
       }
    }
 
-   private static HttpResponseCache createResponseCache(Context context) throws IOException {
+   /**
+    * Returns a response cache in Picasso's default location and size. It is
+    * used by App's client for images; the API has a cache of its own.
+    */
+   public static HttpResponseCache createResponseCache(Context context) throws IOException {
       File cacheDir = createDefaultCacheDir(context);
       long maxSize = calculateDiskCacheSize(cacheDir);
       return new HttpResponseCache(cacheDir, maxSize);
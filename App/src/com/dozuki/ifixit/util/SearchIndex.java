@@ -0,0 +1,290 @@
+package com.dozuki.ifixit.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Search index over a fixed list of entries, each with a title and a name,
+ * built once and queried on every key press.
+ *
+ * Entries match if their title or name contains the query or if the name is
+ * within name.length() / 2 edits of it. Substring matches are found through a
+ * trigram index instead of scanning every title, and only names whose length
+ * allows a fuzzy match are compared. Results are ranked: exact matches, then
+ * prefixes, then other substrings, then fuzzy matches by distance.
+ *
+ * The index is built by the first search so that happens off the UI thread
+ * too.
+ */
+public class SearchIndex {
+   private static final int GRAM_LENGTH = 3;
+
+   private static final int SCORE_EXACT = 0;
+   private static final int SCORE_PREFIX = 1;
+   private static final int SCORE_CONTAINS = 2;
+   private static final int SCORE_FUZZY = 3;
+
+   private final String[] mTitles;
+   private final String[] mNames;
+
+   /**
+    * Indexes of the entries whose title or name contains each trigram, in
+    * ascending order.
+    */
+   private Map<String, int[]> mGrams;
+
+   /**
+    * Indexes of the entries sorted by name length.
+    */
+   private Integer[] mByNameLength;
+
+   private static class Match {
+      public final int mIndex;
+      public final int mScore;
+      public final int mDistance;
+
+      public Match(int index, int score, int distance) {
+         mIndex = index;
+         mScore = score;
+         mDistance = distance;
+      }
+   }
+
+   private static final Comparator<Match> MATCH_ORDER = new Comparator<Match>() {
+      public int compare(Match lhs, Match rhs) {
+         if (lhs.mScore != rhs.mScore) {
+            return lhs.mScore - rhs.mScore;
+         }
+
+         if (lhs.mDistance != rhs.mDistance) {
+            return lhs.mDistance - rhs.mDistance;
+         }
+
+         return lhs.mIndex - rhs.mIndex;
+      }
+   };
+
+   /**
+    * Null titles and names are treated as empty.
+    */
+   public SearchIndex(String[] titles, String[] names) {
+      if (titles.length != names.length) {
+         throw new IllegalArgumentException("Expected as many titles as names");
+      }
+
+      mTitles = new String[titles.length];
+      mNames = new String[names.length];
+
+      for (int i = 0; i < titles.length; i++) {
+         mTitles[i] = titles[i] == null ? "" : titles[i].toLowerCase();
+         mNames[i] = names[i] == null ? "" : names[i].toLowerCase();
+      }
+   }
+
+   private synchronized void build() {
+      if (mGrams != null) {
+         return;
+      }
+
+      HashMap<String, ArrayList<Integer>> grams = new HashMap<String, ArrayList<Integer>>();
+
+      for (int i = 0; i < mNames.length; i++) {
+         addGrams(grams, mTitles[i], i);
+         addGrams(grams, mNames[i], i);
+      }
+
+      HashMap<String, int[]> gramPostings = new HashMap<String, int[]>(grams.size());
+      for (Map.Entry<String, ArrayList<Integer>> entry : grams.entrySet()) {
+         ArrayList<Integer> indexes = entry.getValue();
+         int[] postings = new int[indexes.size()];
+
+         for (int i = 0; i < postings.length; i++) {
+            postings[i] = indexes.get(i);
+         }
+
+         gramPostings.put(entry.getKey(), postings);
+      }
+
+      mByNameLength = new Integer[mNames.length];
+      for (int i = 0; i < mByNameLength.length; i++) {
+         mByNameLength[i] = i;
+      }
+
+      Arrays.sort(mByNameLength, new Comparator<Integer>() {
+         public int compare(Integer lhs, Integer rhs) {
+            return mNames[lhs].length() - mNames[rhs].length();
+         }
+      });
+
+      // Set last since it marks the index as built.
+      mGrams = gramPostings;
+   }
+
+   /**
+    * Returns the indexes of the matching entries, best first, or null if the
+    * thread was interrupted because the query is no longer wanted. An empty
+    * query matches every entry in order.
+    */
+   public int[] search(String query) {
+      String lowerQuery = query.toLowerCase().trim();
+
+      if (lowerQuery.length() == 0) {
+         return getAll();
+      }
+
+      build();
+
+      Match[] matches = new Match[mNames.length];
+
+      for (int index : getSubstringCandidates(lowerQuery)) {
+         int score = getSubstringScore(mTitles[index], lowerQuery);
+         score = Math.min(score, getSubstringScore(mNames[index], lowerQuery));
+
+         if (score <= SCORE_CONTAINS) {
+            matches[index] = new Match(index, score, 0);
+         }
+      }
+
+      if (Thread.currentThread().isInterrupted()) {
+         return null;
+      }
+
+      // A name of length l matches if it is within l / 2 edits which needs
+      // |l - q| <= l / 2, so only names between 2q/3 and 2q long can match.
+      int queryLength = lowerQuery.length();
+      for (int index : mByNameLength) {
+         String name = mNames[index];
+         int maxDistance = name.length() / 2;
+
+         if (name.length() > queryLength * 2) {
+            break;
+         }
+
+         if (matches[index] != null || queryLength - name.length() > maxDistance) {
+            continue;
+         }
+
+         int distance = EditDistance.editDistance(name, lowerQuery, maxDistance);
+
+         if (distance <= maxDistance) {
+            matches[index] = new Match(index, SCORE_FUZZY, distance);
+         }
+
+         if (Thread.currentThread().isInterrupted()) {
+            return null;
+         }
+      }
+
+      ArrayList<Match> ranked = new ArrayList<Match>();
+      for (Match match : matches) {
+         if (match != null) {
+            ranked.add(match);
+         }
+      }
+
+      Collections.sort(ranked, MATCH_ORDER);
+
+      int[] results = new int[ranked.size()];
+      for (int i = 0; i < results.length; i++) {
+         results[i] = ranked.get(i).mIndex;
+      }
+
+      return results;
+   }
+
+   private static int getSubstringScore(String text, String query) {
+      if (text.equals(query)) {
+         return SCORE_EXACT;
+      } else if (text.startsWith(query)) {
+         return SCORE_PREFIX;
+      } else if (text.contains(query)) {
+         return SCORE_CONTAINS;
+      }
+
+      return Integer.MAX_VALUE;
+   }
+
+   private int[] getAll() {
+      int[] all = new int[mNames.length];
+
+      for (int i = 0; i < all.length; i++) {
+         all[i] = i;
+      }
+
+      return all;
+   }
+
+   /**
+    * Returns the entries that may contain the query: those that contain all
+    * of its trigrams, or every entry for queries too short to have any.
+    */
+   private int[] getSubstringCandidates(String query) {
+      if (query.length() < GRAM_LENGTH) {
+         return getAll();
+      }
+
+      int[] candidates = null;
+
+      for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+         int[] postings = mGrams.get(query.substring(i, i + GRAM_LENGTH));
+
+         if (postings == null) {
+            return new int[0];
+         }
+
+         candidates = candidates == null ? postings : intersect(candidates, postings);
+
+         if (candidates.length == 0) {
+            break;
+         }
+      }
+
+      return candidates;
+   }
+
+   private static int[] intersect(int[] a, int[] b) {
+      int[] result = new int[Math.min(a.length, b.length)];
+      int count = 0;
+      int i = 0;
+      int j = 0;
+
+      while (i < a.length && j < b.length) {
+         if (a[i] < b[j]) {
+            i++;
+         } else if (a[i] > b[j]) {
+            j++;
+         } else {
+            result[count++] = a[i];
+            i++;
+            j++;
+         }
+      }
+
+      int[] trimmed = new int[count];
+      System.arraycopy(result, 0, trimmed, 0, count);
+      return trimmed;
+   }
+
+   private static void addGrams(HashMap<String, ArrayList<Integer>> grams, String text,
+    int index) {
+      for (int i = 0; i + GRAM_LENGTH <= text.length(); i++) {
+         String gram = text.substring(i, i + GRAM_LENGTH);
+         ArrayList<Integer> indexes = grams.get(gram);
+
+         if (indexes == null) {
+            indexes = new ArrayList<Integer>();
+            grams.put(gram, indexes);
+         }
+
+         // Indexes are added in ascending order so only the last one can be
+         // a duplicate.
+         if (indexes.isEmpty() || indexes.get(indexes.size() - 1) != index) {
+            indexes.add(index);
+         }
+      }
+   }
+}
@@ -0,0 +1,341 @@
+package com.dozuki.ifixit.util;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps large model graphs out of saved instance state. The Bundle only holds
+ * a key; the object itself stays in memory so a configuration change gets the
+ * same instance back without any serialization, and a serialized copy is
+ * written to the files directory in case the process is killed.
+ *
+ * Bundles are limited by the binder transaction size which whole guides and
+ * topic trees can exceed.
+ *
+ * The object is serialized in put() because the UI thread keeps changing it
+ * afterwards; only the disk write is deferred. Reading it back after the
+ * process was killed happens on the same background thread, which is why
+ * restore() takes a callback. The copy on disk can be missing if the process
+ * dies right after saving, so callers must treat a null value as a reason to
+ * load the object again rather than as an empty state.
+ */
+public class StateCache {
+   private static final String TAG = "StateCache";
+   private static final String STATE_DIR = "instance_state";
+
+   /**
+    * Serialized size of the objects kept in memory. The newest is always kept
+    * however big it is; only the most recently saved are likely to be
+    * restored.
+    */
+   private static final int MAX_MEMORY_BYTES = 1024 * 1024;
+
+   /**
+    * Files kept on disk. Older ones are from activities that are long gone;
+    * age alone isn't used because a task can sit in the background for days.
+    */
+   private static final int MAX_FILES = 32;
+
+   private static final String TEMP_SUFFIX = ".tmp";
+
+   /**
+    * Receives a value restored by restore().
+    */
+   public interface Callback<T extends Serializable> {
+      /**
+       * Called on the UI thread with the value or null if there isn't one or
+       * it can't be restored.
+       */
+      public void onRestored(T value);
+   }
+
+   private static class Entry {
+      public final Serializable mValue;
+      public final int mSize;
+
+      public Entry(Serializable value, int size) {
+         mValue = value;
+         mSize = size;
+      }
+   }
+
+   /**
+    * Keys must not collide with ones saved by an earlier process.
+    */
+   private static final String sKeyPrefix = Long.toString(System.currentTimeMillis(), 36);
+   private static final AtomicInteger sNextKey = new AtomicInteger();
+
+   /**
+    * Objects kept in memory in access order. Guarded by itself.
+    */
+   private static final LinkedHashMap<String, Entry> sEntries =
+    new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   private static int sEntriesSize = 0;
+
+   /**
+    * Writes and reads the files in order, so a read always sees the write
+    * before it.
+    */
+   private static final ExecutorService sWorker = Executors.newSingleThreadExecutor(
+    new ThreadFactory() {
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, TAG);
+      }
+   });
+
+   private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+   /**
+    * Saves the value in the cache and its key in the Bundle under name.
+    */
+   public static void put(Bundle state, String name, Serializable value) {
+      if (value == null) {
+         state.remove(name);
+         return;
+      }
+
+      long startTime = System.currentTimeMillis();
+      byte[] data = serialize(value);
+
+      if (data == null) {
+         state.remove(name);
+         return;
+      }
+
+      if (App.inDebug()) {
+         Log.d(TAG, "Serialized " + name + " to " + data.length + " bytes in " +
+          (System.currentTimeMillis() - startTime) + "ms");
+      }
+
+      String key = sKeyPrefix + "-" + sNextKey.incrementAndGet();
+
+      cache(key, value, data.length);
+      state.putString(name, key);
+
+      write(key, data);
+   }
+
+   /**
+    * Restores the value saved under name. The callback is called right away
+    * if the value is in memory. Otherwise the process was killed since it was
+    * saved; it is read on a background thread and the callback is posted to
+    * the UI thread, so check that the caller is still around.
+    */
+   public static <T extends Serializable> void restore(Bundle state, final String name,
+    final Callback<T> callback) {
+      final String key = state.getString(name);
+
+      if (key == null) {
+         callback.onRestored(null);
+         return;
+      }
+
+      synchronized (sEntries) {
+         Entry entry = sEntries.get(key);
+
+         if (entry != null) {
+            callback.onRestored(StateCache.<T>cast(entry.mValue));
+            return;
+         }
+      }
+
+      sWorker.execute(new Runnable() {
+         public void run() {
+            long startTime = System.currentTimeMillis();
+            File file = new File(getDirectory(), key);
+            final Serializable value = read(file);
+
+            if (App.inDebug()) {
+               Log.d(TAG, "Restored " + name + " from disk in " +
+                (System.currentTimeMillis() - startTime) + "ms");
+            }
+
+            if (value != null) {
+               cache(key, value, (int)file.length());
+            }
+
+            sMainHandler.post(new Runnable() {
+               public void run() {
+                  callback.onRestored(StateCache.<T>cast(value));
+               }
+            });
+         }
+      });
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <T extends Serializable> T cast(Serializable value) {
+      return (T)value;
+   }
+
+   /**
+    * Keeps the value in memory and evicts the least recently used ones until
+    * the rest fit in MAX_MEMORY_BYTES.
+    */
+   private static void cache(String key, Serializable value, int size) {
+      synchronized (sEntries) {
+         Entry previous = sEntries.put(key, new Entry(value, size));
+
+         if (previous != null) {
+            sEntriesSize -= previous.mSize;
+         }
+
+         sEntriesSize += size;
+
+         Iterator<Entry> entries = sEntries.values().iterator();
+         while (sEntriesSize > MAX_MEMORY_BYTES && sEntries.size() > 1) {
+            Entry eldest = entries.next();
+            sEntriesSize -= eldest.mSize;
+            entries.remove();
+         }
+      }
+   }
+
+   /**
+    * Returns the serialized value or null if it can't be serialized.
+    */
+   private static byte[] serialize(Serializable value) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+      try {
+         ObjectOutputStream out = new ObjectOutputStream(bytes);
+         out.writeObject(value);
+         out.close();
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to serialize " + value.getClass().getName(), e);
+         return null;
+      }
+
+      return bytes.toByteArray();
+   }
+
+   private static void write(final String key, final byte[] data) {
+      sWorker.execute(new Runnable() {
+         public void run() {
+            File directory = getDirectory();
+
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+               Log.e(TAG, "Failed to create " + directory);
+               return;
+            }
+
+            // Written to a temporary file first so a partially written file is
+            // never read back.
+            File temp = new File(directory, key + TEMP_SUFFIX);
+            OutputStream out = null;
+            boolean written = false;
+            try {
+               out = new FileOutputStream(temp);
+               out.write(data);
+               written = true;
+            } catch (IOException e) {
+               Log.e(TAG, "Failed to write " + key, e);
+            } finally {
+               if (out != null) {
+                  try {
+                     out.close();
+                  } catch (IOException e) {
+                     Log.e(TAG, "Closing", e);
+                     written = false;
+                  }
+               }
+            }
+
+            if (!written || !temp.renameTo(new File(directory, key))) {
+               temp.delete();
+               return;
+            }
+
+            prune(directory);
+         }
+      });
+   }
+
+   private static Serializable read(File file) {
+      if (!file.exists()) {
+         return null;
+      }
+
+      ObjectInputStream in = null;
+      try {
+         in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+         return (Serializable)in.readObject();
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read " + file.getName(), e);
+         return null;
+      } catch (ClassNotFoundException e) {
+         Log.e(TAG, "Failed to read " + file.getName(), e);
+         return null;
+      } finally {
+         if (in != null) {
+            try {
+               in.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+   }
+
+   /**
+    * Deletes all but the MAX_FILES most recently written files.
+    */
+   private static void prune(File directory) {
+      File[] files = directory.listFiles();
+
+      if (files == null || files.length <= MAX_FILES) {
+         return;
+      }
+
+      final long[] modified = new long[files.length];
+      Integer[] order = new Integer[files.length];
+      for (int i = 0; i < files.length; i++) {
+         modified[i] = files[i].lastModified();
+         order[i] = i;
+      }
+
+      // Newest first.
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare(Integer lhs, Integer rhs) {
+            return modified[lhs] < modified[rhs] ? 1 : (modified[lhs] > modified[rhs] ? -1 : 0);
+         }
+      });
+
+      for (int i = MAX_FILES; i < order.length; i++) {
+         files[order[i]].delete();
+      }
+   }
+
+   private static File getDirectory() {
+      return new File(App.get().getFilesDir(), STATE_DIR);
+   }
+}
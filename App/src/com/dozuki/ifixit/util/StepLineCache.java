@@ -0,0 +1,129 @@
+package com.dozuki.ifixit.util;
+
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.text.Html;
+import android.text.Spanned;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.model.guide.StepLine;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * LRU cache of step lines converted from HTML to Spanned text, keyed by the
+ * site, the step's revision and the line id so an edited step is never served
+ * stale text. Guides are converted in the background as soon as they are loaded
+ * so paging through steps only has to bind the cached text.
+ *
+ * The cached Spanneds are shared; TextView copies them into its own Spannable
+ * when a movement method is set so they are never modified after caching.
+ */
+public class StepLineCache {
+   private static final String TAG = "StepLineCache";
+
+   /**
+    * Measured in characters. Roughly 100 steps worth of text.
+    */
+   private static final int MAX_SIZE = 256 * 1024;
+
+   private static final LruCache<String, Spanned> sCache =
+    new LruCache<String, Spanned>(MAX_SIZE) {
+      @Override
+      protected int sizeOf(String key, Spanned value) {
+         return Math.max(value.length(), 1);
+      }
+   };
+
+   private static final ExecutorService sRenderer = Executors.newSingleThreadExecutor(
+    new ThreadFactory() {
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, TAG);
+      }
+   });
+
+   /**
+    * Returns the line's rendered text, converting and caching it if it isn't
+    * cached already.
+    */
+   public static Spanned get(GuideStep step, StepLine line) {
+      String key = getKey(step, line);
+
+      if (key == null) {
+         return render(line);
+      }
+
+      Spanned text = sCache.get(key);
+
+      if (text == null) {
+         text = render(line);
+         sCache.put(key, text);
+      }
+
+      return text;
+   }
+
+   /**
+    * Converts every line in the guide that isn't cached on a background thread.
+    */
+   public static void prerender(Guide guide) {
+      prerender(guide.getSteps());
+   }
+
+   /**
+    * Converts every line in the steps that isn't cached on a background thread.
+    */
+   public static void prerender(final List<GuideStep> steps) {
+      sRenderer.execute(new Runnable() {
+         public void run() {
+            long startTime = System.currentTimeMillis();
+            int rendered = 0;
+
+            for (GuideStep step : steps) {
+               for (StepLine line : step.getLines()) {
+                  String key = getKey(step, line);
+
+                  if (key != null && sCache.get(key) == null) {
+                     sCache.put(key, render(line));
+                     rendered++;
+                  }
+               }
+            }
+
+            if (App.inDebug()) {
+               Log.d(TAG, "Rendered " + rendered + " lines in " +
+                (System.currentTimeMillis() - startTime) + "ms, " + sCache.hitCount() +
+                " hits, " + sCache.missCount() + " misses");
+            }
+         }
+      });
+   }
+
+   private static Spanned render(StepLine line) {
+      return Utils.correctLinkPaths(Html.fromHtml(line.getTextRendered(), null,
+       new WikiHtmlTagHandler()));
+   }
+
+   /**
+    * Returns null for lines that haven't been saved because there is nothing
+    * that identifies their contents.
+    */
+   private static String getKey(GuideStep step, StepLine line) {
+      if (step.getRevisionid() == null || line.getLineId() == null) {
+         return null;
+      }
+
+      return App.get().getSite().mName + ":" + step.getRevisionid() + ":" + line.getLineId();
+   }
+}
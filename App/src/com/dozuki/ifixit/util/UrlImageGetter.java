@@ -1,116 +1,253 @@
 package com.dozuki.ifixit.util;
 
 import android.content.Context;
-import android.graphics.BitmapFactory;
+import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.text.Html;
-import android.view.View;
+import android.util.Log;
 import android.widget.TextView;
 import com.dozuki.ifixit.App;
-import com.squareup.okhttp.OkHttpClient;
+import com.dozuki.ifixit.util.api.OfflineGuideStore;
+import com.squareup.picasso.LruCache;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads the images in wiki HTML for a TextView. Images are fetched with the
+ * shared OkHttpClient so they go through its disk cache, decoded no wider than
+ * the TextView and kept in the memory cache shared with Picasso. Each source is
+ * only loaded once per getter no matter how many times it appears.
+ *
+ * Call cancel() when the TextView goes away so pending loads stop and no
+ * longer hold on to it.
+ */
 public class UrlImageGetter implements Html.ImageGetter {
-   Context context;
-   View container;
+   private static final String TAG = "UrlImageGetter";
+   private static final int POOL_SIZE = 2;
+
+   private static final ExecutorService sExecutor = Executors.newFixedThreadPool(POOL_SIZE,
+    new ThreadFactory() {
+      private final AtomicInteger mCount = new AtomicInteger(1);
+
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, TAG + " #" + mCount.getAndIncrement());
+      }
+   });
+
+   private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+   private final Context mContext;
+   private final LruCache mMemoryCache;
+   private TextView mContainer;
+   private boolean mCanceled = false;
+
+   /**
+    * Loads in progress keyed by source, along with every drawable waiting on
+    * them. Only touched on the main thread.
+    */
+   private final Map<String, Future<?>> mLoads = new HashMap<String, Future<?>>();
+   private final Map<String, List<UrlDrawable>> mWaiting =
+    new HashMap<String, List<UrlDrawable>>();
 
    /**
-    * Construct the URLImageParser which will execute AsyncTask and refresh the container
-    *
-    * @param container View that needs to be invalidated in order to load the view after the AsyncTask is done
-    * @param context
+    * @param container TextView the HTML is displayed in. It is resized as
+    * images load.
     */
-   public UrlImageGetter(View container, Context context) {
-      this.context = context;
-      this.container = container;
+   public UrlImageGetter(TextView container, Context context) {
+      mContext = context.getApplicationContext();
+      mContainer = container;
+      mMemoryCache = PicassoUtils.getMemoryCache(mContext);
    }
 
    public Drawable getDrawable(String source) {
       UrlDrawable urlDrawable = new UrlDrawable();
 
-      // get the actual source
-      ImageGetterAsyncTask asyncTask = new ImageGetterAsyncTask(urlDrawable);
+      if (mCanceled) {
+         return urlDrawable;
+      }
+
+      final int width = getTargetWidth();
+      final String key = getCacheKey(source, width);
+      Bitmap cached = mMemoryCache.get(key);
+
+      if (cached != null) {
+         setBitmap(urlDrawable, cached);
+         return urlDrawable;
+      }
+
+      List<UrlDrawable> waiting = mWaiting.get(source);
+      if (waiting != null) {
+         waiting.add(urlDrawable);
+         return urlDrawable;
+      }
+
+      waiting = new ArrayList<UrlDrawable>();
+      waiting.add(urlDrawable);
+      mWaiting.put(source, waiting);
+
+      final String url = source;
+      mLoads.put(source, sExecutor.submit(new Runnable() {
+         public void run() {
+            final Bitmap bitmap = fetchBitmap(url, width);
+
+            if (bitmap != null) {
+               mMemoryCache.set(key, bitmap);
+            }
 
-      asyncTask.execute(source);
+            sMainHandler.post(new Runnable() {
+               public void run() {
+                  onLoaded(url, bitmap);
+               }
+            });
+         }
+      }));
 
-      // return reference to URLDrawable where I will change with actual image from
-      // the src tag
       return urlDrawable;
    }
 
-   public class ImageGetterAsyncTask extends AsyncTask<String, Void, Drawable> {
-      UrlDrawable urlDrawable;
+   /**
+    * Stops pending loads and releases the TextView.
+    */
+   public void cancel() {
+      mCanceled = true;
 
-      public ImageGetterAsyncTask(UrlDrawable d) {
-         this.urlDrawable = d;
+      for (Future<?> load : mLoads.values()) {
+         load.cancel(true);
       }
 
-      @Override
-      protected Drawable doInBackground(String... params) {
-         String source = params[0];
-         return fetchDrawable(source);
+      mLoads.clear();
+      mWaiting.clear();
+      mContainer = null;
+   }
+
+   private void onLoaded(String source, Bitmap bitmap) {
+      mLoads.remove(source);
+      List<UrlDrawable> waiting = mWaiting.remove(source);
+
+      if (mCanceled || waiting == null || bitmap == null) {
+         return;
       }
 
-      @Override
-      protected void onPostExecute(Drawable result) {
-         int width = result.getIntrinsicWidth();
-         int height = (int) ((width * (3f/4f)) - 0.5f);
+      int addedHeight = 0;
+      for (UrlDrawable urlDrawable : waiting) {
+         addedHeight += setBitmap(urlDrawable, bitmap);
+      }
+
+      // redraw the image by invalidating the container
+      mContainer.invalidate();
+
+      // For ICS
+      mContainer.setHeight(mContainer.getHeight() + addedHeight);
+
+      // Pre ICS
+      mContainer.setEllipsize(null);
+   }
+
+   /**
+    * Returns the height the drawable takes up.
+    */
+   private int setBitmap(UrlDrawable urlDrawable, Bitmap bitmap) {
+      Drawable drawable = new BitmapDrawable(mContext.getResources(), bitmap);
+      int width = drawable.getIntrinsicWidth();
+      int height = (int) ((width * (3f/4f)) - 0.5f);
 
-         result.setBounds(0, 0, width, height);
+      drawable.setBounds(0, 0, width, height);
 
-         // change the reference of the current drawable to the result
-         // from the HTTP call
-         urlDrawable.drawable = result;
+      // change the reference of the current drawable to the loaded one
+      urlDrawable.drawable = drawable;
 
-         // redraw the image by invalidating the container
-         UrlImageGetter.this.container.invalidate();
+      return height;
+   }
 
-         // For ICS
-         ((TextView)UrlImageGetter.this.container).setHeight(UrlImageGetter.this.container.getHeight() + height);
+   /**
+    * Images are drawn at their intrinsic width inside the container so
+    * there's no use decoding them any wider.
+    */
+   private int getTargetWidth() {
+      int width = mContainer == null ? 0 : mContainer.getWidth();
 
-         // Pre ICS
-         ((TextView)UrlImageGetter.this.container).setEllipsize(null);
+      if (width <= 0) {
+         width = mContext.getResources().getDisplayMetrics().widthPixels;
       }
 
-      /**
-       * Get the Drawable from URL
-       *
-       * @param source Url of image to download
-       * @return drawable image from the Url
-       */
-      public Drawable fetchDrawable(String source) {
-         try {
-            InputStream is = null;
+      return width;
+   }
 
+   private static Bitmap fetchBitmap(String source, int width) {
+      InputStream is = null;
+
+      try {
+         is = fetch(source);
+         return BitmapDecoder.decode(readBytes(is), width, 0);
+      } catch (IOException e) {
+         Log.w(TAG, "Failed to load " + source, e);
+         return null;
+      } finally {
+         if (is != null) {
             try {
-               is = fetch(source);
-               Drawable drawable = new BitmapDrawable(
-                UrlImageGetter.this.context.getResources(),
-                BitmapFactory.decodeStream(is));
-
-               return drawable;
-            } finally {
-               if (is != null) is.close();
+               is.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
             }
-         } catch (Exception e) {
-            return null;
          }
       }
+   }
+
+   private static InputStream fetch(String source) throws IOException {
+      if (App.inDebug()) {
+         source = source.replace("https", "http");
+      }
 
-      private InputStream fetch(String source) throws IOException {
-         if (App.inDebug()) {
-            source = source.replace("https", "http");
+      File file = OfflineGuideStore.get(App.get()).getMediaFile(source);
+      if (file != null) {
+         return new FileInputStream(file);
+      }
+
+      HttpURLConnection connection = App.get().getOkHttpClient().open(new URL(source));
+      return connection.getInputStream();
+   }
+
+   private static byte[] readBytes(InputStream is) throws IOException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+
+      while ((read = is.read(buffer)) != -1) {
+         if (Thread.interrupted()) {
+            throw new IOException("Canceled");
          }
 
-         OkHttpClient client = Utils.createOkHttpClient();
-         HttpURLConnection connection = client.open(new URL(source));
-         return connection.getInputStream();
+         out.write(buffer, 0, read);
       }
+
+      return out.toByteArray();
+   }
+
+   private static String getCacheKey(String source, int width) {
+      return "inline:" + width + ":" + source;
    }
 }
@@ -71,26 +71,31 @@ public class Utils {
     * @return spanned with fixed links
     */
    public static Spanned correctLinkPaths(Spanned spantext) {
-      Object[] spans = spantext.getSpans(0, spantext.length(), Object.class);
-      for (Object span : spans) {
+      URLSpan[] spans = spantext.getSpans(0, spantext.length(), URLSpan.class);
+
+      if (spans.length == 0) {
+         return spantext;
+      }
+
+      Site site = App.get().getSite();
+      for (URLSpan span : spans) {
+         if (span.getURL().startsWith("http")) {
+            continue;
+         }
+
          int start = spantext.getSpanStart(span);
          int end = spantext.getSpanEnd(span);
          int flags = spantext.getSpanFlags(span);
 
-         Site site = App.get().getSite();
-
-         if (span instanceof URLSpan) {
-            URLSpan urlSpan = (URLSpan) span;
-            if (!urlSpan.getURL().startsWith("http")) {
-               if (urlSpan.getURL().startsWith("/")) {
-                  urlSpan = new URLSpan("http://" + site.mDomain + urlSpan.getURL());
-               } else {
-                  urlSpan = new URLSpan("http://" + site.mDomain + "/" + urlSpan.getURL());
-               }
-            }
-            ((Spannable) spantext).removeSpan(span);
-            ((Spannable) spantext).setSpan(urlSpan, start, end, flags);
+         URLSpan urlSpan;
+         if (span.getURL().startsWith("/")) {
+            urlSpan = new URLSpan("http://" + site.mDomain + span.getURL());
+         } else {
+            urlSpan = new URLSpan("http://" + site.mDomain + "/" + span.getURL());
          }
+
+         ((Spannable) spantext).removeSpan(span);
+         ((Spannable) spantext).setSpan(urlSpan, start, end, flags);
       }
 
       return spantext;
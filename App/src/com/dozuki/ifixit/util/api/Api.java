@@ -8,14 +8,16 @@ import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.BuildConfig;
 import com.dozuki.ifixit.R;
 import com.dozuki.ifixit.model.auth.Authenticator;
+import com.dozuki.ifixit.model.dozuki.Site;
 import com.dozuki.ifixit.model.user.User;
 import com.dozuki.ifixit.ui.BaseActivity;
 import com.dozuki.ifixit.util.FileCache;
@@ -25,9 +27,24 @@ import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 import com.squareup.otto.DeadEvent;
 import com.squareup.otto.Subscribe;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Class that performs asynchronous API calls and posts the results to the
@@ -40,6 +57,21 @@ public class Api {
 
    private static final int INVALID_LOGIN_CODE = 401;
 
+   /**
+    * Request bodies at least this large are gzipped for endpoints that accept
+    * it.
+    */
+   private static final int GZIP_REQUEST_MIN_BYTES = 2048;
+
+   private static final int UNSUPPORTED_MEDIA_TYPE_CODE = 415;
+
+   /**
+    * Endpoints whose server rejected a gzipped request body so they aren't sent
+    * gzipped again. Other endpoints keep compressing.
+    */
+   private static final Set<ApiEndpoint> sGzipRejectedEndpoints =
+    Collections.synchronizedSet(EnumSet.noneOf(ApiEndpoint.class));
+
    /**
     * Pending API call. This is set when an authenticated request is performed
     * but the user is not logged in. This is then performed once the user has
@@ -52,6 +84,79 @@ public class Api {
     */
    private static List<ApiEvent<?>> sDeadApiEvents;
 
+   /**
+    * Performs all API calls off of the UI thread.
+    */
+   private static final ApiExecutor sExecutor = new ApiExecutor();
+
+   /**
+    * Results are delivered to responders on the UI thread.
+    */
+   private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+   /**
+    * The most recent call for superseding endpoints keyed by endpoint and
+    * activityid. Only accessed from the UI thread.
+    */
+   private static final HashMap<String, ApiCall> sSupersedableCalls =
+    new HashMap<String, ApiCall>();
+
+   /**
+    * GET requests that are currently being performed keyed by url and userid.
+    * Identical GETs made in the meantime wait on these rather than making
+    * their own request. Only accessed from the UI thread.
+    */
+   private static final HashMap<String, InFlightRequest> sInFlightRequests =
+    new HashMap<String, InFlightRequest>();
+
+   /**
+    * A request that identical calls have been coalesced onto. Every call gets
+    * its own copy of each result.
+    */
+   private static class InFlightRequest implements Responder {
+      private final ApiCall mApiCall;
+      private final List<ApiCall> mWaitingCalls = new LinkedList<ApiCall>();
+      private final List<Responder> mWaitingResponders = new LinkedList<Responder>();
+
+      /**
+       * The most recent result. Calls that attach after a stored response has
+       * been sent get it straight away.
+       */
+      private ApiEvent<?> mLastResult;
+
+      public InFlightRequest(ApiCall apiCall, Responder responder) {
+         mApiCall = apiCall;
+         mWaitingCalls.add(apiCall);
+         mWaitingResponders.add(responder);
+      }
+
+      public void attach(final ApiCall apiCall, final Responder responder) {
+         mWaitingCalls.add(apiCall);
+         mWaitingResponders.add(responder);
+
+         if (mLastResult != null) {
+            final ApiEvent<?> result = mLastResult.copyFor(apiCall);
+
+            sMainHandler.post(new Runnable() {
+               public void run() {
+                  responder.setResult(result);
+               }
+            });
+         }
+      }
+
+      public void setResult(ApiEvent<?> result) {
+         mLastResult = result;
+
+         for (int i = 0; i < mWaitingCalls.size(); i++) {
+            ApiCall apiCall = mWaitingCalls.get(i);
+
+            mWaitingResponders.get(i).setResult(apiCall == mApiCall ? result :
+             result.copyFor(apiCall));
+         }
+      }
+   }
+
    /**
     * Returns true if the the user needs to be authenticated for the given site and endpoint.
     */
@@ -87,8 +192,24 @@ public class Api {
       if (requireAuthentication(endpoint) && !App.get().isUserLoggedIn()) {
          App.getBus().post(getUnauthorizedEvent(apiCall));
       } else {
-         performRequest(apiCall, new Responder() {
+         if (endpoint.isSuperseding()) {
+            ApiCall previousCall = sSupersedableCalls.put(getSupersedeKey(apiCall), apiCall);
+
+            if (previousCall != null) {
+               previousCall.cancel();
+            }
+         }
+
+         Responder responder = new Responder() {
             public void setResult(ApiEvent<?> result) {
+               if (apiCall.isCanceled()) {
+                  if (App.inDebug()) {
+                     Log.i("Api", "Dropping result of canceled call: " + apiCall.mEndpoint);
+                  }
+
+                  return;
+               }
+
                if (apiCall.mEndpoint.mPostResults) {
                   /**
                    * Always post the result despite any errors. This actually sends it off
@@ -98,8 +219,59 @@ public class Api {
                   App.getBus().post(new ApiEvent.ActivityProxy(result));
                }
             }
-         });
+         };
+
+         if (canCoalesce(apiCall)) {
+            String key = getInFlightKey(apiCall);
+            InFlightRequest inFlight = sInFlightRequests.get(key);
+
+            if (inFlight != null && !inFlight.mApiCall.isCanceled()) {
+               if (App.inDebug()) {
+                  Log.i("Api", "Coalescing request: " + key);
+               }
+
+               inFlight.attach(apiCall, responder);
+               return;
+            }
+
+            inFlight = new InFlightRequest(apiCall, responder);
+            sInFlightRequests.put(key, inFlight);
+            responder = inFlight;
+         }
+
+         performRequest(apiCall, responder);
+      }
+   }
+
+   /**
+    * Performs the ApiCall on the calling thread and returns the result instead of
+    * posting it. For background jobs that are already off the main thread; no
+    * login dialog is opened if the user isn't authenticated.
+    */
+   public static ApiEvent<?> callSync(ApiCall apiCall) {
+      return callSync(apiCall, App.get().getSite(), App.get().getUser());
+   }
+
+   /**
+    * Performs the ApiCall as callSync does but for the given site and user
+    * rather than the current ones, for jobs that were queued under them.
+    */
+   public static ApiEvent<?> callSync(ApiCall apiCall, Site site, User user) {
+      apiCall.mSite = site;
+      apiCall.mUser = user;
+
+      if (apiCall.mAuthToken == null && user != null) {
+         apiCall.mAuthToken = user.getAuthToken();
+      }
+
+      if (requireAuthentication(apiCall.mEndpoint) && user == null) {
+         ApiEvent<?> event = apiCall.mEndpoint.getEvent();
+         event.setApiCall(apiCall);
+
+         return event.setError(new ApiError(ApiError.Type.UNAUTHORIZED));
       }
+
+      return performAndParseApiCall(apiCall);
    }
 
    /**
@@ -156,13 +328,16 @@ public class Api {
          try {
             // We don't know the type of ApiEvent it is so we must let the endpoint's
             // parseResult return the correct one...
-            event = endpoint.parseResult(response);
+            event = endpoint.parseResult(response,
+             result.mApiCall == null ? null : result.mApiCall.mSite);
 
             // ... and then we can copy over the other values we need.
             event.mCode = code;
             event.mApiCall = result.mApiCall;
             event.mResponse = result.mResponse;
             event.mStoredResponse = result.mStoredResponse;
+            event.mEtag = result.mEtag;
+            event.mLastModified = result.mLastModified;
          } catch (Exception e) {
             // This is meant to catch JSON and GSON parse exceptions but enumerating
             // all different types of Exceptions and putting error handling code
@@ -287,26 +462,106 @@ public class Api {
       }
    }
 
+   public static ApiExecutor getExecutor() {
+      return sExecutor;
+   }
+
    private static void performRequest(final ApiCall apiCall, final Responder responder) {
-      AsyncTask<String, Void, ApiEvent<?>> as = new AsyncTask<String, Void, ApiEvent<?>>() {
-         @Override
-         protected ApiEvent<?> doInBackground(String... dummy) {
-            return performAndParseApiCall(apiCall);
+      sExecutor.execute(apiCall, new Runnable() {
+         public void run() {
+            ApiEndpoint.CachePolicy cachePolicy = apiCall.mEndpoint.mCachePolicy;
+            boolean sentStoredResponse = false;
+
+            if (cachePolicy != ApiEndpoint.CachePolicy.NETWORK_ONLY) {
+               ApiEvent<?> storedEvent = getStoredEvent(apiCall);
+
+               if (storedEvent != null) {
+                  if (cachePolicy == ApiEndpoint.CachePolicy.CACHE_FIRST) {
+                     deliverResult(apiCall, responder, storedEvent, true);
+                     return;
+                  }
+
+                  deliverResult(apiCall, responder, storedEvent, false);
+                  sentStoredResponse = true;
+                  apiCall.mStoredEventDelivered = true;
+               }
+            }
+
+            ApiEvent<?> result = performAndParseApiCall(apiCall);
+
+            // Don't bother the responder again if the stored response is still
+            // current or couldn't be refreshed.
+            if (sentStoredResponse && (result.mStoredResponse || result.hasError())) {
+               if (App.inDebug()) {
+                  Log.i("Api", "Not sending refreshed response: " +
+                   (result.hasError() ? "error" : "unchanged"));
+               }
+
+               result = null;
+            }
+
+            deliverResult(apiCall, responder, result, true);
          }
+      });
+   }
 
-         @Override
-         protected void onPostExecute(ApiEvent<?> result) {
-            responder.setResult(result);
+   /**
+    * Hands the result, if any, to the responder on the UI thread. finished is
+    * true for the last result of the call.
+    */
+   private static void deliverResult(final ApiCall apiCall, final Responder responder,
+    final ApiEvent<?> result, final boolean finished) {
+      sMainHandler.post(new Runnable() {
+         public void run() {
+            if (finished) {
+               onRequestFinished(apiCall);
+            }
+
+            if (result != null) {
+               responder.setResult(result);
+            }
          }
-      };
+      });
+   }
 
-      if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.HONEYCOMB_MR1) {
-         as.execute();
-      } else {
-         as.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+   private static void onRequestFinished(ApiCall apiCall) {
+      if (apiCall.mEndpoint.isSuperseding()) {
+         String key = getSupersedeKey(apiCall);
+
+         if (sSupersedableCalls.get(key) == apiCall) {
+            sSupersedableCalls.remove(key);
+         }
+      }
+
+      if (canCoalesce(apiCall)) {
+         String key = getInFlightKey(apiCall);
+         InFlightRequest inFlight = sInFlightRequests.get(key);
+
+         if (inFlight != null && inFlight.mApiCall == apiCall) {
+            sInFlightRequests.remove(key);
+         }
       }
    }
 
+   private static String getSupersedeKey(ApiCall apiCall) {
+      return apiCall.mEndpoint + ":" + apiCall.mActivityid;
+   }
+
+   /**
+    * Only GETs are coalesced. Superseding endpoints are excluded because their
+    * calls are routinely canceled.
+    */
+   private static boolean canCoalesce(ApiCall apiCall) {
+      return apiCall.mEndpoint.mMethod.equals("GET") && !apiCall.mEndpoint.isSuperseding();
+   }
+
+   private static String getInFlightKey(ApiCall apiCall) {
+      Integer userid = getUserid(apiCall.mUser);
+
+      return apiCall.mEndpoint.getUrl(apiCall.mSite, apiCall.mQuery) + ":" +
+       (userid == null ? 0 : userid);
+   }
+
    private static ApiEvent<?> performAndParseApiCall(ApiCall apiCall) {
       ApiEndpoint endpoint = apiCall.mEndpoint;
       final String url = endpoint.getUrl(apiCall.mSite, apiCall.mQuery);
@@ -321,13 +576,20 @@ public class Api {
       try {
          ApiEvent<?> response = getResponse(url, event, apiCall);
 
+         // The responder already has the parsed stored response so there's
+         // nothing new to parse or store.
+         if (response.mStoredResponse && apiCall.mStoredEventDelivered) {
+            return response;
+         }
+
          if (!response.hasError()) {
             response = parseResult(response, endpoint);
          }
 
          if (!response.hasError() && endpoint.mMethod.equals("GET") &&
           !response.mStoredResponse) {
-            storeResponse(url, apiCall, response.getResponse());
+            storeResponse(url, apiCall, response);
+            SearchDatabase.get(App.get()).index(response);
          }
 
          return response;
@@ -338,18 +600,61 @@ public class Api {
       }
    }
 
+   /**
+    * Returns the parsed stored response for the ApiCall if there is one within
+    * the endpoint's TTL, null otherwise. Any stored response is kept on the
+    * ApiCall so the request can revalidate it without reading it again.
+    */
+   private static ApiEvent<?> getStoredEvent(ApiCall apiCall) {
+      ApiEndpoint endpoint = apiCall.mEndpoint;
+
+      if (!endpoint.mMethod.equals("GET")) {
+         return null;
+      }
+
+      String url = endpoint.getUrl(apiCall.mSite, apiCall.mQuery);
+      ApiDatabase.StoredResponse storedResponse = getStoredResponse(url, apiCall,
+       FileCache.NO_EXPIRATION);
+      apiCall.mStoredResponse = storedResponse;
+
+      if (storedResponse == null || (endpoint.mCacheTtl != FileCache.NO_EXPIRATION &&
+       storedResponse.mDate < System.currentTimeMillis() - endpoint.mCacheTtl)) {
+         return null;
+      }
+
+      ApiEvent<?> event = endpoint.getEvent();
+      event.setApiCall(apiCall);
+      event.setCode(200).setResponse(storedResponse.mResponse).setStoredResponse(true);
+      event = parseResult(event, endpoint);
+
+      return event.hasError() ? null : event;
+   }
+
    private static ApiEvent<?> getResponse(String url, ApiEvent<?> event, ApiCall apiCall) {
       long startTime = System.currentTimeMillis();
 
       if (!hasInternet()) {
          if (apiCall.mEndpoint.mMethod.equals("GET")) {
-            String response = getStoredResponse(url, apiCall);
-            if (response != null) {
+            // Any stored response beats an error when offline; the TTL only
+            // decides when to revalidate.
+            ApiDatabase.StoredResponse storedResponse = getStoredResponse(url, apiCall,
+             FileCache.NO_EXPIRATION);
+            if (storedResponse != null) {
                if (App.inDebug()) {
                   Log.i("Api", "Using stored API response");
                }
                // All GETs will be 200's if they're valid.
-               return event.setCode(200).setResponse(response).setStoredResponse(true);
+               return event.setCode(200).setResponse(storedResponse.mResponse)
+                .setStoredResponse(true);
+            }
+
+            String packedResponse = OfflineGuideStore.get(App.get()).getResponse(apiCall);
+            if (packedResponse != null) {
+               if (App.inDebug()) {
+                  Log.i("Api", "Using offline guide response");
+               }
+
+               return event.setCode(200).setResponse(packedResponse).setStoredResponse(true);
             }
          }
 
@@ -397,22 +702,74 @@ public class Api {
 
       request.followRedirects(false);
 
+      /**
+       * Setting this ourselves stops OkHttp from transparently decompressing the
+       * response so the compressed size can be recorded.
+       */
+      request.acceptGzipEncoding();
+
+      /**
+       * Ask the server to only send the body if it differs from the one we have
+       * stored. Stored responses are used regardless of their age because the
+       * server decides whether or not they are still valid.
+       */
+      ApiDatabase.StoredResponse storedResponse = null;
+      if (apiCall.mEndpoint.mMethod.equals("GET")) {
+         storedResponse = apiCall.mStoredResponse != null ? apiCall.mStoredResponse :
+          getStoredResponse(url, apiCall, FileCache.NO_EXPIRATION);
+
+         if (storedResponse != null && storedResponse.canRevalidate()) {
+            if (storedResponse.mEtag != null) {
+               request.ifNoneMatch(storedResponse.mEtag);
+            }
+
+            if (storedResponse.mLastModified > 0) {
+               request.ifModifiedSince(storedResponse.mLastModified);
+            }
+         } else {
+            storedResponse = null;
+         }
+      }
+
       /**
        * Continue with constructing the request body.
        */
+      boolean gzippedRequest = false;
       if (apiCall.mFilePath != null) {
          // POST the file if present.
-         request.send(new File(apiCall.mFilePath));
+         File file = new File(apiCall.mFilePath);
+         request.send(file);
+         ApiTrafficStats.recordSent(apiCall.mEndpoint, file.length(), file.length());
       } else if (apiCall.mRequestBody != null) {
-         request.send(apiCall.mRequestBody);
+         byte[] body = getBytes(apiCall.mRequestBody);
+         byte[] wireBody = body;
+
+         if (apiCall.mEndpoint.canGzipRequest() && body.length >= GZIP_REQUEST_MIN_BYTES &&
+          !sGzipRejectedEndpoints.contains(apiCall.mEndpoint)) {
+            wireBody = gzip(body);
+            gzippedRequest = true;
+            request.header(HttpRequest.HEADER_CONTENT_ENCODING, HttpRequest.ENCODING_GZIP);
+         }
+
+         request.send(wireBody);
+         ApiTrafficStats.recordSent(apiCall.mEndpoint, body.length, wireBody.length);
       }
 
       /**
        * The order is important here. If the code() is called first an IOException
        * is thrown in some cases (invalid login for one, maybe more).
        */
-      String responseBody = request.body();
+      byte[] wireResponse = request.bytes();
       int code = request.code();
+      String responseBody = decodeResponse(apiCall.mEndpoint, request, wireResponse);
+
+      if (gzippedRequest && isGzipRejection(code, responseBody)) {
+         // The server didn't process the body so it is safe to send it again.
+         Log.w("Api", "Gzipped request rejected with " + code + ", retrying uncompressed");
+         sGzipRejectedEndpoints.add(apiCall.mEndpoint);
+
+         return getResponse(url, event, apiCall);
+      }
 
       if (App.inDebug()) {
          long endTime = System.currentTimeMillis();
@@ -420,6 +777,8 @@ public class Api {
          Log.d("Api", "Response code: " + code);
          Log.d("Api", "Response body: " + responseBody);
          Log.d("Api", "Request time: " + (endTime - startTime) + "ms");
+         Log.d("Api", "HTTP client: " + App.get().getHttpStats());
+         Log.d("Api", "Traffic: " + ApiTrafficStats.getSummary(apiCall.mEndpoint));
       }
 
       /**
@@ -447,8 +806,18 @@ public class Api {
          } else {
             return getUnauthorizedEvent(apiCall);
          }
+      } else if (code == HttpURLConnection.HTTP_NOT_MODIFIED && storedResponse != null) {
+         if (App.inDebug()) {
+            Log.i("Api", "Stored API response is still valid");
+         }
+
+         ApiDatabase.get(App.get()).touchResponse(getUserid(apiCall.mUser), url);
+
+         return event.setCode(200).setResponse(storedResponse.mResponse)
+          .setStoredResponse(true);
       } else {
-         return event.setCode(code).setResponse(responseBody);
+         return event.setCode(code).setResponse(responseBody)
+          .setValidators(request.eTag(), request.lastModified());
       }
    }
 
@@ -486,10 +855,12 @@ public class Api {
       }
    }
 
-   private static String getStoredResponse(String url, ApiCall apiCall) {
+   private static ApiDatabase.StoredResponse getStoredResponse(String url, ApiCall apiCall,
+    long maxAge) {
       long startTime = System.currentTimeMillis();
 
-      String response = FileCache.get(getCacheKey(url, apiCall.mUser));
+      ApiDatabase.StoredResponse response = ApiDatabase.get(App.get()).getResponse(url,
+       getUserid(apiCall.mUser), maxAge);
 
       if (App.inDebug()) {
          long endTime = System.currentTimeMillis();
@@ -499,25 +870,145 @@ public class Api {
       return response;
    }
 
-   private static void storeResponse(String url, ApiCall apiCall, String response) {
+   private static void storeResponse(String url, ApiCall apiCall, ApiEvent<?> response) {
       long startTime = System.currentTimeMillis();
 
-      FileCache.set(getCacheKey(url, apiCall.mUser), response);
+      ApiDatabase.get(App.get()).insertResponse(getUserid(apiCall.mUser), url,
+       response.getResponse(), response.mEtag, response.mLastModified);
 
       if (App.inDebug()) {
          long endTime = System.currentTimeMillis();
-         Log.i("Api", "Stored response in " + (endTime - startTime) + "ms");
+         Log.i("Api", "Queued response for storage in " + (endTime - startTime) + "ms");
+      }
+   }
+
+   private static Integer getUserid(User user) {
+      return user == null ? null : user.getUserid();
+   }
+
+   private static byte[] getBytes(String string) {
+      try {
+         return string.getBytes(HttpRequest.CHARSET_UTF8);
+      } catch (UnsupportedEncodingException e) {
+         throw new HttpRequestException(e);
+      }
+   }
+
+   private static byte[] gzip(byte[] bytes) {
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+
+      try {
+         GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+         gzipStream.write(bytes);
+         gzipStream.close();
+      } catch (IOException e) {
+         throw new HttpRequestException(e);
+      }
+
+      return compressed.toByteArray();
+   }
+
+   /**
+    * Returns true if the response says the server can't decode a gzipped
+    * request body. Conflicts, validation errors and the like are returned
+    * as they are since the body was read just fine.
+    */
+   private static boolean isGzipRejection(int code, String responseBody) {
+      if (code == UNSUPPORTED_MEDIA_TYPE_CODE) {
+         return true;
+      }
+
+      if (code == HttpURLConnection.HTTP_BAD_REQUEST && responseBody != null) {
+         String body = responseBody.toLowerCase();
+         return body.contains("content-encoding") || body.contains("gzip");
+      }
+
+      return false;
+   }
+
+   /**
+    * Returns the response body as a String, decompressing it if the server
+    * gzipped it, and records its size in the traffic stats.
+    */
+   private static String decodeResponse(ApiEndpoint endpoint, HttpRequest request,
+    byte[] body) {
+      String charset = request.charset();
+      if (charset == null || charset.length() == 0) {
+         charset = HttpRequest.CHARSET_UTF8;
+      }
+
+      try {
+         if (body.length > 0 && HttpRequest.ENCODING_GZIP.equals(request.contentEncoding())) {
+            // Decoded straight from the compressed bytes; the decompressed
+            // size is counted on the way rather than by encoding it again.
+            CountingInputStream uncompressed = new CountingInputStream(
+             new GZIPInputStream(new ByteArrayInputStream(body)));
+            Reader reader = new InputStreamReader(uncompressed, charset);
+            StringBuilder text = new StringBuilder(body.length * 4);
+            char[] buffer = new char[4096];
+            int read;
+
+            try {
+               while ((read = reader.read(buffer)) != -1) {
+                  text.append(buffer, 0, read);
+               }
+            } finally {
+               reader.close();
+            }
+
+            ApiTrafficStats.recordReceived(endpoint, uncompressed.getCount(), body.length);
+            return text.toString();
+         }
+
+         ApiTrafficStats.recordReceived(endpoint, body.length, body.length);
+         return new String(body, charset);
+      } catch (IOException e) {
+         throw new HttpRequestException(e);
       }
    }
 
-   private static String getCacheKey(String url, User user) {
-      String key = "api_responses_" + url;
+   /**
+    * Counts the bytes read through it.
+    */
+   private static class CountingInputStream extends FilterInputStream {
+      private long mCount = 0;
 
-      if (user != null) {
-         key += "_" + user.getUserid();
+      public CountingInputStream(InputStream in) {
+         super(in);
       }
 
-      return key;
+      public long getCount() {
+         return mCount;
+      }
+
+      @Override
+      public int read() throws IOException {
+         int read = super.read();
+
+         if (read != -1) {
+            mCount++;
+         }
+
+         return read;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+         int read = super.read(buffer, offset, length);
+
+         if (read > 0) {
+            mCount += read;
+         }
+
+         return read;
+      }
+
+      @Override
+      public long skip(long count) throws IOException {
+         long skipped = super.skip(count);
+         mCount += skipped;
+         return skipped;
+      }
    }
 
    private static boolean hasInternet() {
@@ -37,6 +37,19 @@ public class ApiCall {
    protected User mUser;
    protected int mActivityid = -1;
 
+   /**
+    * Set from the UI thread and read from the API threads.
+    */
+   private volatile boolean mCanceled = false;
+
+   /**
+    * The stored response read before the request so it is only read once,
+    * and whether it has already been parsed and handed to the responder.
+    * Only used by the API thread performing the call.
+    */
+   protected ApiDatabase.StoredResponse mStoredResponse;
+   protected boolean mStoredEventDelivered = false;
+
    public ApiCall(ApiEndpoint endpoint, String query) {
       this(endpoint, query, null);
    }
@@ -59,6 +72,46 @@ public class ApiCall {
       mFilePath = filePath;
    }
 
+   /**
+    * Cancels the call. It isn't performed if it hasn't started yet and its
+    * result isn't posted if it has. Identical GETs that were coalesced onto
+    * this call are not performed either so this should only be used for
+    * superseding endpoints.
+    */
+   public void cancel() {
+      mCanceled = true;
+   }
+
+   public boolean isCanceled() {
+      return mCanceled;
+   }
+
+   /**
+    * Returns the stepid an UPDATE_GUIDE_STEP call is for, parsed from the
+    * query built by editStep, or -1 for any other call.
+    */
+   public int getEditedStepid() {
+      if (mEndpoint != ApiEndpoint.UPDATE_GUIDE_STEP) {
+         return -1;
+      }
+
+      int start = mQuery.indexOf("/steps/");
+      int end = mQuery.indexOf('?');
+
+      if (start == -1) {
+         return -1;
+      }
+
+      start += "/steps/".length();
+
+      try {
+         return Integer.parseInt(end > start ? mQuery.substring(start, end) :
+          mQuery.substring(start));
+      } catch (NumberFormatException e) {
+         return -1;
+      }
+   }
+
    public void updateUser(User user) {
       mUser = user;
       mAuthToken = mUser.getAuthToken();
@@ -234,13 +287,9 @@ public class ApiCall {
    }
 
    public static ApiCall editStep(GuideStep step, int guideid) {
-      JSONObject requestBody = new JSONObject();
+      JSONObject requestBody = getStepFields(step);
 
-      try {
-         requestBody.put("title", step.getTitle());
-         requestBody.put("lines", JSONHelper.createLineArray(step.getLines()));
-         requestBody.put("media", JSONHelper.createStepMediaJsonObject(step));
-      } catch (JSONException e) {
+      if (requestBody == null) {
          return null;
       }
 
@@ -248,6 +297,24 @@ public class ApiCall {
        + step.getRevisionid(), requestBody.toString());
    }
 
+   /**
+    * Returns every field of the step that editStep sends or null if they
+    * can't be serialized. The endpoint accepts any subset of them.
+    */
+   public static JSONObject getStepFields(GuideStep step) {
+      JSONObject fields = new JSONObject();
+
+      try {
+         fields.put("title", step.getTitle());
+         fields.put("lines", JSONHelper.createLineArray(step.getLines()));
+         fields.put("media", JSONHelper.createStepMediaJsonObject(step));
+      } catch (JSONException e) {
+         return null;
+      }
+
+      return fields;
+   }
+
    public static ApiCall createStep(GuideStep step, int guideid, int stepPosition, int revisionid) {
       JSONObject requestBody = new JSONObject();
 
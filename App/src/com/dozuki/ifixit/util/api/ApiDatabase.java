@@ -4,47 +4,277 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
 
-import java.lang.UnsupportedOperationException;
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.util.FileCache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * WARNING: Not currently used. There are plans of using it for storing offline
- * guides.
+ * Offline store for API responses to GET requests.
+ *
+ * Writes are queued and performed on a background thread, batching everything
+ * that was queued since the last write into a single transaction. Reads check
+ * the queue first so a response is available as soon as it is inserted.
  */
 public class ApiDatabase extends SQLiteOpenHelper {
-   private static final int DATABASE_VERSION = 1;
+   private static final String TAG = "ApiDatabase";
+   private static final int DATABASE_VERSION = 4;
    private static final String DATABASE_NAME = "api";
 
+   /**
+    * Responses longer than this are kept in the FileCache rather than in the
+    * database because rows larger than a CursorWindow (2MB) can't be read back.
+    */
+   private static final int MAX_INLINE_RESPONSE_LENGTH = 256 * 1024;
+
+   /**
+    * Total length of the stored responses, including the ones in the
+    * FileCache. The least recently used responses are deleted when the
+    * database is opened until the rest fit. Age alone can't be used because
+    * old responses are still served offline.
+    */
+   private static final long MAX_STORED_LENGTH = 30L * 1024 * 1024;
+
+   /**
+    * Userid stored for responses to unauthenticated requests. SQLite considers
+    * NULLs distinct in unique indexes so a real value is needed.
+    */
+   private static final int NO_USERID = 0;
+
    private static ApiDatabase sDatabase;
 
-   public static ApiDatabase get(Context context) {
-      throw new UnsupportedOperationException("ApiDatabase is not ready!");
-      /*
+   public static synchronized ApiDatabase get(Context context) {
       if (sDatabase == null) {
          sDatabase = new ApiDatabase(context.getApplicationContext());
       }
 
       return sDatabase;
-      */
    }
 
+   /**
+    * A stored response along with the validators needed to revalidate it.
+    */
+   public static class StoredResponse {
+      public final String mResponse;
+      public final long mDate;
+      public final String mEtag;
+      public final long mLastModified;
+
+      public StoredResponse(String response, long date, String etag, long lastModified) {
+         mResponse = response;
+         mDate = date;
+         mEtag = etag;
+         mLastModified = lastModified;
+      }
+
+      public boolean canRevalidate() {
+         return mEtag != null || mLastModified > 0;
+      }
+   }
+
+   private static class PendingUse {
+      public final String mUrl;
+      public final int mUserid;
+      public final long mTime;
+
+      public PendingUse(String url, int userid, long time) {
+         mUrl = url;
+         mUserid = userid;
+         mTime = time;
+      }
+   }
+
+   private static class PendingResponse {
+      public final String mUrl;
+      public final int mUserid;
+      public final StoredResponse mResponse;
+
+      public PendingResponse(String url, int userid, StoredResponse response) {
+         mUrl = url;
+         mUserid = userid;
+         mResponse = response;
+      }
+   }
+
+   /**
+    * Responses waiting to be written, keyed by getCacheKey.
+    */
+   private final LinkedHashMap<String, PendingResponse> mPendingResponses =
+    new LinkedHashMap<String, PendingResponse>();
+
+   /**
+    * Stored responses read since the last write, keyed by getCacheKey. Their
+    * last used time is updated by the next write.
+    */
+   private final LinkedHashMap<String, PendingUse> mPendingUses =
+    new LinkedHashMap<String, PendingUse>();
+   private boolean mWriteScheduled = false;
+   private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
    private ApiDatabase(Context context) {
       super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+         setWriteAheadLoggingEnabled(true);
+      }
    }
 
    @Override
    public void onCreate(SQLiteDatabase db) {
       db.execSQL(CREATE_API_RESULTS_TABLE);
+      db.execSQL(CREATE_API_RESULTS_INDEX);
+   }
+
+   @Override
+   public void onOpen(SQLiteDatabase db) {
+      super.onOpen(db);
+
+      if (!db.isReadOnly()) {
+         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB &&
+          Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+         }
+
+         trimToSize(db);
+      }
+   }
+
+   /**
+    * Deletes the least recently used responses, along with their FileCache
+    * entries, until the rest fit in MAX_STORED_LENGTH.
+    */
+   private void trimToSize(SQLiteDatabase db) {
+      ArrayList<Long> deletedIds = new ArrayList<Long>();
+      ArrayList<String> deletedFiles = new ArrayList<String>();
+      Cursor cursor = null;
+
+      try {
+         cursor = db.query(
+          TABLE_API_RESULTS,
+          new String[] {KEY_ID, KEY_URL, KEY_USERID, KEY_LENGTH, KEY_RESPONSE + " IS NULL"},
+          null,
+          null,
+          null,
+          null,
+          KEY_LAST_USED + " DESC");
+
+         long length = 0;
+         while (cursor.moveToNext()) {
+            length += cursor.getLong(3);
+
+            if (length <= MAX_STORED_LENGTH) {
+               continue;
+            }
+
+            deletedIds.add(cursor.getLong(0));
+
+            if (cursor.getInt(4) != 0) {
+               deletedFiles.add(getCacheKey(cursor.getString(1), cursor.getInt(2)));
+            }
+         }
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to read response lengths", e);
+         return;
+      } finally {
+         if (cursor != null) {
+            cursor.close();
+         }
+      }
+
+      if (deletedIds.isEmpty()) {
+         return;
+      }
+
+      db.beginTransaction();
+      try {
+         for (Long id : deletedIds) {
+            db.delete(TABLE_API_RESULTS, KEY_ID + " = ?", new String[] {String.valueOf(id)});
+         }
+
+         db.setTransactionSuccessful();
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to delete responses", e);
+         return;
+      } finally {
+         db.endTransaction();
+      }
+
+      // Only deleted once the rows are gone so a row never points at a missing
+      // file. A file left behind is evicted by the FileCache eventually.
+      for (String key : deletedFiles) {
+         FileCache.remove(key);
+      }
+
+      if (App.inDebug()) {
+         Log.d(TAG, "Deleted " + deletedIds.size() + " least recently used responses");
+      }
    }
 
    @Override
    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-      db.execSQL("DROP TABLE IF EXISTS " + TABLE_API_RESULTS);
+      // Apply every migration in order so any old version can be brought up to date.
+      for (int version = oldVersion + 1; version <= newVersion; version++) {
+         migrate(db, version);
+      }
+   }
 
-      // Create tables again.
-      // TODO: This isn't a viable solution when the DB is upgraded.
-      onCreate(db);
+   /**
+    * Upgrades the schema from version - 1 to the given version.
+    */
+   private void migrate(SQLiteDatabase db, int version) {
+      switch (version) {
+         case 2:
+            // Version 1 allowed duplicate rows, NULL userids and stored the date in
+            // seconds. Keep the most recent response for each (url, userid).
+            db.execSQL("ALTER TABLE " + TABLE_API_RESULTS + " RENAME TO " +
+             TABLE_API_RESULTS + "_v1");
+            // Migrations must create the schema as it was at their version, not
+            // the current CREATE_API_RESULTS_TABLE.
+            db.execSQL("CREATE TABLE " + TABLE_API_RESULTS + "(" +
+             KEY_ID + " INTEGER PRIMARY KEY, " +
+             KEY_USERID + " INTEGER NOT NULL DEFAULT " + NO_USERID + ", " +
+             KEY_URL + " TEXT NOT NULL, " +
+             KEY_RESPONSE + " TEXT, " +
+             KEY_DATE + " INTEGER NOT NULL" +
+             ")");
+            db.execSQL(CREATE_API_RESULTS_INDEX);
+            db.execSQL("INSERT OR REPLACE INTO " + TABLE_API_RESULTS + " (" +
+             KEY_USERID + ", " + KEY_URL + ", " + KEY_RESPONSE + ", " + KEY_DATE + ") " +
+             "SELECT IFNULL(" + KEY_USERID + ", " + NO_USERID + "), " + KEY_URL + ", " +
+             KEY_RESPONSE + ", " + KEY_DATE + " * 1000 FROM " + TABLE_API_RESULTS + "_v1 " +
+             "ORDER BY " + KEY_DATE + " ASC");
+            db.execSQL("DROP TABLE " + TABLE_API_RESULTS + "_v1");
+            break;
+         case 3:
+            db.execSQL("ALTER TABLE " + TABLE_API_RESULTS + " ADD COLUMN " + KEY_ETAG +
+             " TEXT");
+            db.execSQL("ALTER TABLE " + TABLE_API_RESULTS + " ADD COLUMN " +
+             KEY_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0");
+            break;
+         case 4:
+            db.execSQL("ALTER TABLE " + TABLE_API_RESULTS + " ADD COLUMN " + KEY_LAST_USED +
+             " INTEGER NOT NULL DEFAULT 0");
+            db.execSQL("ALTER TABLE " + TABLE_API_RESULTS + " ADD COLUMN " + KEY_LENGTH +
+             " INTEGER NOT NULL DEFAULT 0");
+            // The length of responses in the FileCache isn't known without
+            // reading them; they are all at least MAX_INLINE_RESPONSE_LENGTH.
+            db.execSQL("UPDATE " + TABLE_API_RESULTS + " SET " +
+             KEY_LAST_USED + " = " + KEY_DATE + ", " +
+             KEY_LENGTH + " = IFNULL(LENGTH(" + KEY_RESPONSE + "), " +
+             MAX_INLINE_RESPONSE_LENGTH + ")");
+            break;
+         default:
+            throw new IllegalStateException("No migration to version " + version);
+      }
    }
 
    /**
@@ -58,60 +288,255 @@ public class ApiDatabase extends SQLiteOpenHelper {
    private static final String KEY_URL = "url";
    private static final String KEY_RESPONSE = "response";
    private static final String KEY_DATE = "date";
+   private static final String KEY_ETAG = "etag";
+   private static final String KEY_LAST_MODIFIED = "last_modified";
+   private static final String KEY_LAST_USED = "last_used";
+   private static final String KEY_LENGTH = "length";
 
+   /**
+    * The response is NULL if it is stored in the FileCache. The length is the
+    * response's either way.
+    */
    private static final String CREATE_API_RESULTS_TABLE =
     "CREATE TABLE " + TABLE_API_RESULTS + "(" +
       KEY_ID + " INTEGER PRIMARY KEY, " +
-      KEY_USERID + " INTEGER, " +
-      KEY_URL + " TEXT, " +
+      KEY_USERID + " INTEGER NOT NULL DEFAULT " + NO_USERID + ", " +
+      KEY_URL + " TEXT NOT NULL, " +
       KEY_RESPONSE + " TEXT, " +
-      KEY_DATE + " INTEGER" +
+      KEY_DATE + " INTEGER NOT NULL, " +
+      KEY_ETAG + " TEXT, " +
+      KEY_LAST_MODIFIED + " INTEGER NOT NULL DEFAULT 0, " +
+      KEY_LAST_USED + " INTEGER NOT NULL DEFAULT 0, " +
+      KEY_LENGTH + " INTEGER NOT NULL DEFAULT 0" +
     ")";
 
-   public String getResponse(String url, Integer userid) {
-      SQLiteDatabase db = getReadableDatabase();
-
-      String useridQuery;
-      String[] selectionArgs;
-      if (userid == null) {
-         useridQuery = KEY_USERID + " IS NULL";
-         selectionArgs = new String[] {url};
-      } else {
-         useridQuery = KEY_USERID + " = ?";
-         selectionArgs = new String[] {url, userid.toString()};
-      }
-
-      Cursor cursor = db.query(
-       TABLE_API_RESULTS,
-       new String[] {KEY_RESPONSE},
-       KEY_URL + " = ? AND " +
-       useridQuery,
-       selectionArgs,
-       null,
-       null,
-       /* ORDER BY = */ "date DESC",
-       /* LIMIT = */ "1");
-
-      if (cursor == null || !cursor.moveToFirst()) {
+   private static final String CREATE_API_RESULTS_INDEX =
+    "CREATE UNIQUE INDEX " + TABLE_API_RESULTS + "_url_userid ON " +
+    TABLE_API_RESULTS + "(" + KEY_URL + ", " + KEY_USERID + ")";
+
+   /**
+    * Returns the stored response for the given request or null if there isn't
+    * one or it is more than maxAge milliseconds old. Pass
+    * FileCache.NO_EXPIRATION to get the response regardless of its age.
+    */
+   public StoredResponse getResponse(String url, Integer userid, long maxAge) {
+      int storedUserid = userid == null ? NO_USERID : userid;
+      long minDate = maxAge == FileCache.NO_EXPIRATION ? 0 :
+       System.currentTimeMillis() - maxAge;
+
+      synchronized (this) {
+         PendingResponse pending = mPendingResponses.get(getCacheKey(url, storedUserid));
+
+         if (pending != null) {
+            return pending.mResponse.mDate >= minDate ? pending.mResponse : null;
+         }
+      }
+
+      Cursor cursor = null;
+      try {
+         cursor = getReadableDatabase().query(
+          TABLE_API_RESULTS,
+          new String[] {KEY_RESPONSE, KEY_DATE, KEY_ETAG, KEY_LAST_MODIFIED},
+          KEY_URL + " = ? AND " + KEY_USERID + " = ? AND " + KEY_DATE + " >= ?",
+          new String[] {url, String.valueOf(storedUserid), String.valueOf(minDate)},
+          null,
+          null,
+          null,
+          /* LIMIT = */ "1");
+
+         if (!cursor.moveToFirst()) {
+            return null;
+         }
+
+         String response;
+         if (cursor.isNull(0)) {
+            // The row's date has already been checked and is refreshed on
+            // revalidation without rewriting the file, so ignore the file's age.
+            response = FileCache.get(getCacheKey(url, storedUserid));
+
+            if (response == null) {
+               return null;
+            }
+         } else {
+            response = cursor.getString(0);
+         }
+
+         markUsed(url, storedUserid);
+
+         return new StoredResponse(response, cursor.getLong(1), cursor.getString(2),
+          cursor.getLong(3));
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to read response", e);
          return null;
+      } finally {
+         if (cursor != null) {
+            cursor.close();
+         }
       }
+   }
 
-      String result = cursor.getString(0);
+   /**
+    * Queues the response to be stored, replacing any existing response for the
+    * same request. etag may be null and lastModified 0 if the server didn't
+    * provide them.
+    */
+   public void insertResponse(Integer userid, String url, String response, String etag,
+    long lastModified) {
+      int storedUserid = userid == null ? NO_USERID : userid;
 
-      cursor.close();
+      synchronized (this) {
+         mPendingResponses.put(getCacheKey(url, storedUserid), new PendingResponse(url,
+          storedUserid, new StoredResponse(response, System.currentTimeMillis(), etag,
+          lastModified)));
+      }
 
-      return result;
+      scheduleWrite();
    }
 
-   public void insertResponse(Integer userid, String url, String response) {
-      SQLiteDatabase db = getWritableDatabase();
+   /**
+    * Queues an update of the response's last used time so the least recently
+    * used responses are the first to go when the database is trimmed.
+    */
+   private void markUsed(String url, int userid) {
+      synchronized (this) {
+         mPendingUses.put(getCacheKey(url, userid), new PendingUse(url, userid,
+          System.currentTimeMillis()));
+      }
+
+      scheduleWrite();
+   }
+
+   private void scheduleWrite() {
+      synchronized (this) {
+         if (mWriteScheduled) {
+            return;
+         }
+
+         mWriteScheduled = true;
+      }
+
+      mWriter.execute(new Runnable() {
+         public void run() {
+            writePendingResponses();
+         }
+      });
+   }
+
+   /**
+    * Marks the stored response as fresh. Used when the server confirms that the
+    * stored response is still valid.
+    */
+   public void touchResponse(Integer userid, final String url) {
+      final int storedUserid = userid == null ? NO_USERID : userid;
+      final long date = System.currentTimeMillis();
+
+      // Queued on the writer so it is ordered after any pending insert.
+      mWriter.execute(new Runnable() {
+         public void run() {
+            ContentValues values = new ContentValues();
+            values.put(KEY_DATE, date);
+
+            try {
+               getWritableDatabase().update(TABLE_API_RESULTS, values,
+                KEY_URL + " = ? AND " + KEY_USERID + " = ?",
+                new String[] {url, String.valueOf(storedUserid)});
+            } catch (SQLiteException e) {
+               Log.e(TAG, "Failed to touch response", e);
+            }
+         }
+      });
+   }
+
+   private void writePendingResponses() {
+      Map<String, PendingResponse> pendingResponses;
+      Map<String, PendingUse> pendingUses;
+
+      // Copied rather than swapped out: the responses must stay readable from
+      // mPendingResponses until they are committed. Uses are only a hint for
+      // trimming so they are simply dropped if the write fails.
+      synchronized (this) {
+         pendingResponses = new LinkedHashMap<String, PendingResponse>(mPendingResponses);
+         pendingUses = new LinkedHashMap<String, PendingUse>(mPendingUses);
+         mPendingUses.clear();
+         mWriteScheduled = false;
+      }
+
+      long startTime = System.currentTimeMillis();
+      SQLiteDatabase db;
+
+      try {
+         db = getWritableDatabase();
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to open database", e);
+         return;
+      }
+
       ContentValues values = new ContentValues();
+      boolean written = false;
+      db.beginTransaction();
+      try {
+         for (Map.Entry<String, PendingResponse> entry : pendingResponses.entrySet()) {
+            PendingResponse pending = entry.getValue();
+            StoredResponse response = pending.mResponse;
+
+            if (response.mResponse.length() <= MAX_INLINE_RESPONSE_LENGTH) {
+               values.put(KEY_RESPONSE, response.mResponse);
+               // The row may have pointed at a larger response in the FileCache.
+               FileCache.remove(entry.getKey());
+            } else {
+               FileCache.set(entry.getKey(), response.mResponse);
+               values.putNull(KEY_RESPONSE);
+            }
+
+            values.put(KEY_USERID, pending.mUserid);
+            values.put(KEY_URL, pending.mUrl);
+            values.put(KEY_DATE, response.mDate);
+            values.put(KEY_ETAG, response.mEtag);
+            values.put(KEY_LAST_MODIFIED, response.mLastModified);
+            values.put(KEY_LAST_USED, response.mDate);
+            values.put(KEY_LENGTH, response.mResponse.length());
+
+            db.insertWithOnConflict(TABLE_API_RESULTS, null, values,
+             SQLiteDatabase.CONFLICT_REPLACE);
+         }
+
+         ContentValues useValues = new ContentValues();
+         for (PendingUse use : pendingUses.values()) {
+            useValues.put(KEY_LAST_USED, use.mTime);
+
+            db.update(TABLE_API_RESULTS, useValues, KEY_URL + " = ? AND " + KEY_USERID + " = ?",
+             new String[] {use.mUrl, String.valueOf(use.mUserid)});
+         }
+
+         db.setTransactionSuccessful();
+         written = true;
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to write responses", e);
+      } finally {
+         db.endTransaction();
+      }
+
+      if (!written) {
+         // Left pending so they are still served and retried by the next write.
+         return;
+      }
 
-      values.put(KEY_USERID, userid);
-      values.put(KEY_URL, url);
-      values.put(KEY_RESPONSE, response);
-      values.put(KEY_DATE, (int)(System.currentTimeMillis() / 1000));
+      synchronized (this) {
+         for (Map.Entry<String, PendingResponse> entry : pendingResponses.entrySet()) {
+            // Responses replaced since the copy still need to be written.
+            if (mPendingResponses.get(entry.getKey()) == entry.getValue()) {
+               mPendingResponses.remove(entry.getKey());
+            }
+         }
+      }
+
+      if (App.inDebug()) {
+         Log.d(TAG, "Wrote " + pendingResponses.size() + " responses in " +
+          (System.currentTimeMillis() - startTime) + "ms");
+      }
+   }
 
-      db.insert(TABLE_API_RESULTS, null, values);
+   private static String getCacheKey(String url, int userid) {
+      return "api_responses_" + url + "_" + userid;
    }
 }
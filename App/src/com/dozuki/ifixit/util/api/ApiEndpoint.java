@@ -1,7 +1,9 @@
 package com.dozuki.ifixit.util.api;
 
 import android.util.Log;
+import com.dozuki.ifixit.App;
 import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.model.topic.TopicIndex;
 import com.dozuki.ifixit.util.JSONHelper;
 
 import org.json.JSONException;
@@ -29,17 +31,28 @@ public enum ApiEndpoint {
        }
     },
     false,
-    "GET"
+    "GET",
+    CacheTtl.DAY
    ),
 
    CATEGORIES(
-      new Endpoint() {
+      new SiteEndpoint() {
          public String createUrl(String query) {
             return "categories?withDisplayTitles";
          }
 
-         public ApiEvent<?> parse(String json) throws JSONException {
-            return new ApiEvent.Categories().setResult(JSONHelper.parseTopics(json));
+         public ApiEvent<?> parse(String json, Site site) throws JSONException {
+            // An unchanged hierarchy is read back from disk rather than parsed.
+            String digest = TopicIndex.digest(json);
+            TopicIndex index = TopicIndex.readStored(site.mName, digest);
+
+            if (index == null) {
+               index = JSONHelper.parseTopics(json, site.mName, digest);
+            }
+
+            TopicIndex.setCurrent(index);
+
+            return new ApiEvent.Categories().setResult(index.getRoot());
          }
 
          public ApiEvent<?> getEvent() {
@@ -47,7 +60,9 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.WEEK,
+      CachePolicy.STALE_WHILE_REVALIDATE
    ),
 
    GUIDE(
@@ -65,7 +80,9 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.MONTH,
+      CachePolicy.STALE_WHILE_REVALIDATE
    ),
 
    GUIDES(
@@ -106,7 +123,9 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.MONTH,
+      CachePolicy.STALE_WHILE_REVALIDATE
    ),
 
    ALL_TOPICS(
@@ -124,7 +143,9 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.WEEK,
+      CachePolicy.CACHE_FIRST
    ),
 
    LOGIN(
@@ -200,7 +221,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    USER_VIDEOS(
@@ -218,7 +240,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    USER_FAVORITES(
@@ -236,7 +259,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    USER_EMBEDS(
@@ -254,7 +278,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    UPLOAD_IMAGE(
@@ -391,7 +416,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    GUIDE_FOR_EDIT(
@@ -409,7 +435,8 @@ public enum ApiEndpoint {
          }
       },
       true,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    ),
 
    FAVORITE_GUIDE(
@@ -625,7 +652,9 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.WEEK,
+      CachePolicy.CACHE_FIRST
    ),
 
    SITE_INFO(
@@ -643,7 +672,8 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.WEEK
    ),
 
    USER_INFO(
@@ -661,7 +691,8 @@ public enum ApiEndpoint {
          }
       },
       false,
-      "GET"
+      "GET",
+      CacheTtl.DAY
    );
 
    /**
@@ -669,6 +700,54 @@ public enum ApiEndpoint {
     */
    private static final String API_VERSION = "2.0";
 
+   /**
+    * Determines when stored responses are used for GET requests.
+    */
+   public static enum CachePolicy {
+      /**
+       * Stored responses are only used if there is no network connection.
+       */
+      NETWORK_ONLY,
+
+      /**
+       * A stored response is used if there is one, otherwise the request is made.
+       */
+      CACHE_FIRST,
+
+      /**
+       * A stored response is posted immediately if there is one and the request is
+       * made anyway. The response is posted again if it changed.
+       */
+      STALE_WHILE_REVALIDATE
+   }
+
+   /**
+    * Order in which queued requests are performed. Declared from highest to lowest.
+    */
+   public static enum Priority {
+      /**
+       * Requests that the user is actively waiting on.
+       */
+      HIGH,
+
+      NORMAL,
+
+      /**
+       * Requests made in the background, such as paging and prefetching.
+       */
+      LOW
+   }
+
+   /**
+    * Maximum ages, in milliseconds, of stored responses. These live in their own
+    * class because enum constants can't reference the enum's static fields.
+    */
+   private static class CacheTtl {
+      public static final long DAY = 24L * 60 * 60 * 1000;
+      public static final long WEEK = 7 * DAY;
+      public static final long MONTH = 30 * DAY;
+   }
+
    /**
     * Defines various methods that each endpoint must provide.
     */
@@ -693,6 +772,18 @@ public enum ApiEndpoint {
       public ApiEvent<?> getEvent();
    }
 
+   /**
+    * Endpoint whose result depends on the site it was requested from rather
+    * than the one that is current when the response arrives.
+    */
+   private static abstract class SiteEndpoint implements Endpoint {
+      public abstract ApiEvent<?> parse(String json, Site site) throws JSONException;
+
+      public ApiEvent<?> parse(String json) throws JSONException {
+         return parse(json, App.get().getSite());
+      }
+   }
+
    /**
     * Endpoint's functionality.
     */
@@ -720,21 +811,101 @@ public enum ApiEndpoint {
     */
    public final boolean mPostResults;
 
+   /**
+    * Maximum age in milliseconds of a stored response that can be used in place
+    * of performing the request. Only applies to GET requests.
+    */
+   public final long mCacheTtl;
+
+   /**
+    * When to use stored responses. Only applies to GET requests.
+    */
+   public final CachePolicy mCachePolicy;
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method) {
       this(endpoint, authenticated, method, false);
    }
 
+   private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method,
+                       long cacheTtl) {
+      this(endpoint, authenticated, method, cacheTtl, CachePolicy.NETWORK_ONLY);
+   }
+
+   private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method,
+                       long cacheTtl, CachePolicy cachePolicy) {
+      this(endpoint, authenticated, method, false, true, cacheTtl, cachePolicy);
+   }
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated,
                        String method, boolean forcePublic) {
       this(endpoint, authenticated, method, forcePublic, true);
    }
+
    private ApiEndpoint(Endpoint endpoint, boolean authenticated,
                        String method, boolean forcePublic, boolean postResults) {
+      this(endpoint, authenticated, method, forcePublic, postResults, CacheTtl.MONTH,
+       CachePolicy.NETWORK_ONLY);
+   }
+
+   private ApiEndpoint(Endpoint endpoint, boolean authenticated, String method,
+                       boolean forcePublic, boolean postResults, long cacheTtl,
+                       CachePolicy cachePolicy) {
       mEndpoint = endpoint;
       mAuthenticated = authenticated;
       mMethod = method;
       mForcePublic = forcePublic;
       mPostResults = postResults;
+      mCacheTtl = cacheTtl;
+      mCachePolicy = cachePolicy;
+   }
+
+   /**
+    * Returns true if large request bodies for this endpoint may be sent
+    * gzipped. Only the guide and step edits carry bodies large enough to be
+    * worth it. Whether the server decodes them isn't known up front: Api falls
+    * back to uncompressed bodies for an endpoint once the server rejects one.
+    */
+   public boolean canGzipRequest() {
+      switch (this) {
+         case EDIT_GUIDE:
+         case ADD_GUIDE_STEP:
+         case UPDATE_GUIDE_STEP:
+            return true;
+         default:
+            return false;
+      }
+   }
+
+   public Priority getPriority() {
+      switch (this) {
+         case SEARCH:
+         case GUIDE:
+         case TOPIC:
+         case CATEGORIES:
+         case LOGIN:
+         case LOGOUT:
+         case REGISTER:
+         case GUIDE_FOR_EDIT:
+            return Priority.HIGH;
+         case ALL_TOPICS:
+         case USER_IMAGES:
+         case USER_VIDEOS:
+         case USER_EMBEDS:
+         case SITES:
+         case SITE_INFO:
+            return Priority.LOW;
+         default:
+            return Priority.NORMAL;
+      }
+   }
+
+   /**
+    * Returns true if a new call to this endpoint makes any of the same Activity's
+    * outstanding calls to it obsolete e.g. a search for a query that has since
+    * been changed.
+    */
+   public boolean isSuperseding() {
+      return this == SEARCH;
    }
 
    /**
@@ -771,8 +942,14 @@ public enum ApiEndpoint {
       return url;
    }
 
-   public ApiEvent<?> parseResult(String json) throws JSONException {
-      return mEndpoint.parse(json).setResponse(json);
+   /**
+    * Parses the response to a call made for the given site.
+    */
+   public ApiEvent<?> parseResult(String json, Site site) throws JSONException {
+      ApiEvent<?> event = mEndpoint instanceof SiteEndpoint && site != null ?
+       ((SiteEndpoint)mEndpoint).parse(json, site) : mEndpoint.parse(json);
+
+      return event.setResponse(json);
    }
 
    /**
@@ -91,6 +91,13 @@ public abstract class ApiEvent<T> {
     */
    public boolean mStoredResponse;
 
+   /**
+    * Validators sent along with the response. Stored with the response so it
+    * can be revalidated with a conditional request.
+    */
+   public String mEtag;
+   public long mLastModified;
+
    public ApiEvent<T> setResult(T result) {
       mResult = result;
       return this;
@@ -140,4 +147,30 @@ public abstract class ApiEvent<T> {
       mStoredResponse = stored;
       return this;
    }
+
+   public ApiEvent<T> setValidators(String etag, long lastModified) {
+      mEtag = etag;
+      mLastModified = lastModified;
+      return this;
+   }
+
+   /**
+    * Returns a copy of this event for another ApiCall to the same endpoint.
+    * The parsed result is shared rather than copied.
+    */
+   @SuppressWarnings("unchecked")
+   public ApiEvent<T> copyFor(ApiCall apiCall) {
+      ApiEvent<T> copy = (ApiEvent<T>)apiCall.mEndpoint.getEvent();
+
+      copy.mResponse = mResponse;
+      copy.mResult = mResult;
+      copy.mApiCall = apiCall;
+      copy.mError = mError;
+      copy.mCode = mCode;
+      copy.mStoredResponse = mStoredResponse;
+      copy.mEtag = mEtag;
+      copy.mLastModified = mLastModified;
+
+      return copy;
+   }
 }
@@ -0,0 +1,137 @@
+package com.dozuki.ifixit.util.api;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor dedicated to API calls so they don't compete with image loading in
+ * AsyncTask's shared pool. Queued calls are run in order of their endpoint's
+ * priority and then in the order they were submitted.
+ */
+public class ApiExecutor {
+   private static final int POOL_SIZE = 3;
+
+   private final ThreadPoolExecutor mExecutor;
+   private final AtomicLong mSequence = new AtomicLong();
+
+   /**
+    * Metrics. Wait times are measured from submission until a thread picks
+    * the call up.
+    */
+   private final AtomicInteger mExecutedCount = new AtomicInteger();
+   private final AtomicInteger mCanceledCount = new AtomicInteger();
+   private final AtomicLong mTotalWaitMillis = new AtomicLong();
+   private final AtomicLong mMaxWaitMillis = new AtomicLong();
+
+   public ApiExecutor() {
+      mExecutor = new ThreadPoolExecutor(POOL_SIZE, POOL_SIZE, 0, TimeUnit.MILLISECONDS,
+       new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+         private final AtomicInteger mCount = new AtomicInteger(1);
+
+         public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+               public void run() {
+                  Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                  runnable.run();
+               }
+            }, "Api #" + mCount.getAndIncrement());
+         }
+      });
+   }
+
+   /**
+    * Queues the runnable for the ApiCall. It is dropped without running if the
+    * ApiCall is canceled before a thread picks it up.
+    */
+   public void execute(ApiCall apiCall, Runnable runnable) {
+      mExecutor.execute(new ApiTask(apiCall, runnable, mSequence.getAndIncrement()));
+   }
+
+   public int getQueueDepth() {
+      return mExecutor.getQueue().size();
+   }
+
+   public int getActiveCount() {
+      return mExecutor.getActiveCount();
+   }
+
+   public int getExecutedCount() {
+      return mExecutedCount.get();
+   }
+
+   public int getCanceledCount() {
+      return mCanceledCount.get();
+   }
+
+   public long getAverageWaitMillis() {
+      int executed = mExecutedCount.get();
+
+      return executed == 0 ? 0 : mTotalWaitMillis.get() / executed;
+   }
+
+   public long getMaxWaitMillis() {
+      return mMaxWaitMillis.get();
+   }
+
+   private void recordWait(ApiCall apiCall, long waitMillis) {
+      mExecutedCount.incrementAndGet();
+      mTotalWaitMillis.addAndGet(waitMillis);
+
+      long max;
+      do {
+         max = mMaxWaitMillis.get();
+      } while (waitMillis > max && !mMaxWaitMillis.compareAndSet(max, waitMillis));
+
+      if (App.inDebug()) {
+         Log.i("ApiExecutor", apiCall.mEndpoint + " waited " + waitMillis + "ms, " +
+          getQueueDepth() + " queued");
+      }
+   }
+
+   private class ApiTask implements Runnable, Comparable<ApiTask> {
+      private final ApiCall mApiCall;
+      private final Runnable mRunnable;
+      private final int mPriority;
+      private final long mSequenceNumber;
+      private final long mQueuedTime;
+
+      public ApiTask(ApiCall apiCall, Runnable runnable, long sequenceNumber) {
+         mApiCall = apiCall;
+         mRunnable = runnable;
+         mPriority = apiCall.mEndpoint.getPriority().ordinal();
+         mSequenceNumber = sequenceNumber;
+         mQueuedTime = System.currentTimeMillis();
+      }
+
+      public void run() {
+         if (mApiCall.isCanceled()) {
+            mCanceledCount.incrementAndGet();
+            return;
+         }
+
+         recordWait(mApiCall, System.currentTimeMillis() - mQueuedTime);
+         mRunnable.run();
+      }
+
+      public int compareTo(ApiTask other) {
+         if (mPriority != other.mPriority) {
+            return mPriority < other.mPriority ? -1 : 1;
+         }
+
+         if (mSequenceNumber == other.mSequenceNumber) {
+            return 0;
+         }
+
+         return mSequenceNumber < other.mSequenceNumber ? -1 : 1;
+      }
+   }
+}
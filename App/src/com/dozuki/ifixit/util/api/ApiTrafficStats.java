@@ -0,0 +1,57 @@
+package com.dozuki.ifixit.util.api;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per endpoint byte counters for API traffic. "Wire" bytes are what actually
+ * went over the network and "raw" bytes are the uncompressed sizes, so the
+ * difference is what compression saved.
+ */
+public class ApiTrafficStats {
+   private static final int ENDPOINT_COUNT = ApiEndpoint.values().length;
+
+   private static final AtomicLongArray sRequestCount = new AtomicLongArray(ENDPOINT_COUNT);
+   private static final AtomicLongArray sRawSent = new AtomicLongArray(ENDPOINT_COUNT);
+   private static final AtomicLongArray sWireSent = new AtomicLongArray(ENDPOINT_COUNT);
+   private static final AtomicLongArray sRawReceived = new AtomicLongArray(ENDPOINT_COUNT);
+   private static final AtomicLongArray sWireReceived = new AtomicLongArray(ENDPOINT_COUNT);
+
+   public static void recordSent(ApiEndpoint endpoint, long rawBytes, long wireBytes) {
+      int index = endpoint.ordinal();
+
+      sRawSent.addAndGet(index, rawBytes);
+      sWireSent.addAndGet(index, wireBytes);
+   }
+
+   public static void recordReceived(ApiEndpoint endpoint, long rawBytes, long wireBytes) {
+      int index = endpoint.ordinal();
+
+      sRequestCount.incrementAndGet(index);
+      sRawReceived.addAndGet(index, rawBytes);
+      sWireReceived.addAndGet(index, wireBytes);
+   }
+
+   public static long getRawSent(ApiEndpoint endpoint) {
+      return sRawSent.get(endpoint.ordinal());
+   }
+
+   public static long getWireSent(ApiEndpoint endpoint) {
+      return sWireSent.get(endpoint.ordinal());
+   }
+
+   public static long getRawReceived(ApiEndpoint endpoint) {
+      return sRawReceived.get(endpoint.ordinal());
+   }
+
+   public static long getWireReceived(ApiEndpoint endpoint) {
+      return sWireReceived.get(endpoint.ordinal());
+   }
+
+   public static String getSummary(ApiEndpoint endpoint) {
+      int index = endpoint.ordinal();
+
+      return endpoint + ": " + sRequestCount.get(index) + " requests" +
+       ", sent " + sWireSent.get(index) + "/" + sRawSent.get(index) + " bytes" +
+       ", received " + sWireReceived.get(index) + "/" + sRawReceived.get(index) + " bytes";
+   }
+}
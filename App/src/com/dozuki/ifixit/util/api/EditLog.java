@@ -0,0 +1,807 @@
+package com.dozuki.ifixit.util.api;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.model.user.User;
+import com.dozuki.ifixit.ui.BaseActivity;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent log of guide edits that haven't reached the server yet.
+ *
+ * Edits are written to the log and return immediately; a background thread
+ * replays them in order whenever there is a connection. Each edit is sent with
+ * the revisionid it was made against so the server still detects conflicts.
+ * An edit made while an earlier edit to the same step is waiting is merged
+ * into it, and one made while the earlier edit is being sent is rebased onto
+ * the revision that edit produces. The revisions synced edits produced are
+ * remembered too, so an edit made on a copy of the guide that never saw a
+ * sync result is rebased rather than conflicting with the user's own change.
+ *
+ * Results are posted like any other ApiCall's once an edit is saved or
+ * rejected. The activity that made an edit is often gone by the time it is
+ * synced so rejected edits, e.g. conflicts, stay in the log until the user
+ * decides to send them again or discard them.
+ *
+ * Edits belong to the site and user they were made under and are only sent
+ * while those are current. The rest stay in the log until they are.
+ */
+public class EditLog {
+   private static final String TAG = "EditLog";
+   private static final String LOG_FILE = "edit_log.json";
+
+   private static final int MAX_ATTEMPTS = 8;
+   private static final long INITIAL_BACKOFF_MS = 2000;
+   private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+   /**
+    * Activityid for edits restored from disk. Activityids aren't unique across
+    * processes so results of those edits aren't posted to any activity.
+    */
+   private static final int NO_ACTIVITY = -1;
+
+   /**
+    * Stepid of edits to the guide as a whole.
+    */
+   private static final int NO_STEP = 0;
+
+   private static final int NO_USERID = 0;
+
+   /**
+    * Synced revisions remembered. Copies of a guide only fall behind by the
+    * few edits made while they were open.
+    */
+   private static final int MAX_SYNCED_REVISIONS = 256;
+
+   private static class Edit {
+      public ApiEndpoint mEndpoint;
+      public String mSiteName;
+      public int mUserid = NO_USERID;
+      public int mGuideid;
+      public int mStepid = NO_STEP;
+      public int mRevisionid;
+      public String mRequestBody;
+      public int mAttempts;
+      public int mActivityid = NO_ACTIVITY;
+      /**
+       * True while the edit is being sent; it can't be merged into then.
+       */
+      public boolean mSending;
+      /**
+       * True if the server refused the edit. It isn't sent again until the
+       * user retries it.
+       */
+      public boolean mRejected;
+
+      public boolean hasSameTarget(Edit other) {
+         return mEndpoint == other.mEndpoint && mGuideid == other.mGuideid &&
+          mStepid == other.mStepid && isSession(other.mSiteName, other.mUserid);
+      }
+
+      /**
+       * Key of the revision of this edit's target that revisionid was
+       * replaced with by a synced edit.
+       */
+      public String getRevisionKey(int revisionid) {
+         return mSiteName + ":" + mUserid + ":" + mGuideid + ":" + mStepid + ":" + revisionid;
+      }
+
+      public boolean isSession(String siteName, int userid) {
+         return mSiteName.equals(siteName) && mUserid == userid;
+      }
+
+      /**
+       * Matches the queries built by ApiCall.editStep and ApiCall.reorderSteps.
+       */
+      public String getQuery() {
+         if (mEndpoint == ApiEndpoint.REORDER_GUIDE_STEPS) {
+            return "" + mGuideid + "/steporder" + "?revisionid=" + mRevisionid;
+         } else {
+            return "" + mGuideid + "/steps/" + mStepid + "?revisionid=" + mRevisionid;
+         }
+      }
+
+      /**
+       * Fields are changed under the log's lock so they are copied under it
+       * before being written.
+       */
+      public Edit copy() {
+         Edit copy = new Edit();
+
+         copy.mEndpoint = mEndpoint;
+         copy.mSiteName = mSiteName;
+         copy.mUserid = mUserid;
+         copy.mGuideid = mGuideid;
+         copy.mStepid = mStepid;
+         copy.mRevisionid = mRevisionid;
+         copy.mRequestBody = mRequestBody;
+         copy.mAttempts = mAttempts;
+         copy.mActivityid = mActivityid;
+         copy.mRejected = mRejected;
+
+         return copy;
+      }
+
+      public JSONObject toJson() throws JSONException {
+         JSONObject json = new JSONObject();
+
+         json.put("endpoint", mEndpoint.name());
+         json.put("site", mSiteName);
+         json.put("userid", mUserid);
+         json.put("guideid", mGuideid);
+         json.put("stepid", mStepid);
+         json.put("revisionid", mRevisionid);
+         json.put("request_body", mRequestBody);
+         json.put("attempts", mAttempts);
+         json.put("rejected", mRejected);
+
+         return json;
+      }
+
+      public static Edit fromJson(JSONObject json) throws JSONException {
+         Edit edit = new Edit();
+
+         edit.mEndpoint = ApiEndpoint.valueOf(json.getString("endpoint"));
+         edit.mSiteName = json.getString("site");
+         edit.mUserid = json.getInt("userid");
+         edit.mGuideid = json.getInt("guideid");
+         edit.mStepid = json.optInt("stepid", NO_STEP);
+         edit.mRevisionid = json.getInt("revisionid");
+         edit.mRequestBody = json.getString("request_body");
+         edit.mAttempts = json.optInt("attempts");
+         edit.mRejected = json.optBoolean("rejected");
+
+         return edit;
+      }
+   }
+
+   private static EditLog sLog;
+
+   public static synchronized EditLog get(Context context) {
+      if (sLog == null) {
+         sLog = new EditLog(context.getApplicationContext());
+      }
+
+      return sLog;
+   }
+
+   private final File mLogFile;
+   private final ScheduledExecutorService mWorker =
+    Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(final Runnable runnable) {
+         return new Thread(new Runnable() {
+            public void run() {
+               Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+               runnable.run();
+            }
+         }, TAG);
+      }
+   });
+   private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+   private final Runnable mSyncRunnable = new Runnable() {
+      public void run() {
+         replay();
+      }
+   };
+
+   private final Runnable mWriteRunnable = new Runnable() {
+      public void run() {
+         writeLog();
+      }
+   };
+
+   /**
+    * Every edit that hasn't been saved, in the order they were made. Guarded
+    * by this.
+    */
+   private final ArrayList<Edit> mEdits = new ArrayList<Edit>();
+
+   /**
+    * The revision each synced edit produced, keyed by Edit.getRevisionKey of
+    * the revision it was based on. Guarded by this.
+    */
+   private final LinkedHashMap<String, Integer> mSyncedRevisions =
+    new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+         return size() > MAX_SYNCED_REVISIONS;
+      }
+   };
+   private ScheduledFuture<?> mRetry;
+
+   private EditLog(Context context) {
+      mLogFile = new File(context.getFilesDir(), LOG_FILE);
+
+      // Replay as soon as the connection comes back rather than waiting out
+      // the backoff.
+      context.registerReceiver(new BroadcastReceiver() {
+         @Override
+         public void onReceive(Context context, Intent intent) {
+            if (!intent.getBooleanExtra(ConnectivityManager.EXTRA_NO_CONNECTIVITY, false)) {
+               sync();
+            }
+         }
+      }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+   }
+
+   /**
+    * Logs the step's title, lines and media. Its result is posted as a
+    * StepSave event once it is synced.
+    */
+   public void editStep(Activity activity, GuideStep step, int guideid) {
+      JSONObject fields = ApiCall.getStepFields(step);
+
+      if (fields == null) {
+         Log.e(TAG, "Failed to serialize step " + step.getStepid());
+         return;
+      }
+
+      editStep(activity, step, guideid, fields);
+   }
+
+   /**
+    * Logs only the given fields of the step, as returned by
+    * ApiCall.getStepFields. Its result is posted as a StepSave event once it
+    * is synced.
+    */
+   public void editStep(Activity activity, GuideStep step, int guideid, JSONObject fields) {
+      Edit edit = new Edit();
+      edit.mEndpoint = ApiEndpoint.UPDATE_GUIDE_STEP;
+      edit.mGuideid = guideid;
+      edit.mStepid = step.getStepid();
+      edit.mRevisionid = step.getRevisionid();
+      edit.mRequestBody = fields.toString();
+
+      add(activity, edit);
+   }
+
+   /**
+    * Logs the guide's step order. Its result is posted as a StepReorder event
+    * once it is synced.
+    */
+   public void reorderSteps(Activity activity, Guide guide) {
+      ApiCall apiCall = ApiCall.reorderSteps(guide);
+
+      if (apiCall == null) {
+         Log.e(TAG, "Failed to serialize step order of " + guide.getGuideid());
+         return;
+      }
+
+      Edit edit = new Edit();
+      edit.mEndpoint = ApiEndpoint.REORDER_GUIDE_STEPS;
+      edit.mGuideid = guide.getGuideid();
+      edit.mRevisionid = guide.getRevisionid();
+      edit.mRequestBody = apiCall.mRequestBody;
+
+      add(activity, edit);
+   }
+
+   /**
+    * Returns true if edits to the step are waiting to be synced.
+    */
+   public synchronized boolean hasPendingStepEdit(int guideid, int stepid) {
+      for (Edit edit : mEdits) {
+         if (edit.mEndpoint == ApiEndpoint.UPDATE_GUIDE_STEP && edit.mGuideid == guideid &&
+          edit.mStepid == stepid && !edit.mRejected && isCurrentSession(edit)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Returns true if a new step order for the guide is waiting to be synced.
+    */
+   public synchronized boolean hasPendingReorder(int guideid) {
+      for (Edit edit : mEdits) {
+         if (edit.mEndpoint == ApiEndpoint.REORDER_GUIDE_STEPS && edit.mGuideid == guideid &&
+          !edit.mRejected && isCurrentSession(edit)) {
+            return true;
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Returns the number of the current session's edits to the guide that the
+    * server rejected.
+    */
+   public synchronized int getRejectedCount(int guideid) {
+      int count = 0;
+
+      for (Edit edit : mEdits) {
+         if (edit.mGuideid == guideid && edit.mRejected && isCurrentSession(edit)) {
+            count++;
+         }
+      }
+
+      return count;
+   }
+
+   /**
+    * Sends the current session's rejected edits to the guide again, based on
+    * the revisions in the given copy of it. This overwrites whatever was
+    * changed on the server since. Edits to steps that are no longer in the
+    * guide are dropped.
+    */
+   public void retryRejected(Guide guide) {
+      synchronized (this) {
+         Iterator<Edit> edits = mEdits.iterator();
+
+         while (edits.hasNext()) {
+            Edit edit = edits.next();
+
+            if (edit.mGuideid != guide.getGuideid() || !edit.mRejected ||
+             !isCurrentSession(edit)) {
+               continue;
+            }
+
+            Integer revisionid;
+            if (edit.mEndpoint == ApiEndpoint.REORDER_GUIDE_STEPS) {
+               revisionid = guide.getRevisionid();
+            } else {
+               GuideStep step = guide.getStepById(edit.mStepid);
+               revisionid = step == null ? null : step.getRevisionid();
+            }
+
+            if (revisionid == null) {
+               edits.remove();
+               continue;
+            }
+
+            edit.mRevisionid = revisionid;
+
+            edit.mRejected = false;
+            edit.mAttempts = 0;
+         }
+      }
+
+      mWorker.execute(mWriteRunnable);
+      sync();
+   }
+
+   /**
+    * Drops the current session's rejected edits to the guide.
+    */
+   public void discardRejected(int guideid) {
+      synchronized (this) {
+         Iterator<Edit> edits = mEdits.iterator();
+
+         while (edits.hasNext()) {
+            Edit edit = edits.next();
+
+            if (edit.mGuideid == guideid && edit.mRejected && isCurrentSession(edit)) {
+               edits.remove();
+            }
+         }
+      }
+
+      mWorker.execute(mWriteRunnable);
+   }
+
+   /**
+    * Restores edits left over from the last time the app ran and syncs them.
+    */
+   public void resume() {
+      mWorker.execute(new Runnable() {
+         public void run() {
+            LinkedHashMap<String, Integer> revisions = new LinkedHashMap<String, Integer>();
+            ArrayList<Edit> edits = readLog(revisions);
+
+            synchronized (EditLog.this) {
+               // Revisions synced since the process started are newer.
+               for (Map.Entry<String, Integer> revision : revisions.entrySet()) {
+                  if (!mSyncedRevisions.containsKey(revision.getKey())) {
+                     mSyncedRevisions.put(revision.getKey(), revision.getValue());
+                  }
+               }
+
+               mEdits.addAll(0, edits);
+            }
+
+            if (edits.isEmpty()) {
+               return;
+            }
+
+            if (App.inDebug()) {
+               Log.i(TAG, "Resuming " + edits.size() + " edits");
+            }
+
+            replay();
+         }
+      });
+   }
+
+   /**
+    * Sends waiting edits now instead of at the next retry. Also call when the
+    * site or user changes so edits made under them are sent.
+    */
+   public void sync() {
+      synchronized (this) {
+         if (mRetry != null) {
+            mRetry.cancel(false);
+            mRetry = null;
+         }
+      }
+
+      mWorker.execute(mSyncRunnable);
+   }
+
+   private void add(Activity activity, final Edit edit) {
+      if (activity != null) {
+         edit.mActivityid = ((BaseActivity)activity).getActivityid();
+      }
+
+      edit.mSiteName = App.get().getSite().mName;
+      edit.mUserid = getUserid(App.get().getUser());
+
+      synchronized (this) {
+         // The copy the edit was made on may not have seen the result of an
+         // earlier edit, e.g. one handed to another activity before it synced.
+         edit.mRevisionid = getLatestRevision(edit, edit.mRevisionid);
+
+         Edit previous = null;
+
+         for (Edit logged : mEdits) {
+            if (logged.hasSameTarget(edit)) {
+               previous = logged;
+            }
+         }
+
+         if (previous != null && previous.mRejected) {
+            // The user was shown the rejection and, on a conflict, the
+            // server's copy of the step, so the new edit replaces the
+            // rejected one instead of being merged into it.
+            previous.mRequestBody = edit.mRequestBody;
+            previous.mRevisionid = edit.mRevisionid;
+            previous.mActivityid = edit.mActivityid;
+            previous.mAttempts = 0;
+            previous.mRejected = false;
+         } else if (previous != null && !previous.mSending) {
+            // The newer fields replace the older ones but the edit keeps the
+            // revision it was based on so conflicts with other users are
+            // still caught.
+            previous.mRequestBody = merge(previous.mRequestBody, edit.mRequestBody);
+            previous.mActivityid = edit.mActivityid;
+         } else {
+            if (previous != null) {
+               // Rebased onto the revision the edit being sent produces.
+               edit.mRevisionid = previous.mRevisionid;
+            }
+
+            mEdits.add(edit);
+         }
+      }
+
+      // Written on the worker so the caller never waits on the disk.
+      mWorker.execute(mWriteRunnable);
+      sync();
+   }
+
+   /**
+    * Returns the fields of both request bodies, preferring the newer one's.
+    */
+   private static String merge(String older, String newer) {
+      try {
+         JSONObject merged = new JSONObject(older);
+         JSONObject newerFields = new JSONObject(newer);
+         Iterator<?> keys = newerFields.keys();
+
+         while (keys.hasNext()) {
+            String key = (String)keys.next();
+            merged.put(key, newerFields.get(key));
+         }
+
+         return merged.toString();
+      } catch (JSONException e) {
+         Log.e(TAG, "Failed to merge edits", e);
+         return newer;
+      }
+   }
+
+   /**
+    * Sends the current session's edits in order until there are none left or
+    * one can't be sent. Only runs on the worker.
+    */
+   private void replay() {
+      while (true) {
+         // Read once so the edit is sent under the session it was checked
+         // against even if the user switches meanwhile.
+         Site site = App.get().getSite();
+         User user = App.get().getUser();
+         Edit edit = null;
+
+         synchronized (this) {
+            for (Edit logged : mEdits) {
+               if (!logged.mRejected && logged.isSession(site.mName, getUserid(user))) {
+                  edit = logged;
+                  break;
+               }
+            }
+
+            if (edit == null) {
+               return;
+            }
+
+            edit.mSending = true;
+         }
+
+         edit.mAttempts++;
+
+         ApiCall apiCall = new ApiCall(edit.mEndpoint, edit.getQuery(), edit.mRequestBody);
+         apiCall.mActivityid = edit.mActivityid;
+
+         ApiEvent<?> result = Api.callSync(apiCall, site, user);
+
+         synchronized (this) {
+            edit.mSending = false;
+         }
+
+         if (result.hasError()) {
+            ApiError.Type type = result.getError().mType;
+
+            if (type == ApiError.Type.UNAUTHORIZED) {
+               // Kept until the user logs in again and the next edit or
+               // restart syncs the log.
+               writeLog();
+               return;
+            }
+
+            if (type == ApiError.Type.CONNECTION || ((result.mCode == 0 ||
+             result.mCode >= 500) && edit.mAttempts < MAX_ATTEMPTS)) {
+               scheduleRetry(edit);
+               return;
+            }
+         }
+
+         synchronized (this) {
+            if (result.hasError()) {
+               // Kept for the user to retry or discard; see getRejectedCount.
+               edit.mRejected = true;
+            } else {
+               mEdits.remove(edit);
+
+               Integer revisionid = getRevisionid(result);
+
+               if (revisionid != null) {
+                  mSyncedRevisions.put(edit.getRevisionKey(edit.mRevisionid), revisionid);
+
+                  for (Edit later : mEdits) {
+                     if (later.hasSameTarget(edit)) {
+                        later.mRevisionid = revisionid;
+                     }
+                  }
+               }
+            }
+         }
+         writeLog();
+
+         if (App.inDebug() && result.hasError()) {
+            Log.w(TAG, "Rejected edit " + edit.getQuery() + ": " + result.getError().mType);
+         }
+
+         postResult(result);
+      }
+   }
+
+   private void scheduleRetry(Edit edit) {
+      // Connection failures are retried for as long as it takes but the
+      // backoff stops growing.
+      int exponent = Math.min(edit.mAttempts - 1, 16);
+      long backoff = Math.min(INITIAL_BACKOFF_MS << exponent, MAX_BACKOFF_MS);
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Sync of " + edit.getQuery() + " failed, retrying in " + backoff + "ms");
+      }
+
+      writeLog();
+
+      synchronized (this) {
+         mRetry = mWorker.schedule(mSyncRunnable, backoff, TimeUnit.MILLISECONDS);
+      }
+   }
+
+   /**
+    * Follows the revisions synced edits produced from revisionid to the
+    * latest one. Call with the lock held.
+    */
+   private int getLatestRevision(Edit edit, int revisionid) {
+      // Bounded in case the server ever hands back a revision it produced
+      // before.
+      for (int i = 0; i < MAX_SYNCED_REVISIONS; i++) {
+         Integer next = mSyncedRevisions.get(edit.getRevisionKey(revisionid));
+
+         if (next == null || next == revisionid) {
+            break;
+         }
+
+         revisionid = next;
+      }
+
+      return revisionid;
+   }
+
+   private static boolean isCurrentSession(Edit edit) {
+      return edit.isSession(App.get().getSite().mName, getUserid(App.get().getUser()));
+   }
+
+   private static int getUserid(User user) {
+      return user == null ? NO_USERID : user.getUserid();
+   }
+
+   private static Integer getRevisionid(ApiEvent<?> result) {
+      Object saved = result.getResult();
+
+      if (saved instanceof GuideStep) {
+         return ((GuideStep)saved).getRevisionid();
+      } else if (saved instanceof Guide) {
+         return ((Guide)saved).getRevisionid();
+      }
+
+      return null;
+   }
+
+   private void postResult(final ApiEvent<?> result) {
+      if (result.mApiCall.mActivityid == NO_ACTIVITY) {
+         return;
+      }
+
+      mMainHandler.post(new Runnable() {
+         public void run() {
+            App.getBus().post(new ApiEvent.ActivityProxy(result));
+         }
+      });
+   }
+
+   /**
+    * Writes a snapshot of the log. Only the copy is taken under the lock so
+    * add() and the pending checks on the UI thread never wait on the disk.
+    * Only runs on the worker which keeps the writes in order.
+    */
+   private void writeLog() {
+      ArrayList<Edit> edits = new ArrayList<Edit>();
+      LinkedHashMap<String, Integer> revisions;
+
+      synchronized (this) {
+         for (Edit edit : mEdits) {
+            edits.add(edit.copy());
+         }
+
+         revisions = new LinkedHashMap<String, Integer>(mSyncedRevisions);
+      }
+
+      JSONObject log = new JSONObject();
+      Writer writer = null;
+
+      try {
+         JSONArray editsJson = new JSONArray();
+         for (Edit edit : edits) {
+            editsJson.put(edit.toJson());
+         }
+
+         // Least recently used first so they are restored in the same order.
+         JSONArray revisionsJson = new JSONArray();
+         for (Map.Entry<String, Integer> revision : revisions.entrySet()) {
+            revisionsJson.put(new JSONArray().put(revision.getKey()).put(revision.getValue()));
+         }
+
+         log.put("edits", editsJson);
+         log.put("revisions", revisionsJson);
+
+         File tmpFile = new File(mLogFile.getPath() + ".tmp");
+         writer = new FileWriter(tmpFile);
+         writer.write(log.toString());
+         writer.close();
+         writer = null;
+
+         if (!tmpFile.renameTo(mLogFile)) {
+            Log.e(TAG, "Failed to replace " + mLogFile);
+         }
+      } catch (JSONException e) {
+         Log.e(TAG, "Failed to serialize log", e);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write log", e);
+      } finally {
+         if (writer != null) {
+            try {
+               writer.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+   }
+
+   /**
+    * Returns the logged edits and adds the synced revisions to revisions.
+    */
+   private ArrayList<Edit> readLog(Map<String, Integer> revisions) {
+      ArrayList<Edit> edits = new ArrayList<Edit>();
+
+      if (!mLogFile.exists()) {
+         return edits;
+      }
+
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new FileReader(mLogFile));
+         StringBuilder contents = new StringBuilder();
+         String line;
+
+         while ((line = reader.readLine()) != null) {
+            contents.append(line);
+         }
+
+         JSONArray editsJson;
+         JSONArray revisionsJson;
+
+         if (contents.length() > 0 && contents.charAt(0) == '[') {
+            // Written before synced revisions were logged.
+            editsJson = new JSONArray(contents.toString());
+            revisionsJson = new JSONArray();
+         } else {
+            JSONObject log = new JSONObject(contents.toString());
+            editsJson = log.getJSONArray("edits");
+            revisionsJson = log.getJSONArray("revisions");
+         }
+
+         for (int i = 0; i < editsJson.length(); i++) {
+            edits.add(Edit.fromJson(editsJson.getJSONObject(i)));
+         }
+
+         for (int i = 0; i < revisionsJson.length(); i++) {
+            JSONArray revision = revisionsJson.getJSONArray(i);
+            revisions.put(revision.getString(0), revision.getInt(1));
+         }
+      } catch (JSONException e) {
+         Log.e(TAG, "Failed to parse log", e);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read log", e);
+      } finally {
+         if (reader != null) {
+            try {
+               reader.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+
+      return edits;
+   }
+}
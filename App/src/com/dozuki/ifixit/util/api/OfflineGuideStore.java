@@ -0,0 +1,922 @@
+package com.dozuki.ifixit.util.api;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.Video;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.model.topic.TopicLeaf;
+import com.dozuki.ifixit.util.ImageSizes;
+import com.github.kevinsawicki.http.HttpRequest;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Guides downloaded for offline use along with the images and videos needed to
+ * view them.
+ *
+ * Each guide's files are listed in a manifest that is written before anything
+ * is downloaded, and the guide's API response is written only once all of them
+ * are present, so a pack is complete exactly when its response exists. Media is
+ * shared between packs and named by the SHA-1 of its URL. Interrupted downloads
+ * are kept as .part files and resumed with a Range request when the pack is
+ * downloaded again, which also happens for unfinished packs on startup.
+ *
+ * Downloads run one at a time on a background thread and report their progress
+ * by posting Progress events to the bus. Packs are evicted least recently used
+ * first once the store grows beyond MAX_SIZE.
+ */
+public class OfflineGuideStore {
+   private static final String TAG = "OfflineGuideStore";
+
+   private static final String STORE_DIR = "offline_guides";
+   private static final String MEDIA_DIR = "media";
+   private static final String RESPONSE_SUFFIX = ".json";
+   private static final String MANIFEST_SUFFIX = ".manifest";
+   private static final String PART_SUFFIX = ".part";
+   private static final String ENCODING = "UTF-8";
+
+   private static final long MAX_SIZE = 250L * 1024 * 1024;
+
+   /**
+    * Favorites are fetched a page at a time until a short page is returned.
+    */
+   private static final int FAVORITES_PAGE_SIZE = 50;
+
+   /**
+    * Minimum time between Progress events while a single file is downloading.
+    */
+   private static final long PROGRESS_INTERVAL_MS = 500;
+
+   private static final int REQUESTED_RANGE_NOT_SATISFIABLE_CODE = 416;
+
+   public static enum State {
+      DOWNLOADING,
+      COMPLETE,
+      FAILED,
+      /**
+       * The pack was removed before it finished downloading.
+       */
+      REMOVED
+   }
+
+   /**
+    * Posted to the bus on the main thread as a guide pack downloads.
+    */
+   public static class Progress {
+      public final String mSite;
+      public final int mGuideid;
+      public final State mState;
+      public final int mCompletedFiles;
+      public final int mTotalFiles;
+      public final long mDownloadedBytes;
+
+      public Progress(String site, int guideid, State state, int completedFiles,
+       int totalFiles, long downloadedBytes) {
+         mSite = site;
+         mGuideid = guideid;
+         mState = state;
+         mCompletedFiles = completedFiles;
+         mTotalFiles = totalFiles;
+         mDownloadedBytes = downloadedBytes;
+      }
+   }
+
+   private static OfflineGuideStore sStore;
+
+   public static synchronized OfflineGuideStore get(Context context) {
+      if (sStore == null) {
+         sStore = new OfflineGuideStore(new File(context.getApplicationContext().getFilesDir(),
+          STORE_DIR));
+      }
+
+      return sStore;
+   }
+
+   private final File mDirectory;
+   private final File mMediaDirectory;
+   private final ExecutorService mWorker = Executors.newSingleThreadExecutor();
+   private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+   /**
+    * Packs that are queued or downloading, keyed by getPackKey.
+    */
+   private final Set<String> mQueuedPacks = new HashSet<String>();
+
+   /**
+    * Queued packs that have been removed since, keyed by getPackKey. Their
+    * downloads stop before the next file and delete whatever they wrote.
+    */
+   private final Set<String> mRemovedPacks = new HashSet<String>();
+
+   /**
+    * Total size of the store in bytes, kept up to date as files are written and
+    * deleted. -1 until it has been measured.
+    */
+   private long mSize = -1;
+
+   private OfflineGuideStore(File directory) {
+      mDirectory = directory;
+      mMediaDirectory = new File(directory, MEDIA_DIR);
+   }
+
+   /**
+    * Queues the guide to be downloaded for the current site.
+    */
+   public void downloadGuide(final int guideid) {
+      final String site = App.get().getSite().mName;
+
+      if (!queuePack(site, guideid)) {
+         return;
+      }
+
+      mWorker.execute(new Runnable() {
+         public void run() {
+            downloadPack(site, guideid);
+         }
+      });
+   }
+
+   /**
+    * Queues every guide in the topic to be downloaded.
+    */
+   public void downloadTopic(TopicLeaf topic) {
+      downloadGuides(topic.getGuides());
+   }
+
+   /**
+    * Queues every guide the user has favorited to be downloaded.
+    */
+   public void downloadFavorites() {
+      mWorker.execute(new Runnable() {
+         public void run() {
+            int offset = 0;
+            ArrayList<GuideInfo> page;
+
+            do {
+               ApiEvent<?> event = Api.callSync(ApiCall.userFavorites(FAVORITES_PAGE_SIZE,
+                offset));
+
+               if (event.hasError()) {
+                  Log.w(TAG, "Failed to fetch favorites");
+                  return;
+               }
+
+               @SuppressWarnings("unchecked")
+               ArrayList<GuideInfo> guides = (ArrayList<GuideInfo>)event.getResult();
+               page = guides;
+               downloadGuides(page);
+               offset += FAVORITES_PAGE_SIZE;
+            } while (page.size() == FAVORITES_PAGE_SIZE);
+         }
+      });
+   }
+
+   /**
+    * Queues packs for the current site that were interrupted before they
+    * finished downloading.
+    */
+   public void resumeDownloads() {
+      mWorker.execute(new Runnable() {
+         public void run() {
+            String site = App.get().getSite().mName;
+            File[] files = getSiteDirectory(site).listFiles();
+
+            if (files == null) {
+               return;
+            }
+
+            for (File file : files) {
+               String name = file.getName();
+
+               if (!name.endsWith(MANIFEST_SUFFIX)) {
+                  continue;
+               }
+
+               try {
+                  int guideid = Integer.parseInt(name.substring(0,
+                   name.length() - MANIFEST_SUFFIX.length()));
+
+                  if (!getResponseFile(site, guideid).exists()) {
+                     downloadGuide(guideid);
+                  }
+               } catch (NumberFormatException e) {
+                  Log.w(TAG, "Unexpected file " + file);
+               }
+            }
+         }
+      });
+   }
+
+   /**
+    * Deletes the guide's pack along with any media no other pack uses. A
+    * download of the pack that is queued or running is cancelled.
+    */
+   public void remove(final int guideid) {
+      final String site = App.get().getSite().mName;
+
+      // Stop serving the pack right away; the rest can happen in the background.
+      File response = getResponseFile(site, guideid);
+      long responseSize = response.length();
+
+      if (response.delete()) {
+         addSize(-responseSize);
+      }
+
+      if (markRemoved(site, guideid)) {
+         // The download deletes the pack once it stops.
+         return;
+      }
+
+      mWorker.execute(new Runnable() {
+         public void run() {
+            deletePack(site, guideid);
+         }
+      });
+   }
+
+   /**
+    * Returns true if the guide has been completely downloaded for the current site.
+    */
+   public boolean isDownloaded(int guideid) {
+      return getResponseFile(App.get().getSite().mName, guideid).exists();
+   }
+
+   public synchronized boolean isDownloading(int guideid) {
+      return mQueuedPacks.contains(getPackKey(App.get().getSite().mName, guideid));
+   }
+
+   /**
+    * Returns the downloaded API response for the ApiCall or null if it isn't
+    * for a guide that has been downloaded.
+    */
+   public String getResponse(ApiCall apiCall) {
+      if (apiCall.mEndpoint != ApiEndpoint.GUIDE || apiCall.mSite == null) {
+         return null;
+      }
+
+      int guideid;
+      try {
+         guideid = Integer.parseInt(apiCall.mQuery);
+      } catch (NumberFormatException e) {
+         return null;
+      }
+
+      File file = getResponseFile(apiCall.mSite.mName, guideid);
+
+      if (!file.exists()) {
+         return null;
+      }
+
+      try {
+         String response = readFile(file);
+         // Keeps recently viewed packs from being evicted.
+         file.setLastModified(System.currentTimeMillis());
+
+         return response;
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read " + file, e);
+         return null;
+      }
+   }
+
+   /**
+    * Returns the downloaded copy of the URL or null if there isn't one.
+    */
+   public File getMediaFile(String url) {
+      File file = getMediaFileForUrl(url);
+
+      return file.exists() ? file : null;
+   }
+
+   /**
+    * Returns a URL for the downloaded copy of the given URL if there is one,
+    * otherwise the URL itself.
+    */
+   public String getLocalUrl(String url) {
+      File file = getMediaFile(url);
+
+      return file == null ? url : Uri.fromFile(file).toString();
+   }
+
+   private void downloadGuides(List<GuideInfo> guides) {
+      for (GuideInfo guide : guides) {
+         downloadGuide(guide.mGuideid);
+      }
+   }
+
+   /**
+    * Returns false if the pack is already queued. Queuing a pack that was
+    * removed while downloading lets that download carry on instead.
+    */
+   private synchronized boolean queuePack(String site, int guideid) {
+      String key = getPackKey(site, guideid);
+
+      mRemovedPacks.remove(key);
+      return mQueuedPacks.add(key);
+   }
+
+   /**
+    * Returns true if the pack was removed while it was queued.
+    */
+   private synchronized boolean dequeuePack(String site, int guideid) {
+      String key = getPackKey(site, guideid);
+
+      mQueuedPacks.remove(key);
+      return mRemovedPacks.remove(key);
+   }
+
+   /**
+    * Marks a queued pack as removed. Returns false if it isn't queued.
+    */
+   private synchronized boolean markRemoved(String site, int guideid) {
+      String key = getPackKey(site, guideid);
+
+      if (!mQueuedPacks.contains(key)) {
+         return false;
+      }
+
+      mRemovedPacks.add(key);
+      return true;
+   }
+
+   private synchronized boolean isRemoved(String site, int guideid) {
+      return mRemovedPacks.contains(getPackKey(site, guideid));
+   }
+
+   private void downloadPack(String site, int guideid) {
+      boolean complete = false;
+      int completedFiles = 0;
+      List<String> urls = null;
+
+      try {
+         if (!site.equals(App.get().getSite().mName) || isRemoved(site, guideid)) {
+            // The pack was removed or the user switched sites, in which case
+            // it is resumed when they come back.
+            return;
+         }
+
+         ApiEvent<?> event = Api.callSync(ApiCall.guide(guideid));
+
+         if (event.hasError()) {
+            Log.w(TAG, "Failed to fetch guide " + guideid + ": " + event.getError().mType);
+            return;
+         }
+
+         if (isRemoved(site, guideid)) {
+            return;
+         }
+
+         urls = getMediaUrls((Guide)event.getResult());
+         writeManifest(site, guideid, urls);
+
+         long downloadedBytes = 0;
+         postProgress(site, guideid, State.DOWNLOADING, 0, urls.size(), 0);
+
+         for (String url : urls) {
+            if (isRemoved(site, guideid)) {
+               return;
+            }
+
+            downloadedBytes += downloadMedia(site, guideid, url, completedFiles, urls.size(),
+             downloadedBytes);
+            completedFiles++;
+
+            postProgress(site, guideid, State.DOWNLOADING, completedFiles, urls.size(),
+             downloadedBytes);
+         }
+
+         writeStoreFile(getResponseFile(site, guideid), event.getResponse());
+         complete = true;
+
+         if (App.inDebug()) {
+            Log.i(TAG, "Downloaded guide " + guideid + ": " + urls.size() + " files, " +
+             downloadedBytes + " bytes");
+         }
+      } catch (IOException e) {
+         Log.w(TAG, "Failed to download guide " + guideid, e);
+      } catch (HttpRequest.HttpRequestException e) {
+         Log.w(TAG, "Failed to download guide " + guideid, e);
+      } finally {
+         State state = complete ? State.COMPLETE : State.FAILED;
+
+         // Checked once more after the last write so a removal can't be lost
+         // between the last check and the pack being dequeued.
+         if (dequeuePack(site, guideid)) {
+            deletePack(site, guideid);
+            state = State.REMOVED;
+         }
+
+         int totalFiles = urls == null ? 0 : urls.size();
+         postProgress(site, guideid, state, completedFiles, totalFiles, 0);
+      }
+   }
+
+   /**
+    * Images are downloaded in the sizes the guide view displays them at and
+    * videos in the encoding it plays.
+    */
+   private List<String> getMediaUrls(Guide guide) {
+      ImageSizes sizes = App.get().getImageSizes();
+      LinkedHashSet<String> urls = new LinkedHashSet<String>();
+
+      addImageUrls(urls, guide.getIntroImage(), sizes);
+
+      for (GuideStep step : guide.getSteps()) {
+         for (Image image : step.getImages()) {
+            addImageUrls(urls, image, sizes);
+         }
+
+         if (step.hasVideo()) {
+            Video video = step.getVideo();
+
+            addImageUrls(urls, video.getThumbnail(), sizes);
+
+            if (!video.getEncodings().isEmpty()) {
+               urls.add(video.getEncodings().get(0).getURL());
+            }
+         }
+      }
+
+      return new ArrayList<String>(urls);
+   }
+
+   private void addImageUrls(Set<String> urls, Image image, ImageSizes sizes) {
+      if (image == null || image.getPath().length() == 0) {
+         return;
+      }
+
+      urls.add(image.getPath(sizes.getThumb()));
+      urls.add(image.getPath(sizes.getMain()));
+   }
+
+   /**
+    * Downloads the URL unless it is already present, resuming a partial
+    * download if there is one. Returns the number of bytes transferred.
+    */
+   private long downloadMedia(String site, int guideid, String url, int completedFiles,
+    int totalFiles, long downloadedBytes) throws IOException {
+      File file = getMediaFileForUrl(url);
+
+      if (file.exists()) {
+         return 0;
+      }
+
+      File partFile = new File(file.getPath() + PART_SUFFIX);
+      long offset = partFile.length();
+
+      HttpRequest request = HttpRequest.get(url);
+      request.userAgent(App.get().getUserAgent());
+      // Kept in the store instead; it would only push API responses out of
+      // the HTTP cache.
+      request.useCaches(false);
+
+      // Trust all certs and hosts in development, as the API does.
+      if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.FROYO || App.inDebug()) {
+         request.trustAllCerts();
+         request.trustAllHosts();
+      }
+
+      if (offset > 0) {
+         request.header("Range", "bytes=" + offset + "-");
+      }
+
+      int code = request.code();
+      boolean append = code == HttpURLConnection.HTTP_PARTIAL && offset > 0;
+
+      if (code == REQUESTED_RANGE_NOT_SATISFIABLE_CODE && offset > 0) {
+         // The previous attempt got the whole file but didn't commit it.
+         if (offset == getRangeLength(request)) {
+            if (!partFile.renameTo(file)) {
+               throw new IOException("Failed to commit " + file);
+            }
+
+            return 0;
+         }
+
+         // The file has changed since; start over next time.
+         if (partFile.delete()) {
+            addSize(-offset);
+         }
+
+         throw new IOException("Stale partial download of " + url);
+      }
+
+      if (code != HttpURLConnection.HTTP_OK && !append) {
+         throw new IOException("Unexpected response " + code + " for " + url);
+      }
+
+      ensureSpace(site, guideid, Math.max(request.contentLength(), 0));
+
+      InputStream in = null;
+      OutputStream out = null;
+      long transferred = 0;
+
+      try {
+         in = request.stream();
+         out = new FileOutputStream(partFile, append);
+
+         byte[] buffer = new byte[8192];
+         long lastProgress = System.currentTimeMillis();
+         int read;
+
+         while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            transferred += read;
+
+            long now = System.currentTimeMillis();
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+               postProgress(site, guideid, State.DOWNLOADING, completedFiles, totalFiles,
+                downloadedBytes + transferred);
+               lastProgress = now;
+            }
+         }
+      } finally {
+         close(in);
+         close(out);
+
+         // Bytes written to the .part file count even if the download failed.
+         addSize(append ? transferred : transferred - offset);
+      }
+
+      if (!partFile.renameTo(file)) {
+         throw new IOException("Failed to commit " + file);
+      }
+
+      return transferred;
+   }
+
+   /**
+    * Evicts least recently used packs, other than the one being downloaded,
+    * until the given number of bytes fits.
+    */
+   private void ensureSpace(String site, int guideid, long bytes) throws IOException {
+      long size = getSize();
+
+      if (size + bytes <= MAX_SIZE) {
+         return;
+      }
+
+      File[] responses = getCompletePacks();
+      Arrays.sort(responses, new Comparator<File>() {
+         public int compare(File lhs, File rhs) {
+            long lhsModified = lhs.lastModified();
+            long rhsModified = rhs.lastModified();
+
+            return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+         }
+      });
+
+      for (File response : responses) {
+         if (size + bytes <= MAX_SIZE) {
+            break;
+         }
+
+         String name = response.getName();
+         String packSite = response.getParentFile().getName();
+         int packGuideid = Integer.parseInt(name.substring(0,
+          name.length() - RESPONSE_SUFFIX.length()));
+
+         if (packSite.equals(site) && packGuideid == guideid) {
+            continue;
+         }
+
+         deletePack(packSite, packGuideid);
+         size = getSize();
+      }
+
+      if (size + bytes > MAX_SIZE) {
+         throw new IOException("Offline guide storage is full");
+      }
+   }
+
+   /**
+    * Deletes the pack and returns the number of bytes freed.
+    */
+   private long deletePack(String site, int guideid) {
+      File response = getResponseFile(site, guideid);
+      File manifest = getManifestFile(site, guideid);
+      List<String> urls = readManifest(manifest);
+      long freed = deleteFile(response) + deleteFile(manifest);
+
+      Set<String> referenced = getReferencedMedia();
+      for (String url : urls) {
+         File file = getMediaFileForUrl(url);
+
+         if (!referenced.contains(file.getName())) {
+            freed += deleteFile(file);
+            freed += deleteFile(new File(file.getPath() + PART_SUFFIX));
+         }
+      }
+
+      if (App.inDebug()) {
+         Log.i(TAG, "Deleted guide " + guideid + ", freed " + freed + " bytes");
+      }
+
+      return freed;
+   }
+
+   /**
+    * Returns the names of the media files listed by any manifest.
+    */
+   private Set<String> getReferencedMedia() {
+      HashSet<String> referenced = new HashSet<String>();
+      File[] sites = mDirectory.listFiles();
+
+      if (sites == null) {
+         return referenced;
+      }
+
+      for (File site : sites) {
+         File[] files = site.equals(mMediaDirectory) ? null : site.listFiles();
+
+         if (files == null) {
+            continue;
+         }
+
+         for (File file : files) {
+            if (file.getName().endsWith(MANIFEST_SUFFIX)) {
+               for (String url : readManifest(file)) {
+                  referenced.add(digest(url));
+               }
+            }
+         }
+      }
+
+      return referenced;
+   }
+
+   private File[] getCompletePacks() {
+      ArrayList<File> responses = new ArrayList<File>();
+      File[] sites = mDirectory.listFiles();
+
+      if (sites != null) {
+         for (File site : sites) {
+            File[] files = site.equals(mMediaDirectory) ? null : site.listFiles();
+
+            if (files == null) {
+               continue;
+            }
+
+            for (File file : files) {
+               if (file.getName().endsWith(RESPONSE_SUFFIX)) {
+                  responses.add(file);
+               }
+            }
+         }
+      }
+
+      return responses.toArray(new File[responses.size()]);
+   }
+
+   /**
+    * Deletes the file and returns the number of bytes freed.
+    */
+   private long deleteFile(File file) {
+      long length = file.length();
+
+      if (!file.delete()) {
+         return 0;
+      }
+
+      addSize(-length);
+      return length;
+   }
+
+   /**
+    * Returns the size of the store, measuring it the first time.
+    */
+   private synchronized long getSize() {
+      if (mSize < 0) {
+         mSize = getDirectorySize(mDirectory);
+      }
+
+      return mSize;
+   }
+
+   private synchronized void addSize(long bytes) {
+      if (mSize >= 0) {
+         mSize += bytes;
+      }
+   }
+
+   /**
+    * Returns the complete length from a Content-Range header of the form
+    * "bytes &#42;/length", or -1 if there isn't one.
+    */
+   private static long getRangeLength(HttpRequest request) {
+      String range = request.header("Content-Range");
+
+      if (range == null) {
+         return -1;
+      }
+
+      try {
+         return Long.parseLong(range.substring(range.lastIndexOf('/') + 1).trim());
+      } catch (NumberFormatException e) {
+         return -1;
+      }
+   }
+
+   private static long getDirectorySize(File directory) {
+      File[] files = directory.listFiles();
+      long size = 0;
+
+      if (files == null) {
+         return 0;
+      }
+
+      for (File file : files) {
+         size += file.isDirectory() ? getDirectorySize(file) : file.length();
+      }
+
+      return size;
+   }
+
+   private void postProgress(String site, int guideid, State state, int completedFiles,
+    int totalFiles, long downloadedBytes) {
+      final Progress progress = new Progress(site, guideid, state, completedFiles,
+       totalFiles, downloadedBytes);
+
+      mMainHandler.post(new Runnable() {
+         public void run() {
+            App.getBus().post(progress);
+         }
+      });
+   }
+
+   private void writeManifest(String site, int guideid, List<String> urls)
+    throws IOException {
+      StringBuilder manifest = new StringBuilder();
+
+      for (String url : urls) {
+         manifest.append(url).append('\n');
+      }
+
+      writeStoreFile(getManifestFile(site, guideid), manifest.toString());
+   }
+
+   private void writeStoreFile(File file, String contents) throws IOException {
+      long oldLength = file.length();
+
+      writeFile(file, contents);
+      addSize(file.length() - oldLength);
+   }
+
+   private static List<String> readManifest(File manifest) {
+      ArrayList<String> urls = new ArrayList<String>();
+
+      if (!manifest.exists()) {
+         return urls;
+      }
+
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new FileReader(manifest));
+
+         String line;
+         while ((line = reader.readLine()) != null) {
+            if (line.length() > 0) {
+               urls.add(line);
+            }
+         }
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read " + manifest, e);
+      } finally {
+         close(reader);
+      }
+
+      return urls;
+   }
+
+   /**
+    * Writes to a temporary file first so readers never see a partial file.
+    */
+   private static void writeFile(File file, String contents) throws IOException {
+      File directory = file.getParentFile();
+
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Can't create " + directory);
+      }
+
+      File tmpFile = new File(file.getPath() + PART_SUFFIX);
+      Writer writer = new BufferedWriter(new OutputStreamWriter(
+       new FileOutputStream(tmpFile), ENCODING));
+
+      try {
+         writer.write(contents);
+      } finally {
+         writer.close();
+      }
+
+      if (!tmpFile.renameTo(file)) {
+         tmpFile.delete();
+         throw new IOException("Failed to commit " + file);
+      }
+   }
+
+   private static String readFile(File file) throws IOException {
+      Reader reader = null;
+
+      try {
+         reader = new InputStreamReader(new FileInputStream(file), ENCODING);
+         StringBuilder contents = new StringBuilder((int)file.length());
+         char[] buffer = new char[8192];
+         int read;
+
+         while ((read = reader.read(buffer)) != -1) {
+            contents.append(buffer, 0, read);
+         }
+
+         return contents.toString();
+      } finally {
+         close(reader);
+      }
+   }
+
+   private File getSiteDirectory(String site) {
+      return new File(mDirectory, site);
+   }
+
+   private File getResponseFile(String site, int guideid) {
+      return new File(getSiteDirectory(site), guideid + RESPONSE_SUFFIX);
+   }
+
+   private File getManifestFile(String site, int guideid) {
+      return new File(getSiteDirectory(site), guideid + MANIFEST_SUFFIX);
+   }
+
+   private File getMediaFileForUrl(String url) {
+      if (!mMediaDirectory.isDirectory()) {
+         mMediaDirectory.mkdirs();
+      }
+
+      return new File(mMediaDirectory, digest(url));
+   }
+
+   private static String getPackKey(String site, int guideid) {
+      return site + ":" + guideid;
+   }
+
+   private static String digest(String key) {
+      try {
+         byte[] hash = MessageDigest.getInstance("SHA-1").digest(key.getBytes(ENCODING));
+         StringBuilder builder = new StringBuilder(hash.length * 2);
+
+         for (byte b : hash) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+         }
+
+         return builder.toString();
+      } catch (NoSuchAlgorithmException e) {
+         throw new AssertionError(e);
+      } catch (UnsupportedEncodingException e) {
+         throw new AssertionError(e);
+      }
+   }
+
+   private static void close(Closeable closeable) {
+      if (closeable != null) {
+         try {
+            closeable.close();
+         } catch (IOException e) {
+            Log.e(TAG, "Closing", e);
+         }
+      }
+   }
+}
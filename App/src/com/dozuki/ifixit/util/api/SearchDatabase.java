@@ -0,0 +1,459 @@
+package com.dozuki.ifixit.util.api;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.Image;
+import com.dozuki.ifixit.model.guide.Guide;
+import com.dozuki.ifixit.model.guide.GuideInfo;
+import com.dozuki.ifixit.model.guide.GuideStep;
+import com.dozuki.ifixit.model.guide.StepLine;
+import com.dozuki.ifixit.model.search.GuideSearchResult;
+import com.dozuki.ifixit.model.search.SearchResult;
+import com.dozuki.ifixit.model.search.SearchResults;
+import com.dozuki.ifixit.model.search.TopicSearchResult;
+import com.dozuki.ifixit.model.topic.TopicLeaf;
+import com.dozuki.ifixit.model.user.User;
+import com.dozuki.ifixit.util.GsonAdapters;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Full text index of the guides and topics that have been loaded from the API
+ * so they can be searched without a connection.
+ *
+ * The searchable text lives in an FTS3 table. The data needed to display a
+ * result is kept in a regular table that shares its rowids.
+ */
+public class SearchDatabase extends SQLiteOpenHelper {
+   private static final String TAG = "SearchDatabase";
+   private static final int DATABASE_VERSION = 2;
+   private static final String DATABASE_NAME = "search";
+
+   public static final int TYPE_GUIDE = 0;
+   public static final int TYPE_TOPIC = 1;
+
+   /**
+    * Userid stored for content that was loaded without being logged in.
+    */
+   private static final int NO_USERID = 0;
+
+   /**
+    * Entries that haven't been indexed again for this long are removed, as
+    * are the oldest entries beyond MAX_ENTRIES.
+    */
+   private static final long MAX_ENTRY_AGE_MS = 90L * 24 * 60 * 60 * 1000;
+   private static final int MAX_ENTRIES = 5000;
+
+   private static final String TABLE_DATA = "search_data";
+   private static final String TABLE_TEXT = "search_text";
+   private static final String KEY_ID = "_id";
+   private static final String KEY_DOCID = "docid";
+   private static final String KEY_SITE = "site";
+   private static final String KEY_USERID = "userid";
+   private static final String KEY_TYPE = "type";
+   private static final String KEY_KEY = "key";
+   private static final String KEY_DATA = "data";
+   private static final String KEY_DATE = "date";
+   private static final String KEY_TITLE = "title";
+   private static final String KEY_BODY = "body";
+
+   /**
+    * Key is the guideid for guides and the name for topics.
+    */
+   private static final String CREATE_DATA_TABLE =
+    "CREATE TABLE " + TABLE_DATA + "(" +
+      KEY_ID + " INTEGER PRIMARY KEY, " +
+      KEY_SITE + " TEXT NOT NULL, " +
+      KEY_USERID + " INTEGER NOT NULL, " +
+      KEY_TYPE + " INTEGER NOT NULL, " +
+      KEY_KEY + " TEXT NOT NULL, " +
+      KEY_DATA + " TEXT NOT NULL, " +
+      KEY_DATE + " INTEGER NOT NULL, " +
+      "UNIQUE (" + KEY_SITE + ", " + KEY_USERID + ", " + KEY_TYPE + ", " + KEY_KEY + ")" +
+    ")";
+
+   private static final String CREATE_TEXT_TABLE =
+    "CREATE VIRTUAL TABLE " + TABLE_TEXT + " USING fts3(" +
+      KEY_TITLE + ", " +
+      KEY_BODY +
+    ")";
+
+   private static final String CREATE_DATE_INDEX =
+    "CREATE INDEX " + TABLE_DATA + "_" + KEY_DATE + " ON " + TABLE_DATA + "(" + KEY_DATE + ")";
+
+   /**
+    * Selects the rowids of the entries to evict. The text table is cleared
+    * first since it is found through the data table.
+    */
+   private static final String EVICTED_ROWIDS =
+    "SELECT " + KEY_ID + " FROM " + TABLE_DATA + " WHERE " + KEY_DATE + " < ? OR " +
+    KEY_ID + " IN (SELECT " + KEY_ID + " FROM " + TABLE_DATA + " ORDER BY " + KEY_DATE +
+    " DESC LIMIT -1 OFFSET " + MAX_ENTRIES + ")";
+
+   private static SearchDatabase sDatabase;
+
+   /**
+    * Indexing is done on its own thread so it doesn't hold up API responses.
+    */
+   private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+   public static synchronized SearchDatabase get(Context context) {
+      if (sDatabase == null) {
+         sDatabase = new SearchDatabase(context.getApplicationContext());
+      }
+
+      return sDatabase;
+   }
+
+   private SearchDatabase(Context context) {
+      super(context, DATABASE_NAME, null, DATABASE_VERSION);
+   }
+
+   @Override
+   public void onCreate(SQLiteDatabase db) {
+      db.execSQL(CREATE_DATA_TABLE);
+      db.execSQL(CREATE_TEXT_TABLE);
+      db.execSQL(CREATE_DATE_INDEX);
+   }
+
+   @Override
+   public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+      // Everything in here can be rebuilt from the API.
+      db.execSQL("DROP TABLE IF EXISTS " + TABLE_DATA);
+      db.execSQL("DROP TABLE IF EXISTS " + TABLE_TEXT);
+      onCreate(db);
+   }
+
+   /**
+    * Queues the guides and topics in the result of the ApiEvent to be added to
+    * the index.
+    */
+   public void index(final ApiEvent<?> event) {
+      if (event.hasError() || event.getResult() == null) {
+         return;
+      }
+
+      mWriter.execute(new Runnable() {
+         public void run() {
+            writeIndex(event);
+         }
+      });
+   }
+
+   private void writeIndex(ApiEvent<?> event) {
+      ApiCall apiCall = event.mApiCall;
+      String site = apiCall.mSite.mName;
+      int userid = getUserid(apiCall.mUser);
+
+      try {
+         SQLiteDatabase db = getWritableDatabase();
+         db.beginTransaction();
+
+         try {
+            if (event instanceof ApiEvent.ViewGuide) {
+               indexGuide(db, site, userid, (Guide)event.getResult());
+            } else if (event instanceof ApiEvent.Topic) {
+               TopicLeaf topic = (TopicLeaf)event.getResult();
+
+               indexTopic(db, site, userid, topic.getName(), topic.getTitle(),
+                topic.getDescription(), topic.getImage());
+               indexGuideInfos(db, site, userid, topic.getGuides());
+            } else if (event instanceof ApiEvent.Guides) {
+               indexGuideInfos(db, site, userid, ((ApiEvent.Guides)event).getResult());
+            } else if (event instanceof ApiEvent.UserFavorites) {
+               indexGuideInfos(db, site, userid,
+                ((ApiEvent.UserFavorites)event).getResult());
+            } else if (event instanceof ApiEvent.Search) {
+               indexSearchResults(db, site, userid, ((ApiEvent.Search)event).getResult());
+            }
+
+            evict(db);
+
+            db.setTransactionSuccessful();
+         } finally {
+            db.endTransaction();
+         }
+      } catch (RuntimeException e) {
+         // Nothing on this thread should take the app down for the sake of the
+         // search index.
+         Log.e(TAG, "Failed to index " + event.getClass().getSimpleName(), e);
+      }
+   }
+
+   private void evict(SQLiteDatabase db) {
+      String[] args = new String[] {
+       String.valueOf(System.currentTimeMillis() - MAX_ENTRY_AGE_MS)};
+
+      db.execSQL("DELETE FROM " + TABLE_TEXT + " WHERE " + KEY_DOCID + " IN (" +
+       EVICTED_ROWIDS + ")", args);
+      db.execSQL("DELETE FROM " + TABLE_DATA + " WHERE " + KEY_ID + " IN (" +
+       EVICTED_ROWIDS + ")", args);
+   }
+
+   /**
+    * Returns results of the given type matching every word in the query as a
+    * prefix. Title matches come first.
+    */
+   public SearchResults search(String query, int type, int limit) {
+      SearchResults results = new SearchResults();
+      results.mQuery = query;
+      results.mLimit = limit;
+
+      String titleMatch = getMatchExpression(query, KEY_TITLE + ":");
+      if (titleMatch == null) {
+         return results;
+      }
+
+      String site = App.get().getSite().mName;
+      int userid = getUserid(App.get().getUser());
+      HashSet<Long> found = new HashSet<Long>();
+
+      try {
+         SQLiteDatabase db = getReadableDatabase();
+
+         search(db, titleMatch, site, userid, type, limit, found, results.mResults);
+         search(db, getMatchExpression(query, ""), site, userid, type, limit, found,
+          results.mResults);
+      } catch (SQLiteException e) {
+         Log.e(TAG, "Failed to search for " + query, e);
+      }
+
+      results.mLocalResults = results.mResults.size();
+      results.mHasMoreResults = false;
+
+      return results;
+   }
+
+   private void search(SQLiteDatabase db, String match, String site, int userid, int type,
+    int limit, HashSet<Long> found, List<SearchResult> results) {
+      if (results.size() >= limit) {
+         return;
+      }
+
+      Cursor cursor = db.rawQuery("SELECT d." + KEY_ID + ", d." + KEY_DATA +
+       " FROM " + TABLE_TEXT + " t JOIN " + TABLE_DATA + " d ON d." + KEY_ID +
+       " = t." + KEY_DOCID +
+       " WHERE " + TABLE_TEXT + " MATCH ? AND d." + KEY_SITE + " = ? AND d." +
+       KEY_USERID + " IN (" + NO_USERID + ", ?) AND d." + KEY_TYPE + " = ?" +
+       " LIMIT " + limit, new String[] {match, site, String.valueOf(userid),
+       String.valueOf(type)});
+
+      try {
+         while (cursor.moveToNext() && results.size() < limit) {
+            if (!found.add(cursor.getLong(0))) {
+               continue;
+            }
+
+            SearchResult result = parseResult(type, cursor.getString(1));
+
+            if (result != null) {
+               results.add(result);
+            }
+         }
+      } finally {
+         cursor.close();
+      }
+   }
+
+   /**
+    * Turns the query into an FTS expression that matches every word as a
+    * prefix. Returns null if there aren't any words.
+    */
+   private static String getMatchExpression(String query, String columnPrefix) {
+      StringBuilder match = new StringBuilder();
+      StringBuilder word = new StringBuilder();
+
+      for (int i = 0; i <= query.length(); i++) {
+         char c = i < query.length() ? query.charAt(i) : ' ';
+
+         if (Character.isLetterOrDigit(c)) {
+            word.append(Character.toLowerCase(c));
+         } else if (word.length() > 0) {
+            if (match.length() > 0) {
+               match.append(' ');
+            }
+
+            match.append(columnPrefix).append(word).append('*');
+            word.setLength(0);
+         }
+      }
+
+      return match.length() == 0 ? null : match.toString();
+   }
+
+   private SearchResult parseResult(int type, String data) {
+      try {
+         if (type == TYPE_GUIDE) {
+            return new GuideSearchResult(GsonAdapters.GUIDE_INFO.fromJson(data));
+         }
+
+         JSONObject jTopic = new JSONObject(data);
+         TopicSearchResult topic = new TopicSearchResult();
+
+         topic.mTitle = jTopic.getString("title");
+         topic.mDisplayTitle = jTopic.getString("display_title");
+         topic.mSummary = jTopic.optString("summary", "");
+         topic.mText = topic.mSummary;
+         topic.mImage = new Image(jTopic.optInt("imageid", 0), jTopic.optString("image", ""));
+
+         return topic;
+      } catch (IOException e) {
+         Log.w(TAG, "Failed to parse stored result", e);
+      } catch (JSONException e) {
+         Log.w(TAG, "Failed to parse stored result", e);
+      }
+
+      return null;
+   }
+
+   private void indexGuide(SQLiteDatabase db, String site, int userid, Guide guide) {
+      GuideInfo guideInfo = new GuideInfo(guide.getGuideid());
+      guideInfo.mTitle = guide.getTitle();
+      guideInfo.mTopic = guide.getTopic();
+      guideInfo.mSubject = guide.getSubject();
+      guideInfo.mType = guide.getType();
+      guideInfo.mAuthorName = guide.getAuthor();
+      guideInfo.mPublic = guide.isPublic();
+      guideInfo.mImage = guide.getIntroImage();
+
+      Integer revisionid = guide.getRevisionid();
+      guideInfo.mRevisionid = revisionid == null ? 0 : revisionid;
+
+      // The full text of the guide so steps can be searched for too.
+      StringBuilder body = new StringBuilder();
+      body.append(guide.getTopic()).append('\n');
+      body.append(guide.getSummary()).append('\n');
+      body.append(guide.getIntroductionRaw()).append('\n');
+
+      for (GuideStep step : guide.getSteps()) {
+         body.append(step.getTitle()).append('\n');
+
+         for (StepLine line : step.getLines()) {
+            body.append(line.getTextRaw()).append('\n');
+         }
+      }
+
+      put(db, site, userid, TYPE_GUIDE, String.valueOf(guide.getGuideid()),
+       GsonAdapters.GUIDE_INFO.toJson(guideInfo), guide.getTitle(), body.toString());
+   }
+
+   private void indexGuideInfos(SQLiteDatabase db, String site, int userid,
+    List<GuideInfo> guides) {
+      for (GuideInfo guide : guides) {
+         indexGuideInfo(db, site, userid, guide);
+      }
+   }
+
+   /**
+    * Guide lists only have a guide's summary information so they don't replace
+    * the full text of a guide that has already been indexed.
+    */
+   private void indexGuideInfo(SQLiteDatabase db, String site, int userid, GuideInfo guide) {
+      if (getRowid(db, site, userid, TYPE_GUIDE, String.valueOf(guide.mGuideid)) != -1) {
+         return;
+      }
+
+      put(db, site, userid, TYPE_GUIDE, String.valueOf(guide.mGuideid),
+       GsonAdapters.GUIDE_INFO.toJson(guide), guide.mTitle,
+       guide.mTopic + "\n" + guide.mSubject);
+   }
+
+   private void indexSearchResults(SQLiteDatabase db, String site, int userid,
+    SearchResults search) {
+      for (SearchResult result : search.mResults) {
+         if (result instanceof GuideSearchResult) {
+            indexGuideInfo(db, site, userid, ((GuideSearchResult)result).getGuideInfo());
+         } else if (result instanceof TopicSearchResult) {
+            TopicSearchResult topic = (TopicSearchResult)result;
+
+            indexTopic(db, site, userid, topic.mTitle, topic.mDisplayTitle, topic.mSummary,
+             topic.mImage);
+         }
+      }
+   }
+
+   private void indexTopic(SQLiteDatabase db, String site, int userid, String name,
+    String displayTitle, String summary, Image image) {
+      JSONObject data = new JSONObject();
+
+      try {
+         data.put("title", name);
+         data.put("display_title", displayTitle);
+         data.put("summary", summary);
+
+         if (image != null) {
+            data.put("imageid", image.getId());
+            data.put("image", image.getPath());
+         }
+      } catch (JSONException e) {
+         Log.w(TAG, "Failed to index topic " + name, e);
+         return;
+      }
+
+      put(db, site, userid, TYPE_TOPIC, name, data.toString(), displayTitle,
+       name + "\n" + summary);
+   }
+
+   /**
+    * Inserts or replaces the entry for the given key.
+    */
+   private void put(SQLiteDatabase db, String site, int userid, int type, String key,
+    String data, String title, String body) {
+      long rowid = getRowid(db, site, userid, type, key);
+
+      ContentValues dataValues = new ContentValues();
+      dataValues.put(KEY_DATA, data);
+      dataValues.put(KEY_DATE, System.currentTimeMillis());
+
+      ContentValues textValues = new ContentValues();
+      textValues.put(KEY_TITLE, title == null ? "" : title);
+      textValues.put(KEY_BODY, body == null ? "" : body);
+
+      if (rowid == -1) {
+         dataValues.put(KEY_SITE, site);
+         dataValues.put(KEY_USERID, userid);
+         dataValues.put(KEY_TYPE, type);
+         dataValues.put(KEY_KEY, key);
+         rowid = db.insert(TABLE_DATA, null, dataValues);
+
+         textValues.put(KEY_DOCID, rowid);
+         db.insert(TABLE_TEXT, null, textValues);
+      } else {
+         String[] args = new String[] {String.valueOf(rowid)};
+
+         db.update(TABLE_DATA, dataValues, KEY_ID + " = ?", args);
+         db.update(TABLE_TEXT, textValues, KEY_DOCID + " = ?", args);
+      }
+   }
+
+   private long getRowid(SQLiteDatabase db, String site, int userid, int type, String key) {
+      Cursor cursor = db.query(TABLE_DATA, new String[] {KEY_ID},
+       KEY_SITE + " = ? AND " + KEY_USERID + " = ? AND " + KEY_TYPE + " = ? AND " +
+       KEY_KEY + " = ?", new String[] {site, String.valueOf(userid), String.valueOf(type),
+       key}, null, null, null);
+
+      try {
+         return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+      } finally {
+         cursor.close();
+      }
+   }
+
+   private static int getUserid(User user) {
+      return user == null ? NO_USERID : user.getUserid();
+   }
+}
@@ -0,0 +1,664 @@
+package com.dozuki.ifixit.util.api;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.dozuki.ifixit.App;
+import com.dozuki.ifixit.model.dozuki.Site;
+import com.dozuki.ifixit.model.user.User;
+import com.dozuki.ifixit.ui.BaseActivity;
+import com.dozuki.ifixit.util.BitmapDecoder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent queue of image uploads.
+ *
+ * Images are scaled down to MAX_DIMENSION and re-encoded before they are sent
+ * because the server doesn't keep anything larger, which makes camera photos a
+ * fraction of their original size. Uploads that fail because of the
+ * connection are retried with exponential backoff. Several uploads are sent
+ * at once on threads of their own so they don't hold up API reads. The queue
+ * is written to disk so uploads carry on after the process dies; their
+ * results are only posted to the activity that started them if it's still
+ * around.
+ *
+ * Each upload belongs to the site and user it was queued under. It is held
+ * while a different site is selected or a different user is logged in and
+ * sent once they are current again.
+ */
+public class UploadQueue {
+   private static final String TAG = "UploadQueue";
+
+   private static final String QUEUE_FILE = "upload_queue.json";
+   private static final String UPLOAD_DIR = "uploads";
+
+   private static final int MAX_DIMENSION = 2048;
+   private static final int JPEG_QUALITY = 90;
+
+   /**
+    * Uploads sent at once. Uploads are only sent to the current site so this
+    * is also the limit of connections to its host. Resizing happens one image
+    * at a time on a separate thread so it never holds up the network and only
+    * one full size bitmap is ever in memory.
+    */
+   private static final int MAX_PARALLEL_UPLOADS = 3;
+
+   private static final int MAX_ATTEMPTS = 8;
+   private static final long INITIAL_BACKOFF_MS = 2000;
+   private static final long MAX_BACKOFF_MS = 5 * 60 * 1000;
+
+   /**
+    * Activityid for uploads restored from disk. Activityids aren't unique across
+    * processes so results of those uploads aren't posted to any activity.
+    */
+   private static final int NO_ACTIVITY = -1;
+
+   private static final int NO_USERID = 0;
+
+   public static enum State {
+      RESIZING,
+      UPLOADING,
+      WAITING_TO_RETRY,
+      COMPLETE,
+      FAILED
+   }
+
+   /**
+    * Posted to the bus on the main thread as an upload progresses. mExtraInfo
+    * is the ApiCall's extra info which callers use to identify uploads.
+    */
+   public static class Progress {
+      public final String mFilePath;
+      public final String mExtraInfo;
+      public final State mState;
+      public final int mAttempt;
+
+      public Progress(String filePath, String extraInfo, State state, int attempt) {
+         mFilePath = filePath;
+         mExtraInfo = extraInfo;
+         mState = state;
+         mAttempt = attempt;
+      }
+   }
+
+   private static class Upload {
+      public ApiEndpoint mEndpoint;
+      public String mSiteName;
+      public int mUserid = NO_USERID;
+      public String mFilePath;
+      public String mExtraInfo;
+      /**
+       * The resized copy of the file or null if it hasn't been made yet.
+       */
+      public String mUploadPath;
+      public int mAttempts;
+      public int mActivityid = NO_ACTIVITY;
+
+      public Upload copy() {
+         Upload copy = new Upload();
+
+         copy.mEndpoint = mEndpoint;
+         copy.mSiteName = mSiteName;
+         copy.mUserid = mUserid;
+         copy.mFilePath = mFilePath;
+         copy.mExtraInfo = mExtraInfo;
+         copy.mUploadPath = mUploadPath;
+         copy.mAttempts = mAttempts;
+         copy.mActivityid = mActivityid;
+
+         return copy;
+      }
+
+      public JSONObject toJson() throws JSONException {
+         JSONObject json = new JSONObject();
+
+         json.put("endpoint", mEndpoint.name());
+         json.put("site", mSiteName);
+         json.put("userid", mUserid);
+         json.put("file_path", mFilePath);
+         json.put("extra_info", mExtraInfo);
+         json.put("upload_path", mUploadPath);
+         json.put("attempts", mAttempts);
+
+         return json;
+      }
+
+      public static Upload fromJson(JSONObject json) throws JSONException {
+         Upload upload = new Upload();
+
+         upload.mEndpoint = ApiEndpoint.valueOf(json.getString("endpoint"));
+         upload.mSiteName = json.getString("site");
+         upload.mUserid = json.getInt("userid");
+         upload.mFilePath = json.getString("file_path");
+         upload.mExtraInfo = json.optString("extra_info", null);
+         upload.mUploadPath = json.optString("upload_path", null);
+         upload.mAttempts = json.optInt("attempts");
+
+         return upload;
+      }
+   }
+
+   private static UploadQueue sQueue;
+
+   public static synchronized UploadQueue get(Context context) {
+      if (sQueue == null) {
+         sQueue = new UploadQueue(context.getApplicationContext());
+      }
+
+      return sQueue;
+   }
+
+   private final File mQueueFile;
+   private final Object mWriteLock = new Object();
+   private final File mUploadDirectory;
+   private final ExecutorService mResizer =
+    Executors.newSingleThreadExecutor(newThreadFactory("Upload resize"));
+   private final ExecutorService mSender =
+    Executors.newFixedThreadPool(MAX_PARALLEL_UPLOADS, newThreadFactory("Upload send"));
+   private final ScheduledExecutorService mRetryTimer =
+    Executors.newSingleThreadScheduledExecutor(newThreadFactory("Upload retry"));
+   private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+   /**
+    * Every upload that hasn't finished, in the order they were queued. Guarded
+    * by this.
+    */
+   private final ArrayList<Upload> mUploads = new ArrayList<Upload>();
+
+   /**
+    * Uploads waiting for their site and user to be current again. Guarded by
+    * this.
+    */
+   private final ArrayList<Upload> mHeldUploads = new ArrayList<Upload>();
+
+   private UploadQueue(Context context) {
+      mQueueFile = new File(context.getFilesDir(), QUEUE_FILE);
+      mUploadDirectory = new File(context.getFilesDir(), UPLOAD_DIR);
+   }
+
+   /**
+    * Queues the upload ApiCall. Its result is posted like any other ApiCall's
+    * once the upload succeeds or is given up on.
+    */
+   public void enqueue(Activity activity, ApiCall apiCall) {
+      Upload upload = new Upload();
+
+      User user = App.get().getUser();
+
+      upload.mEndpoint = apiCall.mEndpoint;
+      upload.mSiteName = App.get().getSite().mName;
+      upload.mUserid = user == null ? NO_USERID : user.getUserid();
+      upload.mFilePath = apiCall.mFilePath;
+      upload.mExtraInfo = apiCall.mExtraInfo;
+
+      if (activity != null) {
+         upload.mActivityid = ((BaseActivity)activity).getActivityid();
+      }
+
+      synchronized (this) {
+         mUploads.add(upload);
+      }
+
+      start(upload);
+   }
+
+   /**
+    * Queues the uploads that were left unfinished when the process died.
+    */
+   public void resume() {
+      mResizer.execute(new Runnable() {
+         public void run() {
+            ArrayList<Upload> uploads = readQueue();
+
+            synchronized (UploadQueue.this) {
+               mUploads.addAll(0, uploads);
+            }
+
+            for (Upload upload : uploads) {
+               start(upload);
+            }
+         }
+      });
+   }
+
+   /**
+    * Sends the held uploads that belong to the current site and user. Call
+    * when either of them changes.
+    */
+   public void resumeHeld() {
+      ArrayList<Upload> ready = new ArrayList<Upload>();
+
+      synchronized (this) {
+         for (Upload upload : mHeldUploads) {
+            if (isCurrentSession(upload)) {
+               ready.add(upload);
+            }
+         }
+
+         mHeldUploads.removeAll(ready);
+      }
+
+      for (Upload upload : ready) {
+         send(upload);
+      }
+   }
+
+   /**
+    * Resizes the upload if that hasn't been done yet and then sends it.
+    */
+   private void start(final Upload upload) {
+      if (upload.mUploadPath != null && new File(upload.mUploadPath).exists()) {
+         send(upload);
+         return;
+      }
+
+      mResizer.execute(new Runnable() {
+         public void run() {
+            postProgress(upload, State.RESIZING);
+            upload.mUploadPath = prepareFile(upload.mFilePath);
+            writeQueue();
+
+            send(upload);
+         }
+      });
+   }
+
+   private void send(final Upload upload) {
+      mSender.execute(new Runnable() {
+         public void run() {
+            perform(upload);
+         }
+      });
+   }
+
+   private void perform(final Upload upload) {
+      // Read once so the upload is sent under the session it was checked
+      // against even if the user switches meanwhile.
+      Site site = App.get().getSite();
+      User user = App.get().getUser();
+
+      if (!isSession(upload, site.mName, user)) {
+         hold(upload);
+
+         // The session may have changed back before the upload was held.
+         resumeHeld();
+         return;
+      }
+
+      // Persisted before every attempt so the attempt count survives the
+      // process dying mid upload.
+      upload.mAttempts++;
+      writeQueue();
+      postProgress(upload, State.UPLOADING);
+
+      // The query is the original path so the server gets the original name.
+      ApiCall apiCall = new ApiCall(upload.mEndpoint, getUploadName(upload), null,
+       upload.mExtraInfo, upload.mUploadPath);
+      apiCall.mActivityid = upload.mActivityid;
+
+      ApiEvent<?> result = Api.callSync(apiCall, site, user);
+
+      // The user needs to log in again, which doesn't count as an attempt.
+      if (result.hasError() && result.getError().mType == ApiError.Type.UNAUTHORIZED) {
+         upload.mAttempts--;
+         writeQueue();
+         hold(upload);
+         return;
+      }
+
+      if (result.hasError() && isRetryable(result) && upload.mAttempts < MAX_ATTEMPTS) {
+         long backoff = Math.min(INITIAL_BACKOFF_MS << (upload.mAttempts - 1),
+          MAX_BACKOFF_MS);
+
+         if (App.inDebug()) {
+            Log.i(TAG, "Upload of " + upload.mFilePath + " failed, retrying in " +
+             backoff + "ms");
+         }
+
+         postProgress(upload, State.WAITING_TO_RETRY);
+         mRetryTimer.schedule(new Runnable() {
+            public void run() {
+               send(upload);
+            }
+         }, backoff, TimeUnit.MILLISECONDS);
+         return;
+      }
+
+      synchronized (this) {
+         mUploads.remove(upload);
+      }
+      writeQueue();
+
+      if (!upload.mUploadPath.equals(upload.mFilePath)) {
+         new File(upload.mUploadPath).delete();
+      }
+
+      postProgress(upload, result.hasError() ? State.FAILED : State.COMPLETE);
+      postResult(result);
+   }
+
+   private void hold(Upload upload) {
+      if (App.inDebug()) {
+         Log.i(TAG, "Holding upload of " + upload.mFilePath + " for " + upload.mSiteName);
+      }
+
+      synchronized (this) {
+         mHeldUploads.add(upload);
+      }
+   }
+
+   private static boolean isCurrentSession(Upload upload) {
+      return isSession(upload, App.get().getSite().mName, App.get().getUser());
+   }
+
+   private static boolean isSession(Upload upload, String siteName, User user) {
+      return upload.mSiteName.equals(siteName) && user != null &&
+       user.getUserid() == upload.mUserid;
+   }
+
+   /**
+    * Returns the original file name with the extension of the format it was
+    * re-encoded in, if it was.
+    */
+   private static String getUploadName(Upload upload) {
+      if (upload.mUploadPath.equals(upload.mFilePath)) {
+         return upload.mFilePath;
+      }
+
+      return replaceExtension(upload.mFilePath, getExtension(upload.mUploadPath));
+   }
+
+   private static String getExtension(String path) {
+      int dot = path.lastIndexOf('.');
+
+      return dot > path.lastIndexOf('/') ? path.substring(dot) : "";
+   }
+
+   private static String replaceExtension(String path, String extension) {
+      String oldExtension = getExtension(path);
+
+      return path.substring(0, path.length() - oldExtension.length()) + extension;
+   }
+
+   /**
+    * Connection failures, requests that died before a response and server
+    * errors are worth trying again; anything else will fail the same way.
+    */
+   private static boolean isRetryable(ApiEvent<?> result) {
+      return result.getError().mType == ApiError.Type.CONNECTION ||
+       result.mCode == 0 || result.mCode >= 500;
+   }
+
+   /**
+    * Returns the path of a scaled down and upright copy of the file, or the
+    * file itself if it is small enough or can't be decoded. PNGs stay PNGs so
+    * they keep their transparency and everything else becomes a JPEG, except
+    * GIFs which would lose their animation and are sent as they are.
+    */
+   private String prepareFile(String filePath) {
+      BitmapFactory.Options bounds = getBounds(filePath);
+      String mimeType = bounds.outMimeType;
+
+      if (mimeType == null || mimeType.equals("image/gif")) {
+         return filePath;
+      }
+
+      int rotation = getRotation(filePath);
+
+      if (Math.max(bounds.outWidth, bounds.outHeight) <= MAX_DIMENSION && rotation == 0) {
+         // Already small enough; re-encoding would only lose quality.
+         return filePath;
+      }
+
+      // JPEGs have no alpha so half the memory per pixel is enough for them.
+      boolean png = mimeType.equals("image/png");
+      Bitmap bitmap = BitmapDecoder.decodeFile(filePath, MAX_DIMENSION,
+       png ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565);
+
+      if (bitmap == null) {
+         return filePath;
+      }
+
+      OutputStream out = null;
+      Bitmap resized = null;
+      try {
+         // The bitmap was decoded at most MAX_DIMENSION on its longest side
+         // so it only needs a copy if it has to be rotated.
+         if (rotation != 0) {
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            resized = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(),
+             bitmap.getHeight(), matrix, true);
+         }
+
+         if (!mUploadDirectory.isDirectory() && !mUploadDirectory.mkdirs()) {
+            throw new IOException("Can't create " + mUploadDirectory);
+         }
+
+         File file = File.createTempFile("upload", png ? ".png" : ".jpg", mUploadDirectory);
+         out = new FileOutputStream(file);
+         (resized != null ? resized : bitmap).compress(png ? Bitmap.CompressFormat.PNG :
+          Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+
+         if (App.inDebug()) {
+            Log.i(TAG, "Resized " + filePath + " from " + new File(filePath).length() +
+             " to " + file.length() + " bytes");
+         }
+
+         return file.getPath();
+      } catch (IOException e) {
+         Log.w(TAG, "Failed to resize " + filePath, e);
+         return filePath;
+      } catch (OutOfMemoryError e) {
+         Log.w(TAG, "Out of memory resizing " + filePath);
+         return filePath;
+      } finally {
+         bitmap.recycle();
+
+         if (resized != null) {
+            resized.recycle();
+         }
+
+         if (out != null) {
+            try {
+               out.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+   }
+
+   private static BitmapFactory.Options getBounds(String filePath) {
+      BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inJustDecodeBounds = true;
+      BitmapFactory.decodeFile(filePath, options);
+
+      return options;
+   }
+
+   /**
+    * Camera apps often store photos sideways with an EXIF orientation. That
+    * tag is lost on re-encoding so the pixels are rotated instead.
+    */
+   private static int getRotation(String filePath) {
+      try {
+         int orientation = new ExifInterface(filePath).getAttributeInt(
+          ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+
+         switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+               return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+               return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+               return 270;
+            default:
+               return 0;
+         }
+      } catch (IOException e) {
+         return 0;
+      }
+   }
+
+   private static ThreadFactory newThreadFactory(final String name) {
+      return new ThreadFactory() {
+         private final AtomicInteger mCount = new AtomicInteger(1);
+
+         public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+               public void run() {
+                  Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                  runnable.run();
+               }
+            }, name + " #" + mCount.getAndIncrement());
+         }
+      };
+   }
+
+   private void postProgress(Upload upload, State state) {
+      final Progress progress = new Progress(upload.mFilePath, upload.mExtraInfo, state,
+       upload.mAttempts);
+
+      mMainHandler.post(new Runnable() {
+         public void run() {
+            App.getBus().post(progress);
+         }
+      });
+   }
+
+   private void postResult(final ApiEvent<?> result) {
+      if (result.mApiCall.mActivityid == NO_ACTIVITY) {
+         return;
+      }
+
+      mMainHandler.post(new Runnable() {
+         public void run() {
+            App.getBus().post(new ApiEvent.ActivityProxy(result));
+         }
+      });
+   }
+
+   /**
+    * Writes a snapshot of the queue. Only the copy is taken under this so
+    * enqueue() on the UI thread never waits on the disk. The resizer and the
+    * senders all write, so the snapshot is taken under mWriteLock too to keep
+    * an older one from replacing a newer one.
+    */
+   private void writeQueue() {
+      synchronized (mWriteLock) {
+         ArrayList<Upload> uploads = new ArrayList<Upload>();
+
+         synchronized (this) {
+            for (Upload upload : mUploads) {
+               uploads.add(upload.copy());
+            }
+         }
+
+         writeQueue(uploads);
+      }
+   }
+
+   private void writeQueue(ArrayList<Upload> uploads) {
+      JSONArray queue = new JSONArray();
+      Writer writer = null;
+
+      try {
+         for (Upload upload : uploads) {
+            queue.put(upload.toJson());
+         }
+
+         File tmpFile = new File(mQueueFile.getPath() + ".tmp");
+         writer = new FileWriter(tmpFile);
+         writer.write(queue.toString());
+         writer.close();
+         writer = null;
+
+         if (!tmpFile.renameTo(mQueueFile)) {
+            Log.e(TAG, "Failed to replace " + mQueueFile);
+         }
+      } catch (JSONException e) {
+         Log.e(TAG, "Failed to serialize queue", e);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to write queue", e);
+      } finally {
+         if (writer != null) {
+            try {
+               writer.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+   }
+
+   private ArrayList<Upload> readQueue() {
+      ArrayList<Upload> uploads = new ArrayList<Upload>();
+
+      if (!mQueueFile.exists()) {
+         return uploads;
+      }
+
+      BufferedReader reader = null;
+      try {
+         reader = new BufferedReader(new FileReader(mQueueFile));
+         StringBuilder contents = new StringBuilder();
+         String line;
+
+         while ((line = reader.readLine()) != null) {
+            contents.append(line);
+         }
+
+         JSONArray queue = new JSONArray(contents.toString());
+
+         for (int i = 0; i < queue.length(); i++) {
+            Upload upload = Upload.fromJson(queue.getJSONObject(i));
+
+            if (new File(upload.mFilePath).exists()) {
+               uploads.add(upload);
+            }
+         }
+      } catch (JSONException e) {
+         Log.e(TAG, "Corrupt queue", e);
+      } catch (IOException e) {
+         Log.e(TAG, "Failed to read queue", e);
+      } finally {
+         if (reader != null) {
+            try {
+               reader.close();
+            } catch (IOException e) {
+               Log.e(TAG, "Closing", e);
+            }
+         }
+      }
+
+      return uploads;
+   }
+}
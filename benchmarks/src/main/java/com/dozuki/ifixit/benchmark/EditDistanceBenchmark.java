@@ -0,0 +1,65 @@
+package com.dozuki.ifixit.benchmark;
+
+import com.dozuki.ifixit.util.EditDistance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a query against every name the way a site search does: with the
+ * old full matrix as the baseline, and with the banded rows with and without
+ * the distance limit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class EditDistanceBenchmark {
+   @Param({"2000"})
+   public int mCount;
+
+   @Param({"ifixit", "repairguidemanual"})
+   public String mQuery;
+
+   private String[] mNames;
+
+   @Setup
+   public void setUp() {
+      mNames = Names.names(Names.titles(mCount, 42));
+   }
+
+   @Benchmark
+   public void matrix(Blackhole blackhole) {
+      for (String name : mNames) {
+         blackhole.consume(MatrixEditDistance.editDistance(name, mQuery));
+      }
+   }
+
+   @Benchmark
+   public void unbounded(Blackhole blackhole) {
+      for (String name : mNames) {
+         blackhole.consume(EditDistance.editDistance(name, mQuery));
+      }
+   }
+
+   @Benchmark
+   public void bounded(Blackhole blackhole) {
+      for (String name : mNames) {
+         blackhole.consume(EditDistance.editDistance(name, mQuery, name.length() / 2));
+      }
+   }
+}
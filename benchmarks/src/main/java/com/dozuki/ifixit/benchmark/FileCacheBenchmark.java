@@ -0,0 +1,105 @@
+package com.dozuki.ifixit.benchmark;
+
+import com.dozuki.ifixit.util.LruFileCache;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes responses the way Api uses FileCache: look the URL up and
+ * store the response on a miss. The keys cycle over a working set that either
+ * fits in the cache or is twice its size, in which case about half the reads
+ * miss and every write evicts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FileCacheBenchmark {
+   private static final long MAX_SIZE = 4 * 1024 * 1024;
+
+   /**
+    * A small response such as a user's favorites and a large guide.
+    */
+   @Param({"4096", "65536"})
+   public int mValueSize;
+
+   /**
+    * Size of the working set relative to MAX_SIZE.
+    */
+   @Param({"0.5", "2"})
+   public double mWorkingSet;
+
+   private File mDirectory;
+   private LruFileCache mCache;
+   private String[] mKeys;
+   private String mValue;
+   private Random mRandom;
+
+   @Setup
+   public void setUp() throws IOException {
+      mDirectory = Files.createTempDirectory("file_cache").toFile();
+      mCache = new LruFileCache(mDirectory, MAX_SIZE);
+      mRandom = new Random(42);
+
+      char[] value = new char[mValueSize];
+      Arrays.fill(value, 'x');
+      mValue = new String(value);
+
+      int count = (int)(MAX_SIZE * mWorkingSet / mValueSize);
+      mKeys = new String[count];
+      for (int i = 0; i < count; i++) {
+         mKeys[i] = "https://www.ifixit.com/api/2.0/guides/" + i + "?userid=1";
+         mCache.setEntry(mKeys[i], mValue);
+      }
+   }
+
+   @TearDown
+   public void tearDown() {
+      File[] files = mDirectory.listFiles();
+
+      if (files != null) {
+         for (File file : files) {
+            file.delete();
+         }
+      }
+
+      mDirectory.delete();
+   }
+
+   @Benchmark
+   public String getOrSet() {
+      String key = mKeys[mRandom.nextInt(mKeys.length)];
+      String value = mCache.getEntry(key, LruFileCache.NO_EXPIRATION);
+
+      if (value == null) {
+         mCache.setEntry(key, mValue);
+      }
+
+      return value;
+   }
+
+   @Benchmark
+   public void set() {
+      mCache.setEntry(mKeys[mRandom.nextInt(mKeys.length)], mValue);
+   }
+}
@@ -0,0 +1,34 @@
+package com.dozuki.ifixit.benchmark;
+
+/**
+ * The edit distance as the app computed it before EditDistance was banded:
+ * a full (m+1) x (n+1) matrix allocated on every call. Kept only as the
+ * baseline for EditDistanceBenchmark.
+ */
+public class MatrixEditDistance {
+   public static int editDistance(String s, String t) {
+      int m = s.length();
+      int n = t.length();
+      int[][] d = new int[m + 1][n + 1];
+
+      for (int i = 0; i <= m; i++) {
+         d[i][0] = i;
+      }
+
+      for (int j = 0; j <= n; j++) {
+         d[0][j] = j;
+      }
+
+      for (int j = 1; j <= n; j++) {
+         for (int i = 1; i <= m; i++) {
+            if (s.charAt(i - 1) == t.charAt(j - 1)) {
+               d[i][j] = d[i - 1][j - 1];
+            } else {
+               d[i][j] = Math.min(Math.min(d[i - 1][j], d[i][j - 1]), d[i - 1][j - 1]) + 1;
+            }
+         }
+      }
+
+      return d[m][n];
+   }
+}
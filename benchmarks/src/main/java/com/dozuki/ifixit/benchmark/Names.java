@@ -0,0 +1,52 @@
+package com.dozuki.ifixit.benchmark;
+
+import java.util.Random;
+
+/**
+ * Generates site-like titles and names so runs are repeatable without a copy
+ * of the real site list.
+ */
+class Names {
+   private static final String[] WORDS = {
+      "repair", "guide", "manual", "fix", "service", "tech", "auto", "bike",
+      "phone", "camera", "tool", "works", "shop", "lab", "parts", "medical",
+      "factory", "line", "quality", "training", "maker", "space", "robot", "print"
+   };
+
+   static String[] titles(int count, long seed) {
+      Random random = new Random(seed);
+      String[] titles = new String[count];
+
+      for (int i = 0; i < count; i++) {
+         StringBuilder title = new StringBuilder();
+         int words = 1 + random.nextInt(3);
+
+         for (int j = 0; j < words; j++) {
+            if (j > 0) {
+               title.append(' ');
+            }
+
+            String word = WORDS[random.nextInt(WORDS.length)];
+            title.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1));
+         }
+
+         title.append(' ').append(i);
+         titles[i] = title.toString();
+      }
+
+      return titles;
+   }
+
+   /**
+    * Names are titles without spaces, like the site names the API returns.
+    */
+   static String[] names(String[] titles) {
+      String[] names = new String[titles.length];
+
+      for (int i = 0; i < titles.length; i++) {
+         names[i] = titles[i].replace(" ", "").toLowerCase();
+      }
+
+      return names;
+   }
+}
@@ -0,0 +1,60 @@
+package com.dozuki.ifixit.benchmark;
+
+import com.dozuki.ifixit.util.SearchIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times a query against a built index, which is what every key press in the
+ * site list costs, and building the index, which the first search pays for.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SearchIndexBenchmark {
+   @Param({"2000"})
+   public int mCount;
+
+   /**
+    * Too short for trigrams, a substring, a typo and no match at all.
+    */
+   @Param({"re", "guide", "repiar", "zzzzzz"})
+   public String mQuery;
+
+   private String[] mTitles;
+   private String[] mNames;
+   private SearchIndex mIndex;
+
+   @Setup
+   public void setUp() {
+      mTitles = Names.titles(mCount, 42);
+      mNames = Names.names(mTitles);
+      mIndex = new SearchIndex(mTitles, mNames);
+      mIndex.search(mQuery);
+   }
+
+   @Benchmark
+   public int[] search() {
+      return mIndex.search(mQuery);
+   }
+
+   @Benchmark
+   public int[] buildAndSearch() {
+      return new SearchIndex(mTitles, mNames).search(mQuery);
+   }
+}